@@ -0,0 +1,154 @@
+package com.dryrate;
+
+import com.dryrate.history.HistorySnapshot;
+import com.dryrate.history.RaidHistory;
+import com.dryrate.sync.PNCounter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Rebuilds the DryRateData aggregates of a raid from its baseline and recorded history
+ * under a given team drop policy. Inputs are captured as a copy of the history's bitmaps,
+ * so capturing reads no records and the replay can run off the client thread.
+ */
+public final class AggregateRebuilder
+{
+    private AggregateRebuilder()
+    {
+    }
+
+    /**
+     * Immutable copy of everything a rebuild needs
+     */
+    public static final class Input
+    {
+        private final RaidType raidType;
+        private final StreakBaseline baseline;
+        private final HistorySnapshot history;
+        private final PNCounter completionCounter;
+        private final PNCounter uniqueCounter;
+        private final long resetEpoch;
+
+        private Input(RaidType raidType, StreakBaseline baseline, HistorySnapshot history,
+            PNCounter completionCounter, PNCounter uniqueCounter, long resetEpoch)
+        {
+            this.raidType = raidType;
+            this.baseline = baseline;
+            this.history = history;
+            this.completionCounter = completionCounter;
+            this.uniqueCounter = uniqueCounter;
+            this.resetEpoch = resetEpoch;
+        }
+
+        public int size()
+        {
+            return history.size();
+        }
+
+        /**
+         * Whether the history was changed since it was captured, so a rebuild from this input is out of date
+         */
+        public boolean isStale(RaidHistory history)
+        {
+            return history.getModCount() != this.history.getModCount();
+        }
+    }
+
+    /**
+     * Capture the inputs for a rebuild, must be called while holding the data's owner.
+     * Copies the baseline and the history's bitmaps, the records themselves are not read.
+     */
+    public static Input capture(RaidType raidType, DryRateData data, RaidHistory history)
+    {
+        return capture(raidType, data, history, history.size());
+    }
+
+    /**
+     * Capture the inputs for a rebuild of only the first size raids
+     */
+    public static Input capture(RaidType raidType, DryRateData data, RaidHistory history, int size)
+    {
+        StreakBaseline baseline = data.getBaseline() != null ? data.getBaseline() : new StreakBaseline();
+        StreakBaseline baselineCopy = new StreakBaseline();
+        baselineCopy.setCompletions(baseline.getCompletions());
+        baselineCopy.setUniques(baseline.getUniques());
+        baselineCopy.setDryStreak(baseline.getDryStreak());
+        baselineCopy.setPreviousDryStreaks(new ArrayList<>(baseline.getPreviousDryStreaks()));
+        baselineCopy.setTeamDryStreak(baseline.getTeamDryStreak());
+        if (baseline.getTeamPreviousDryStreaks() != null)
+        {
+            baselineCopy.setTeamPreviousDryStreaks(new ArrayList<>(baseline.getTeamPreviousDryStreaks()));
+        }
+        baselineCopy.setLastDropTime(baseline.getLastDropTime());
+        baselineCopy.setUniqueItemCounts(baseline.getUniqueItemCounts());
+        baselineCopy.setUniqueItemLastDrop(baseline.getUniqueItemLastDrop());
+        baselineCopy.setFoldedThrough(baseline.getFoldedThrough());
+        baselineCopy.setRollups(new ArrayList<>(baseline.getRollups()));
+
+        return new Input(raidType, baselineCopy, history.snapshot(size),
+            new PNCounter(data.getCompletionCounter()), new PNCounter(data.getUniqueCounter()), data.getResetEpoch());
+    }
+
+    /**
+     * Replay the baseline and history into fresh aggregates
+     * Totals come from the mergeable counters, streaks and per-item stats from the replay
+     */
+    public static DryRateData rebuild(Input input, boolean teamDropResets)
+    {
+        StreakBaseline baseline = input.baseline;
+        int completions = baseline.getCompletions();
+        int streak = baseline.dryStreak(teamDropResets);
+        HistorySnapshot history = input.history;
+        long lastDropTime = history.getLastPersonalUniqueTime() >= 0 ? history.getLastPersonalUniqueTime() : baseline.getLastDropTime();
+        List<Integer> baselineStreaks = baseline.previousDryStreaks(teamDropResets);
+        ArrayList<Integer> previous = new ArrayList<>(baselineStreaks.size() + input.size() / 8);
+        previous.addAll(baselineStreaks);
+
+        int itemCount = UniqueItem.forRaid(input.raidType).length;
+        int[] itemCounts = seed(baseline.getUniqueItemCounts(), itemCount);
+        int[] itemLastDrop = seed(baseline.getUniqueItemLastDrop(), itemCount);
+
+        for (int i = 0; i < history.size(); i++)
+        {
+            streak++;
+            if (history.isPersonalUnique(i) || (teamDropResets && history.isTeamUnique(i)))
+            {
+                previous.add(streak);
+                streak = 0;
+            }
+            if (history.isStreakReset(i))
+            {
+                streak = 0;
+            }
+        }
+
+        for (UniqueItem item : UniqueItem.forRaid(input.raidType))
+        {
+            for (int i = history.nextItemRow(item, 0); i >= 0; i = history.nextItemRow(item, i + 1))
+            {
+                itemCounts[item.getIndex()]++;
+                itemLastDrop[item.getIndex()] = completions + i + 1;
+            }
+        }
+
+        DryRateData data = new DryRateData();
+        data.setBaseline(baseline);
+        data.setCompletionCounter(input.completionCounter);
+        data.setUniqueCounter(input.uniqueCounter);
+        data.setResetEpoch(input.resetEpoch);
+        data.syncTotals();
+        data.setCurrentDryStreak(streak);
+        data.setPreviousDryStreaks(previous);
+        data.setLastDropTime(lastDropTime);
+        data.setUniqueItemCounts(itemCounts);
+        data.setUniqueItemLastDrop(itemLastDrop);
+        return data;
+    }
+
+    private static int[] seed(int[] folded, int length)
+    {
+        return folded != null ? Arrays.copyOf(folded, length) : new int[length];
+    }
+}
@@ -67,4 +67,81 @@ public interface DryRateConfig extends Config
 	{
 		return false;
 	}
-} 
\ No newline at end of file
+
+	@ConfigItem(
+		keyName = "retainRaids",
+		name = "Keep detail for last raids",
+		description = "Number of recent raids kept individually, older raids are folded into the totals (0 keeps all)",
+		position = 5
+	)
+	default int retainRaids()
+	{
+		return 0;
+	}
+
+	@ConfigItem(
+		keyName = "retainDays",
+		name = "Keep detail for last days",
+		description = "Days of raids kept individually, older raids are folded into the totals (0 keeps all)",
+		position = 6
+	)
+	default int retainDays()
+	{
+		return 0;
+	}
+
+	@ConfigItem(
+		keyName = "collectMetrics",
+		name = "Collect debug metrics",
+		description = "Time event handlers and saves and count detector decisions, shown in a debug section of the panel",
+		position = 7
+	)
+	default boolean collectMetrics()
+	{
+		return false;
+	}
+
+	@ConfigItem(
+		keyName = "exportMetrics",
+		name = "Export metrics to file",
+		description = "Write the debug metrics to .runelite/dry-rate/metrics.prom in Prometheus text format every 15 seconds",
+		position = 8
+	)
+	default boolean exportMetrics()
+	{
+		return false;
+	}
+
+	@ConfigItem(
+		keyName = "tickBudget",
+		name = "Tick budget (us)",
+		description = "Log a warning with a per-handler breakdown when the plugin spends longer than this in one game tick (0 turns it off)",
+		position = 9
+	)
+	default int tickBudget()
+	{
+		return 0;
+	}
+
+	@ConfigItem(
+		keyName = "showOverlay",
+		name = "Show overlay in raids",
+		description = "Show the dry streak, odds and session count of the raid you are in as an in-game overlay",
+		position = 10
+	)
+	default boolean showOverlay()
+	{
+		return false;
+	}
+
+	@ConfigItem(
+		keyName = "diagnostics",
+		name = "Diagnostic logging",
+		description = "Comma separated categories logged to the client log, rate limited: region, objects, loot, save or all (empty turns it off)",
+		position = 11
+	)
+	default String diagnostics()
+	{
+		return "";
+	}
+}
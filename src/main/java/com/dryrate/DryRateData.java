@@ -1,7 +1,10 @@
 package com.dryrate;
 
+import com.dryrate.sync.InstanceId;
+import com.dryrate.sync.PNCounter;
 import lombok.Data;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -16,6 +19,20 @@ public class DryRateData
     private List<Integer> previousDryStreaks;
     private long lastDropTime;
 
+    // Per-unique counters indexed by UniqueItem.getIndex() for this raid
+    private int[] uniqueItemCounts;
+    private int[] uniqueItemLastDrop;
+
+    // Aggregates not backed by raid records, the starting point for recomputes
+    private StreakBaseline baseline;
+
+    // Mergeable sources of totalCompletions and totalUniques, one slot per client instance
+    private PNCounter completionCounter;
+    private PNCounter uniqueCounter;
+
+    // Time of the last full reset, the copy with the newest reset wins when merging
+    private long resetEpoch;
+
     public DryRateData()
     {
         this.currentDryStreak = 0;
@@ -23,6 +40,8 @@ public class DryRateData
         this.totalUniques = 0;
         this.previousDryStreaks = new ArrayList<>();
         this.lastDropTime = 0;
+        this.completionCounter = new PNCounter();
+        this.uniqueCounter = new PNCounter();
     }
 
     // Helper methods for dry streak tracking
@@ -30,6 +49,7 @@ public class DryRateData
     {
         this.currentDryStreak++;
         this.totalCompletions++;
+        completionCounter.add(InstanceId.get(), 1);
     }
 
     public void resetDryStreak()
@@ -43,9 +63,112 @@ public class DryRateData
         // Reset streak to 0 and increment uniques
         this.currentDryStreak = 0;
         this.totalUniques++;
+        uniqueCounter.add(InstanceId.get(), 1);
         this.lastDropTime = System.currentTimeMillis();
     }
 
+    public void setTotalCompletions(int totalCompletions)
+    {
+        completionCounter.adjustTo(InstanceId.get(), totalCompletions);
+        this.totalCompletions = totalCompletions;
+    }
+
+    public void setTotalUniques(int totalUniques)
+    {
+        uniqueCounter.adjustTo(InstanceId.get(), totalUniques);
+        this.totalUniques = totalUniques;
+    }
+
+    /**
+     * Make sure the counters exist, seeding them from totals saved before they were introduced
+     */
+    public void ensureCounters()
+    {
+        if (completionCounter == null)
+        {
+            completionCounter = new PNCounter();
+        }
+        if (uniqueCounter == null)
+        {
+            uniqueCounter = new PNCounter();
+        }
+
+        // Every client seeds the same legacy slot, so merging never double counts it
+        if (completionCounter.isEmpty())
+        {
+            completionCounter.add(InstanceId.LEGACY, totalCompletions);
+        }
+        if (uniqueCounter.isEmpty())
+        {
+            uniqueCounter.add(InstanceId.LEGACY, totalUniques);
+        }
+        syncTotals();
+    }
+
+    /**
+     * Refresh the totals from the counters after they were merged or replaced
+     */
+    public void syncTotals()
+    {
+        this.totalCompletions = completionCounter.value();
+        this.totalUniques = uniqueCounter.value();
+    }
+
+    /**
+     * Record a specific unique item, remembering the completion count it dropped at
+     */
+    public void recordUniqueItem(UniqueItem item)
+    {
+        int length = UniqueItem.forRaid(item.getRaidType()).length;
+        if (uniqueItemCounts == null || uniqueItemCounts.length < length)
+        {
+            uniqueItemCounts = uniqueItemCounts == null ? new int[length] : Arrays.copyOf(uniqueItemCounts, length);
+            uniqueItemLastDrop = uniqueItemLastDrop == null ? new int[length] : Arrays.copyOf(uniqueItemLastDrop, length);
+        }
+
+        uniqueItemCounts[item.getIndex()]++;
+        uniqueItemLastDrop[item.getIndex()] = totalCompletions;
+    }
+
+    /**
+     * Revert recordUniqueItem, restoring the completion count of the previous drop
+     */
+    public void unrecordUniqueItem(UniqueItem item, int previousLastDrop)
+    {
+        int index = item.getIndex();
+        if (uniqueItemCounts != null && index < uniqueItemCounts.length && uniqueItemCounts[index] > 0)
+        {
+            uniqueItemCounts[index]--;
+            uniqueItemLastDrop[index] = previousLastDrop;
+        }
+    }
+
+    /**
+     * Completion count at which a specific unique item was last received, 0 if never
+     */
+    public int getUniqueItemLastDropAt(UniqueItem item)
+    {
+        int index = item.getIndex();
+        return uniqueItemLastDrop != null && index < uniqueItemLastDrop.length ? uniqueItemLastDrop[index] : 0;
+    }
+
+    /**
+     * Number of times a specific unique item has been received
+     */
+    public int getUniqueItemCount(UniqueItem item)
+    {
+        int index = item.getIndex();
+        return uniqueItemCounts != null && index < uniqueItemCounts.length ? uniqueItemCounts[index] : 0;
+    }
+
+    /**
+     * Completions since a specific unique item was last received (or since tracking began)
+     */
+    public int getUniqueItemDryStreak(UniqueItem item)
+    {
+        return totalCompletions - getUniqueItemLastDropAt(item);
+    }
+
     public int getLongestDryStreak()
     {
         int longest = currentDryStreak;
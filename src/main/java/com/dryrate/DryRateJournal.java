@@ -0,0 +1,97 @@
+package com.dryrate;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Bounded journal of detections and manual resets
+ * Each entry knows how to apply its inverse to the live aggregates, so undo/redo cost O(1)
+ */
+public class DryRateJournal
+{
+    private static final int MAX_ENTRIES = 200;
+
+    /**
+     * A single journaled change
+     */
+    public interface Entry
+    {
+        RaidType getRaidType();
+
+        String getDescription();
+
+        void undo();
+
+        void redo();
+    }
+
+    private final Deque<Entry> undoStack = new ArrayDeque<>();
+    private final Deque<Entry> redoStack = new ArrayDeque<>();
+
+    /**
+     * Record a change that has just been applied, this invalidates anything that could be redone
+     */
+    public synchronized void record(Entry entry)
+    {
+        undoStack.push(entry);
+        if (undoStack.size() > MAX_ENTRIES)
+        {
+            undoStack.removeLast();
+        }
+        redoStack.clear();
+    }
+
+    /**
+     * Undo the most recent change
+     * @return the undone entry, or null if there is nothing to undo
+     */
+    public synchronized Entry undo()
+    {
+        Entry entry = undoStack.poll();
+        if (entry != null)
+        {
+            entry.undo();
+            redoStack.push(entry);
+        }
+        return entry;
+    }
+
+    /**
+     * Redo the most recently undone change
+     * @return the redone entry, or null if there is nothing to redo
+     */
+    public synchronized Entry redo()
+    {
+        Entry entry = redoStack.poll();
+        if (entry != null)
+        {
+            entry.redo();
+            undoStack.push(entry);
+        }
+        return entry;
+    }
+
+    public synchronized Entry peekUndo()
+    {
+        return undoStack.peek();
+    }
+
+    public synchronized Entry peekRedo()
+    {
+        return redoStack.peek();
+    }
+
+    public synchronized int size()
+    {
+        return undoStack.size();
+    }
+
+    /**
+     * Forget all entries, used when the aggregates are replaced wholesale
+     */
+    public synchronized void clear()
+    {
+        undoStack.clear();
+        redoStack.clear();
+    }
+}
@@ -1,15 +1,45 @@
 package com.dryrate;
 
+import com.dryrate.diagnostics.Diagnostics;
+import com.dryrate.history.HistoryQuery;
+import com.dryrate.history.MappedRecordStore;
+import com.dryrate.history.RaidHistory;
+import com.dryrate.history.RaidOutcome;
+import com.dryrate.history.RaidRecord;
+import com.dryrate.history.StoredHistory;
+import com.dryrate.metrics.DryRateMetrics;
+import com.dryrate.store.LocalDataStore;
+import com.dryrate.sync.DryRateMerger;
+import com.dryrate.sync.InstanceId;
 import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
 import com.google.gson.reflect.TypeToken;
 import lombok.extern.slf4j.Slf4j;
+import net.runelite.client.RuneLite;
 import net.runelite.client.config.ConfigManager;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
+import java.io.File;
+import java.io.IOException;
 import java.lang.reflect.Type;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
 import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * Manager class that handles all dry rate tracking logic
@@ -20,119 +50,1090 @@ public class DryRateManager
 {
     private static final String CONFIG_GROUP = "dryrate";
     private static final String DATA_KEY = "data";
+    private static final String HISTORY_KEY = "history";
+    private static final String SUMMARY_KEY = "summary";
+    private static final File LOCAL_DIR = new File(RuneLite.RUNELITE_DIR, "dry-rate");
 
     private final DryRateConfig config;
     private final ConfigManager configManager;
     private final Map<RaidType, DryRateData> raidData;
+    private final Map<RaidType, RaidHistory> raidHistory;
+    private final DryRateJournal journal;
     private final Gson gson;
+    private final DryRateMetrics metrics;
+    private final Diagnostics diagnostics;
+
+    // Config as of the last change, read from the client and store threads
+    private volatile DryRateSettings settings;
+
+    // Local copies are read and written on one thread, in order
+    private final ExecutorService storeExecutor;
+    private LocalDataStore localStore;
+
+    // History files of the loaded account, including those of raids that were fully reset since
+    private final List<MappedRecordStore> historyStores = new ArrayList<>();
+
+    // Account hash of the loaded data shard, null while logged out. The data itself is kept in the account's
+    // RuneScape profile config, the hash names the local files.
+    private String profileKey;
+
+    // Full data being parsed in the background, while the maps only hold the summary
+    private CompletableFuture<LoadedProfile> pendingLoad;
+
+    // Where the loaded account's data is changed, other clients' saves are merged in there
+    private Executor applyExecutor;
+
+    // Our last saved value of each config key, so the change events of our own saves are not merged back in
+    private final Map<String, String> savedValues = new ConcurrentHashMap<>();
+
+    // What was last saved of each raid's history, so the next save writes only the chunks that changed since
+    private final Map<RaidType, SavedHistory> savedHistories = new EnumMap<>(RaidType.class);
+    private final Map<String, String> chunkValues = new HashMap<>();
+
+    // Latest value of each key in the local copy as far as we know, so a save appends only the values that changed
+    private final Map<String, String> localValues = new HashMap<>();
+
+    // Set while a batch of outcomes is applied, saves requested meanwhile are made once at the end
+    private boolean batching;
+    private boolean saveRequested;
 
     @Inject
-    public DryRateManager(DryRateConfig config, ConfigManager configManager, Gson gson)
+    public DryRateManager(DryRateConfig config, ConfigManager configManager, Gson gson, DryRateMetrics metrics,
+        Diagnostics diagnostics)
     {
         this.config = config;
         this.configManager = configManager;
+        this.metrics = metrics;
+        this.diagnostics = diagnostics;
+        this.settings = config != null ? DryRateSettings.of(config) : DryRateSettings.DEFAULTS;
         this.raidData = new EnumMap<>(RaidType.class);
+        this.raidHistory = new EnumMap<>(RaidType.class);
+        this.journal = new DryRateJournal();
         this.gson = gson; // Use injected Gson from RuneLite
+        this.storeExecutor = Executors.newSingleThreadExecutor(r ->
+        {
+            Thread thread = new Thread(r, "dry-rate-store");
+            thread.setDaemon(true);
+            return thread;
+        });
         
-        // Initialize data for each raid type
+        clearInMemory();
+    }
+
+    /**
+     * Re-read the config, called when one of our config keys changes
+     */
+    public void refreshSettings()
+    {
+        if (config != null)
+        {
+            settings = DryRateSettings.of(config);
+        }
+    }
+
+    /**
+     * The config as of the last change
+     */
+    public DryRateSettings getSettings()
+    {
+        return settings;
+    }
+
+    /**
+     * Load the data shard of an account, flushing and evicting any other loaded shard first.
+     * The saved summary is shown straight away, the full data is parsed off the calling thread
+     * and swapped in on applyExecutor.
+     */
+    public synchronized CompletableFuture<Void> loadProfile(long accountHash, Executor applyExecutor)
+    {
+        String key = Long.toString(accountHash);
+        if (key.equals(profileKey))
+        {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        unloadProfile();
+        InstanceId.claim(LOCAL_DIR.toPath());
+        profileKey = key;
+        this.applyExecutor = applyExecutor;
+        migrateLegacyData();
+        loadSummary();
+
+        Map<String, String> stored = readStoredConfig();
+        LocalDataStore store = new LocalDataStore(new File(LOCAL_DIR, profileKey + ".dat").toPath());
+        localStore = store;
+        CompletableFuture<LoadedProfile> load = CompletableFuture.supplyAsync(() -> loadProfileData(key, stored, store), storeExecutor);
+        pendingLoad = load;
+        log.debug("*** PROFILE *** Loading data shard for account {}", profileKey);
+        return load.thenAcceptAsync(loaded -> applyLoaded(load), applyExecutor);
+    }
+
+    /**
+     * Flush the loaded shard and drop it from memory
+     */
+    public synchronized void unloadProfile()
+    {
+        if (profileKey == null)
+        {
+            return;
+        }
+
+        saveData();
+        closeHistoryStores(new ArrayList<>(historyStores));
+        historyStores.clear();
+        log.debug("*** PROFILE *** Unloaded data shard for account {}", profileKey);
+        profileKey = null;
+        pendingLoad = null;
+        localStore = null;
+        savedValues.clear();
+        savedHistories.clear();
+        chunkValues.clear();
+        localValues.clear();
+        clearInMemory();
+        journal.clear();
+    }
+
+    /**
+     * Check if an account's data is currently loaded
+     */
+    public boolean isProfileLoaded()
+    {
+        return profileKey != null;
+    }
+
+    /**
+     * Check if the full data is still being loaded and only the summary is shown
+     */
+    public boolean isLoading()
+    {
+        return pendingLoad != null;
+    }
+
+    /**
+     * Reset the in-memory state to empty data for each raid type
+     */
+    private void clearInMemory()
+    {
         for (RaidType raidType : RaidType.values())
         {
             raidData.put(raidType, new DryRateData());
+            raidHistory.put(raidType, new RaidHistory());
+        }
+    }
+
+    /**
+     * Move data saved under older keys into the logged in RuneScape profile: the per-account keys
+     * of the global group, or the global keys used before accounts were told apart
+     */
+    private void migrateLegacyData()
+    {
+        if (configManager.getRSProfileConfiguration(CONFIG_GROUP, DATA_KEY) != null)
+        {
+            return;
+        }
+
+        String suffix = "." + profileKey;
+        String legacyData = configManager.getConfiguration(CONFIG_GROUP, DATA_KEY + suffix);
+        if (legacyData == null || legacyData.isEmpty())
+        {
+            suffix = "";
+            legacyData = configManager.getConfiguration(CONFIG_GROUP, DATA_KEY);
+        }
+        if (legacyData == null || legacyData.isEmpty())
+        {
+            return;
+        }
+
+        for (String key : new String[] {DATA_KEY, HISTORY_KEY, SUMMARY_KEY})
+        {
+            String value = configManager.getConfiguration(CONFIG_GROUP, key + suffix);
+            if (value != null)
+            {
+                // Our own write, its change event must not be merged back in
+                savedValues.put(key, value);
+                configManager.setRSProfileConfiguration(CONFIG_GROUP, key, value);
+            }
+            configManager.unsetConfiguration(CONFIG_GROUP, key + suffix);
         }
+        log.debug("*** PROFILE *** Migrated {} data to the RuneScape profile of account {}",
+            suffix.isEmpty() ? "global" : "per-account", profileKey);
     }
 
     /**
-     * Load data from configuration
+     * Show the saved summary of each raid until the full data is loaded
      */
-    public void loadData()
+    private void loadSummary()
     {
+        String summaryJson = configManager.getRSProfileConfiguration(CONFIG_GROUP, SUMMARY_KEY);
+        if (summaryJson == null || summaryJson.isEmpty())
+        {
+            return;
+        }
+
         try
         {
-            String dataJson = configManager.getConfiguration(CONFIG_GROUP, DATA_KEY);
-            log.debug("*** LOADING DATA *** Raw JSON from config: {}", dataJson);
-            
-            if (dataJson != null && !dataJson.isEmpty())
+            Type type = new TypeToken<Map<String, RaidSummary>>(){}.getType();
+            Map<String, RaidSummary> summaries = gson.fromJson(summaryJson, type);
+            if (summaries == null)
+            {
+                return;
+            }
+
+            for (Map.Entry<String, RaidSummary> entry : summaries.entrySet())
+            {
+                try
+                {
+                    raidData.put(RaidType.valueOf(entry.getKey()), entry.getValue().toData());
+                }
+                catch (IllegalArgumentException e)
+                {
+                    log.warn("*** LOAD WARNING *** Unknown raid type in summary: {}", entry.getKey());
+                }
+            }
+        }
+        catch (Exception e)
+        {
+            log.warn("*** LOAD WARNING *** Could not read summary, waiting for full data", e);
+        }
+    }
+
+    /**
+     * Load an account's full data from its config, merging in the local copy another client on this install
+     * may have saved since. Falls back to the local copy if the config is missing or unreadable.
+     */
+    private LoadedProfile loadProfileData(String profile, Map<String, String> stored, LocalDataStore store)
+    {
+        // Reading the local copy also recovers it from an interrupted write, before anything is appended
+        Map<String, String> local;
+        try
+        {
+            local = store.read();
+        }
+        catch (IOException e)
+        {
+            log.warn("*** LOAD WARNING *** Could not read local copy {}", store.getFile(), e);
+            local = new HashMap<>();
+        }
+
+        String dataJson = stored.get(DATA_KEY);
+        if (dataJson != null && !dataJson.isEmpty())
+        {
+            try
             {
-                // Use String keys to avoid enum serialization issues
-                Type type = new TypeToken<Map<String, DryRateData>>(){}.getType();
-                Map<String, DryRateData> loadedData = gson.fromJson(dataJson, type);
-                
-                if (loadedData != null)
+                LoadedProfile loaded = parseProfile(profile, stored, true);
+                loaded.local.putAll(local);
+                String localData = local.get(DATA_KEY);
+                if (localData != null && !localData.equals(dataJson))
                 {
-                    		log.debug("Dry rate data loaded successfully - {} raid types", loadedData.size());
-                    
-                    // Convert string keys back to enum keys
-                    for (Map.Entry<String, DryRateData> entry : loadedData.entrySet())
+                    mergeStored(profile, loaded.data, loaded.history, loaded.stores, local);
+                }
+                return loaded;
+            }
+            catch (Exception e)
+            {
+                log.error("*** LOAD ERROR *** Saved data is unreadable, trying the local copy", e);
+            }
+        }
+
+        String localData = local.get(DATA_KEY);
+        if (localData != null)
+        {
+            try
+            {
+                log.warn("*** LOAD WARNING *** Restoring data from local copy {}", store.getFile());
+                LoadedProfile loaded = parseProfile(profile, local, false);
+                loaded.local.putAll(local);
+                return loaded;
+            }
+            catch (Exception e)
+            {
+                log.error("*** LOAD ERROR *** Local copy is unreadable too, starting fresh", e);
+            }
+        }
+        else
+        {
+            		log.debug("No existing dry rate data found, starting fresh");
+        }
+        LoadedProfile loaded = parseProfile(profile, new HashMap<>(), false);
+        loaded.local.putAll(local);
+        return loaded;
+    }
+
+    /**
+     * Parse an account's full data and build its indexes, safe to run off the client thread
+     * @param saved whether the values are what config holds, so the chunks that still match need no saving
+     */
+    private LoadedProfile parseProfile(String profile, Map<String, String> values, boolean saved)
+    {
+        LoadedProfile loaded = new LoadedProfile();
+        Map<RaidType, DryRateData> storedData = parseStoredData(values.get(DATA_KEY));
+        Map<RaidType, StoredHistory> storedHistory = parseStoredHistory(values);
+
+        for (RaidType raidType : RaidType.values())
+        {
+            DryRateData data = storedData.getOrDefault(raidType, new DryRateData());
+            StoredHistory stored = storedHistory.getOrDefault(raidType, new StoredHistory());
+            assignLegacyIds(raidType, stored.getRecords());
+            RaidHistory history = openHistory(profile, raidType, data.getResetEpoch(),
+                stored.getRecords(), stored.getRemovedIds(), loaded.stores);
+            deleteOlderHistoryFiles(profile, raidType, data.getResetEpoch());
+
+            data.ensureCounters();
+            if (data.getBaseline() == null)
+            {
+                data.setBaseline(StreakBaseline.derive(data, history));
+            }
+            history = applyRetention(raidType, data, history);
+            if (saved)
+            {
+                markSavedChunks(raidType, data, history, stored, values, loaded);
+            }
+
+            loaded.data.put(raidType, data);
+            loaded.history.put(raidType, history);
+        }
+        return loaded;
+    }
+
+    /**
+     * Note the raids of a loaded history that config already holds, so the first save only writes the chunks
+     * from the first raid that differs instead of the whole synced tail
+     */
+    private static void markSavedChunks(RaidType raidType, DryRateData data, RaidHistory history, StoredHistory stored,
+        Map<String, String> values, LoadedProfile loaded)
+    {
+        int offset = data.getBaseline() != null ? data.getBaseline().getCompletions() : 0;
+        int start = stored.getFirstChunk() * StoredHistory.CHUNK_SIZE - offset;
+        if (stored.getChunkCount() == 0 || start < 0)
+        {
+            return;
+        }
+
+        List<RaidRecord> records = stored.getRecords();
+        int clean = start;
+        while (clean < history.size() && clean - start < records.size() && records.get(clean - start).equals(history.get(clean)))
+        {
+            clean++;
+        }
+        history.markSaved(clean);
+        loaded.saved.put(raidType, new SavedHistory(history, offset, stored.getFirstChunk()));
+        for (int chunk = stored.getFirstChunk(); chunk < stored.getFirstChunk() + stored.getChunkCount(); chunk++)
+        {
+            String key = StoredHistory.chunkKey(HISTORY_KEY, raidType, chunk);
+            String value = values.get(key);
+            if (value != null)
+            {
+                loaded.chunks.put(key, value);
+            }
+        }
+    }
+
+    /**
+     * Fold the raids outside the retention settings into the raid's baseline
+     * @return the history that is left, or the given history if nothing was folded
+     */
+    private RaidHistory applyRetention(RaidType raidType, DryRateData data, RaidHistory history)
+    {
+        DryRateSettings settings = this.settings;
+        int count = HistoryRetention.foldCount(history, settings.getRetainRaids(), settings.getRetainDays(), System.currentTimeMillis());
+        if (count == 0)
+        {
+            return history;
+        }
+
+        log.debug("*** RETENTION *** Folding {} old {} raids into the totals", count, raidType);
+        return HistoryRetention.fold(raidType, data, history, count);
+    }
+
+    /**
+     * Apply changed retention settings to the loaded data
+     */
+    public synchronized void applyRetention()
+    {
+        if (profileKey == null)
+        {
+            return;
+        }
+
+        ensureLoaded();
+        boolean folded = false;
+        for (RaidType raidType : RaidType.values())
+        {
+            RaidHistory history = raidHistory.get(raidType);
+            RaidHistory kept = applyRetention(raidType, raidData.get(raidType), history);
+            if (kept != history)
+            {
+                raidHistory.put(raidType, kept);
+                folded = true;
+            }
+        }
+
+        if (folded)
+        {
+            // Journal entries point at raids that are no longer in the history
+            journal.clear();
+            saveData();
+        }
+    }
+
+    /**
+     * Swap the parsed data in, unless it was already swapped in or another account was loaded since
+     */
+    private synchronized void applyLoaded(CompletableFuture<LoadedProfile> load)
+    {
+        LoadedProfile loaded = load.join();
+        if (pendingLoad != load)
+        {
+            if (!loaded.applied)
+            {
+                // Another account was loaded before this one finished
+                closeHistoryStores(loaded.stores);
+            }
+            return;
+        }
+        pendingLoad = null;
+        loaded.applied = true;
+        historyStores.addAll(loaded.stores);
+        for (RaidType raidType : RaidType.values())
+        {
+            raidData.put(raidType, loaded.data.getOrDefault(raidType, new DryRateData()));
+            raidHistory.put(raidType, loaded.history.getOrDefault(raidType, new RaidHistory()));
+        }
+        savedHistories.putAll(loaded.saved);
+        chunkValues.putAll(loaded.chunks);
+        localValues.putAll(loaded.local);
+        journal.clear();
+
+        log.debug("*** LOAD COMPLETE *** Current raid data state:");
+        for (Map.Entry<RaidType, DryRateData> entry : raidData.entrySet())
+        {
+            DryRateData data = entry.getValue();
+            log.debug("*** {} CURRENT *** Streak: {}, Completions: {}, Uniques: {}, History: {}", 
+                entry.getKey(), data.getCurrentDryStreak(), data.getTotalCompletions(), data.getTotalUniques(),
+                raidHistory.get(entry.getKey()).size());
+        }
+    }
+
+    /**
+     * Open the history file of a raid, moving in records saved before it existed.
+     * Falls back to a history on the heap if another client owns the file or it cannot be opened.
+     */
+    private RaidHistory openHistory(String profile, RaidType raidType, long resetEpoch,
+        List<RaidRecord> records, Collection<String> removedIds, List<MappedRecordStore> opened)
+    {
+        Path file = historyFile(profile, raidType, resetEpoch);
+        try
+        {
+            MappedRecordStore store = MappedRecordStore.open(file, raidType);
+            if (store != null)
+            {
+                opened.add(store);
+                RaidHistory history = new RaidHistory(store, removedIds);
+                if (store.size() == 0 && !records.isEmpty())
+                {
+                    log.debug("*** HISTORY *** Moving {} {} records into {}", records.size(), raidType, file);
+                    history = history.withRecords(records, removedIds);
+                }
+                return history;
+            }
+
+            log.debug("*** HISTORY *** {} is used by another client, reading a snapshot", file);
+            List<RaidRecord> snapshot = MappedRecordStore.readSnapshot(file, raidType);
+            if (!snapshot.isEmpty())
+            {
+                return new RaidHistory(snapshot, removedIds);
+            }
+        }
+        catch (IOException | RuntimeException e)
+        {
+            log.warn("*** HISTORY WARNING *** Could not open {}, keeping the history in memory", file, e);
+        }
+        return new RaidHistory(records, removedIds);
+    }
+
+    /**
+     * History file of a raid since its last full reset
+     */
+    private static Path historyFile(String profile, RaidType raidType, long resetEpoch)
+    {
+        return new File(LOCAL_DIR, profile + "-" + raidType.name() + "-" + resetEpoch + ".hist").toPath();
+    }
+
+    /**
+     * Delete the history files a raid had before its last full reset
+     */
+    private static void deleteOlderHistoryFiles(String profile, RaidType raidType, long resetEpoch)
+    {
+        String prefix = profile + "-" + raidType.name() + "-";
+        File[] files = LOCAL_DIR.listFiles((dir, name) -> name.startsWith(prefix) && name.endsWith(".hist"));
+        if (files == null)
+        {
+            return;
+        }
+
+        for (File file : files)
+        {
+            String epoch = file.getName().substring(prefix.length(), file.getName().length() - ".hist".length());
+            try
+            {
+                if (Long.parseLong(epoch) < resetEpoch)
+                {
+                    Files.deleteIfExists(file.toPath());
+                    Files.deleteIfExists(new File(file.getPath() + ".lock").toPath());
+                    Files.deleteIfExists(MappedRecordStore.editPath(file.toPath()));
+                    log.debug("*** HISTORY *** Deleted {} from before the last reset", file.getName());
+                }
+            }
+            catch (NumberFormatException | IOException e)
+            {
+                log.debug("*** HISTORY *** Could not delete {}: {}", file.getName(), e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Flush and close history files once pending writes are done
+     */
+    private void closeHistoryStores(List<MappedRecordStore> stores)
+    {
+        storeExecutor.execute(() ->
+        {
+            for (MappedRecordStore store : stores)
+            {
+                try
+                {
+                    store.close();
+                }
+                catch (IOException e)
+                {
+                    log.warn("*** HISTORY WARNING *** Could not close {}", store.getFile(), e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Wait for the full data before changing anything, so nothing is recorded against the summary
+     */
+    private void ensureLoaded()
+    {
+        if (pendingLoad != null)
+        {
+            log.debug("*** PROFILE *** Waiting for full data before recording");
+            applyLoaded(pendingLoad);
+        }
+    }
+
+    private Map<RaidType, DryRateData> parseStoredData(String dataJson)
+    {
+        Map<RaidType, DryRateData> result = new EnumMap<>(RaidType.class);
+        if (dataJson == null || dataJson.isEmpty())
+        {
+            return result;
+        }
+
+        // Use String keys to avoid enum serialization issues
+        Type type = new TypeToken<Map<String, DryRateData>>(){}.getType();
+        Map<String, DryRateData> loadedData = gson.fromJson(dataJson, type);
+        if (loadedData == null)
+        {
+            log.warn("*** LOAD WARNING *** Parsed data was null");
+            return result;
+        }
+
+        // Convert string keys back to enum keys
+        for (Map.Entry<String, DryRateData> entry : loadedData.entrySet())
+        {
+            try
+            {
+                result.put(RaidType.valueOf(entry.getKey()), entry.getValue());
+            }
+            catch (IllegalArgumentException e)
+            {
+                log.warn("*** LOAD WARNING *** Unknown raid type: {}", entry.getKey());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Read the loaded account's saved data from config: the data, the history header and the chunks it lists
+     */
+    private Map<String, String> readStoredConfig()
+    {
+        Map<String, String> values = new HashMap<>();
+        for (String key : new String[] {DATA_KEY, HISTORY_KEY})
+        {
+            String value = configManager.getRSProfileConfiguration(CONFIG_GROUP, key);
+            if (value != null)
+            {
+                values.put(key, value);
+            }
+        }
+
+        try
+        {
+            for (Map.Entry<RaidType, StoredHistory> entry : parseHistoryHeaders(values.get(HISTORY_KEY)).entrySet())
+            {
+                StoredHistory header = entry.getValue();
+                for (int chunk = header.getFirstChunk(); chunk < header.getFirstChunk() + header.getChunkCount(); chunk++)
+                {
+                    String key = StoredHistory.chunkKey(HISTORY_KEY, entry.getKey(), chunk);
+                    String value = configManager.getRSProfileConfiguration(CONFIG_GROUP, key);
+                    if (value != null)
                     {
-                        try
-                        {
-                            RaidType raidType = RaidType.valueOf(entry.getKey());
-                            DryRateData data = entry.getValue();
-                            raidData.put(raidType, data);
-                            
-                            log.debug("*** {} DATA *** Streak: {}, Completions: {}, Uniques: {}", 
-                                raidType, data.getCurrentDryStreak(), data.getTotalCompletions(), data.getTotalUniques());
-                        }
-                        catch (IllegalArgumentException e)
-                        {
-                            log.warn("*** LOAD WARNING *** Unknown raid type: {}", entry.getKey());
-                        }
+                        values.put(key, value);
                     }
                 }
-                else
+            }
+        }
+        catch (JsonParseException e)
+        {
+            // Parsing the header again fails the load, which falls back to the local copy
+            log.warn("*** LOAD WARNING *** Saved history header is unreadable", e);
+        }
+        return values;
+    }
+
+    /**
+     * Parse a saved per-raid history, joining the records of the chunks its header lists
+     */
+    private Map<RaidType, StoredHistory> parseStoredHistory(Map<String, String> values)
+    {
+        Map<RaidType, StoredHistory> result = parseHistoryHeaders(values.get(HISTORY_KEY));
+        Type recordsType = new TypeToken<List<RaidRecord>>(){}.getType();
+        for (Map.Entry<RaidType, StoredHistory> entry : result.entrySet())
+        {
+            StoredHistory stored = entry.getValue();
+            List<RaidRecord> records = stored.getRecords() != null ? stored.getRecords() : new ArrayList<>();
+            for (int chunk = stored.getFirstChunk(); chunk < stored.getFirstChunk() + stored.getChunkCount(); chunk++)
+            {
+                String chunkJson = values.get(StoredHistory.chunkKey(HISTORY_KEY, entry.getKey(), chunk));
+                if (chunkJson == null)
+                {
+                    log.warn("*** LOAD WARNING *** Saved {} history is missing chunk {}", entry.getKey(), chunk);
+                    continue;
+                }
+
+                List<RaidRecord> chunkRecords = gson.fromJson(chunkJson, recordsType);
+                if (chunkRecords != null)
+                {
+                    records.addAll(chunkRecords);
+                }
+            }
+            stored.setRecords(records);
+            if (stored.getRemovedIds() == null)
+            {
+                stored.setRemovedIds(new HashSet<>());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Parse the header of a saved per-raid history
+     * Older versions stored the records in it, or a plain list of records per raid, which is still accepted
+     */
+    private Map<RaidType, StoredHistory> parseHistoryHeaders(String historyJson)
+    {
+        Map<RaidType, StoredHistory> result = new EnumMap<>(RaidType.class);
+        if (historyJson == null || historyJson.isEmpty())
+        {
+            return result;
+        }
+
+        JsonObject root = gson.fromJson(historyJson, JsonObject.class);
+        if (root == null)
+        {
+            log.warn("*** LOAD WARNING *** Parsed history was null");
+            return result;
+        }
+
+        Type recordsType = new TypeToken<List<RaidRecord>>(){}.getType();
+        for (Map.Entry<String, JsonElement> entry : root.entrySet())
+        {
+            try
+            {
+                RaidType raidType = RaidType.valueOf(entry.getKey());
+                JsonElement value = entry.getValue();
+                StoredHistory stored = value.isJsonArray()
+                    ? new StoredHistory(gson.fromJson(value, recordsType), new HashSet<>())
+                    : gson.fromJson(value, StoredHistory.class);
+                result.put(raidType, stored);
+            }
+            catch (IllegalArgumentException e)
+            {
+                log.warn("*** LOAD WARNING *** Unknown raid type in history: {}", entry.getKey());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Give records written before IDs existed a deterministic ID, so every client derives the same one
+     */
+    private static void assignLegacyIds(RaidType raidType, List<RaidRecord> records)
+    {
+        for (int i = 0; i < records.size(); i++)
+        {
+            RaidRecord record = records.get(i);
+            if (record.getId() == null)
+            {
+                record.setId(InstanceId.LEGACY + ":" + raidType.name() + ":" + i);
+            }
+        }
+    }
+
+    /**
+     * Whether a config key holds saved data rather than a setting
+     */
+    public static boolean isStoredDataKey(String key)
+    {
+        return key.equals(DATA_KEY) || key.equals(HISTORY_KEY) || key.equals(SUMMARY_KEY) || key.startsWith(HISTORY_KEY + ".");
+    }
+
+    /**
+     * Merge the loaded account's saved data after it changed in config, as when another client's save is synced in.
+     * The change events of our own saves are recognised and skipped.
+     * @return true if anything was merged in
+     */
+    public boolean mergeStoredData(String key, String value)
+    {
+        if (value == null || value.equals(savedValues.get(key)))
+        {
+            return false;
+        }
+
+        synchronized (this)
+        {
+            if (profileKey == null || (!key.equals(DATA_KEY) && !key.equals(HISTORY_KEY)))
+            {
+                return false;
+            }
+
+            ensureLoaded();
+            boolean changed = mergeStored(profileKey, raidData, raidHistory, historyStores, readStoredConfig());
+            if (changed)
+            {
+                // Journal entries point at the replaced objects
+                journal.clear();
+                saveData();
+            }
+            return changed;
+        }
+    }
+
+    /**
+     * Merge the local copy after another client on this install wrote to it
+     */
+    private synchronized void mergeLocalCopy(LocalDataStore store, Map<String, String> values)
+    {
+        if (store != localStore)
+        {
+            return;
+        }
+
+        localValues.putAll(values);
+        ensureLoaded();
+        if (mergeStored(profileKey, raidData, raidHistory, historyStores, values))
+        {
+            journal.clear();
+            saveData();
+        }
+    }
+
+    /**
+     * Merge another client's saved data into the given state
+     * @return true if anything was merged in
+     */
+    private boolean mergeStored(String profile, Map<RaidType, DryRateData> data, Map<RaidType, RaidHistory> histories,
+        List<MappedRecordStore> stores, Map<String, String> values)
+    {
+        Map<RaidType, DryRateData> storedData;
+        Map<RaidType, StoredHistory> storedHistory;
+        try
+        {
+            storedData = parseStoredData(values.get(DATA_KEY));
+            if (storedData.isEmpty())
+            {
+                return false;
+            }
+            storedHistory = parseStoredHistory(values);
+        }
+        catch (JsonParseException e)
+        {
+            // Our next save replaces it with the in-memory data
+            log.warn("*** MERGE WARNING *** Stored data is unreadable, not merging it", e);
+            return false;
+        }
+
+        boolean teamDropResets = settings.isTeamDropResets();
+        boolean changed = false;
+        for (RaidType raidType : RaidType.values())
+        {
+            StoredHistory stored = storedHistory.get(raidType);
+            if (stored != null)
+            {
+                assignLegacyIds(raidType, stored.getRecords());
+            }
+
+            DryRateMerger.Result result = DryRateMerger.merge(raidType, data.get(raidType), histories.get(raidType),
+                storedData.get(raidType), stored, teamDropResets);
+            if (result.isChanged())
+            {
+                RaidHistory history = result.getHistory();
+                if (histories.get(raidType).isPersistent() && !history.isPersistent())
+                {
+                    // The other client's full reset starts a new history file
+                    history = openHistory(profile, raidType, result.getData().getResetEpoch(),
+                        history.getRecords(), history.getRemovedIds(), stores);
+                }
+                data.put(raidType, result.getData());
+                histories.put(raidType, history);
+                changed = true;
+                log.debug("*** MERGE *** Merged stored {} data, completions now {}", raidType, result.getData().getTotalCompletions());
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Save data to configuration and the local copy
+     * Only values that changed are written, of the history only its header and the chunks holding changed raids.
+     * Other clients' saves are merged in when they are loaded or change, not on every save
+     */
+    public synchronized void saveData()
+    {
+        if (batching)
+        {
+            saveRequested = true;
+            return;
+        }
+
+        if (profileKey == null)
+        {
+            log.debug("No account data loaded, nothing to save");
+            return;
+        }
+
+        ensureLoaded();
+        long start = metrics.start();
+        try
+        {
+            if (diagnostics.isEnabled(Diagnostics.Category.SAVE))
+            {
+                for (Map.Entry<RaidType, DryRateData> entry : raidData.entrySet())
+                {
+                    DryRateData data = entry.getValue();
+                    diagnostics.log(Diagnostics.Category.SAVE, "*** {} SAVE *** {}", entry.getKey(),
+                        String.format("Streak: %d, Completions: %d, Uniques: %d",
+                            data.getCurrentDryStreak(), data.getTotalCompletions(), data.getTotalUniques()));
+                }
+            }
+
+            // Convert enum keys to strings to avoid serialization issues
+            Map<String, DryRateData> stringKeyMap = new java.util.HashMap<>();
+            for (Map.Entry<RaidType, DryRateData> entry : raidData.entrySet())
+            {
+                stringKeyMap.put(entry.getKey().name(), entry.getValue());
+            }
+            
+            String dataJson = gson.toJson(stringKeyMap);
+            diagnostics.log(Diagnostics.Category.SAVE, "*** SAVING DATA *** JSON to save: {}", dataJson);
+            int written = putStored(DATA_KEY, dataJson);
+
+            // Chunks go first, so a client that sees the new header finds every chunk it lists
+            Map<String, String> local = new HashMap<>();
+            Map<String, StoredHistory> historyMap = new java.util.HashMap<>();
+            for (Map.Entry<RaidType, RaidHistory> entry : raidHistory.entrySet())
+            {
+                RaidType raidType = entry.getKey();
+                StoredHistory header = StoredHistory.header(entry.getValue(), historyOffset(raidType));
+                historyMap.put(raidType.name(), header);
+                written += saveHistoryChunks(raidType, entry.getValue(), header);
+                for (int chunk = header.getFirstChunk(); chunk < header.getFirstChunk() + header.getChunkCount(); chunk++)
                 {
-                    log.warn("*** LOAD WARNING *** Parsed data was null");
+                    String key = StoredHistory.chunkKey(HISTORY_KEY, raidType, chunk);
+                    String chunkJson = chunkValues.get(key);
+                    if (chunkJson != null)
+                    {
+                        local.put(key, chunkJson);
+                    }
                 }
             }
-            else
+            String historyJson = gson.toJson(historyMap);
+            String previousHeader = configManager.getRSProfileConfiguration(CONFIG_GROUP, HISTORY_KEY);
+            int headerWritten = putStored(HISTORY_KEY, historyJson);
+            if (headerWritten > 0)
             {
-                		log.debug("No existing dry rate data found, starting fresh");
+                unsetDroppedChunks(previousHeader, historyMap);
             }
-            log.debug("*** LOAD COMPLETE *** Current raid data state:");
+            written += headerWritten;
+
+            Map<String, RaidSummary> summaryMap = new java.util.HashMap<>();
             for (Map.Entry<RaidType, DryRateData> entry : raidData.entrySet())
             {
-                DryRateData data = entry.getValue();
-                log.debug("*** {} CURRENT *** Streak: {}, Completions: {}, Uniques: {}", 
-                    entry.getKey(), data.getCurrentDryStreak(), data.getTotalCompletions(), data.getTotalUniques());
+                summaryMap.put(entry.getKey().name(), RaidSummary.of(entry.getValue()));
             }
+            String summaryJson = gson.toJson(summaryMap);
+            written += putStored(SUMMARY_KEY, summaryJson);
+
+            local.put(DATA_KEY, dataJson);
+            local.put(HISTORY_KEY, historyJson);
+            local.put(SUMMARY_KEY, summaryJson);
+            // Superseded values are dropped when the local copy compacts itself
+            local.entrySet().removeIf(entry -> entry.getValue().equals(localValues.get(entry.getKey())));
+            localValues.putAll(local);
+            writeLocalCopy(localStore, local, new ArrayList<>(historyStores), applyExecutor);
+            metrics.saved(start, written);
+            diagnostics.log(Diagnostics.Category.SAVE, "*** SAVE COMPLETE *** Saved to the profile of account {}, {} chars",
+                profileKey, written);
         }
         catch (Exception e)
         {
-            log.error("*** LOAD ERROR *** Error loading dry rate data", e);
+            log.error("*** SAVE ERROR *** Error saving dry rate data", e);
+        }
+    }
+
+    /**
+     * Write a value to the account's config unless it already holds it
+     * @return the number of characters written
+     */
+    private int putStored(String key, String value)
+    {
+        if (value.equals(configManager.getRSProfileConfiguration(CONFIG_GROUP, key)))
+        {
+            return 0;
+        }
+
+        // Our own write, its change event must not be merged back in
+        savedValues.put(key, value);
+        configManager.setRSProfileConfiguration(CONFIG_GROUP, key, value);
+        return value.length();
+    }
+
+    /**
+     * Write the chunks of a raid's history that changed since it was last saved. A history that was swapped
+     * or had raids folded away since has every chunk checked, writing only those that differ from config.
+     * @return the number of characters written
+     */
+    private int saveHistoryChunks(RaidType raidType, RaidHistory history, StoredHistory header)
+    {
+        int offset = historyOffset(raidType);
+        int end = header.getFirstChunk() + header.getChunkCount();
+        int firstChanged = header.getFirstChunk();
+        SavedHistory saved = savedHistories.get(raidType);
+        if (saved != null && saved.history == history && saved.offset == offset && saved.firstChunk <= header.getFirstChunk())
+        {
+            firstChanged = Math.max(firstChanged, StoredHistory.chunkOf(offset + history.getDirtyFrom()));
+        }
+
+        int written = 0;
+        for (int chunk = firstChanged; chunk < end; chunk++)
+        {
+            String key = StoredHistory.chunkKey(HISTORY_KEY, raidType, chunk);
+            String chunkJson = gson.toJson(StoredHistory.chunk(history, offset, chunk));
+            chunkValues.put(key, chunkJson);
+            written += putStored(key, chunkJson);
         }
+        history.markSaved();
+        savedHistories.put(raidType, new SavedHistory(history, offset, header.getFirstChunk()));
+        return written;
+    }
+
+    /**
+     * Remove the chunks the previous history header listed that the new one no longer does
+     */
+    private void unsetDroppedChunks(String previousHeader, Map<String, StoredHistory> headers)
+    {
+        Map<RaidType, StoredHistory> previous;
+        try
+        {
+            previous = parseHistoryHeaders(previousHeader);
+        }
+        catch (JsonParseException e)
+        {
+            return;
+        }
+
+        for (Map.Entry<RaidType, StoredHistory> entry : previous.entrySet())
+        {
+            StoredHistory header = headers.get(entry.getKey().name());
+            int first = entry.getValue().getFirstChunk();
+            for (int chunk = first; chunk < first + entry.getValue().getChunkCount(); chunk++)
+            {
+                if (header == null || chunk < header.getFirstChunk() || chunk >= header.getFirstChunk() + header.getChunkCount())
+                {
+                    String key = StoredHistory.chunkKey(HISTORY_KEY, entry.getKey(), chunk);
+                    savedValues.remove(key);
+                    chunkValues.remove(key);
+                    configManager.unsetRSProfileConfiguration(CONFIG_GROUP, key);
+                }
+            }
+        }
+    }
+
+    /**
+     * Raid count before the first raid of a raid's history, which numbers its saved chunks
+     */
+    private int historyOffset(RaidType raidType)
+    {
+        StreakBaseline baseline = raidData.get(raidType).getBaseline();
+        return baseline != null ? baseline.getCompletions() : 0;
+    }
+
+    /**
+     * Durably write a local copy of the saved data and flush the history files off the client thread.
+     * If another client on this install wrote to the copy since, what it wrote is merged in on mergeExecutor.
+     */
+    private void writeLocalCopy(LocalDataStore store, Map<String, String> values, List<MappedRecordStore> stores,
+        Executor mergeExecutor)
+    {
+        storeExecutor.execute(() ->
+        {
+            for (MappedRecordStore historyStore : stores)
+            {
+                historyStore.flush();
+            }
+
+            try
+            {
+                Map<String, String> written = store.readIfChanged();
+                if (written != null && mergeExecutor != null)
+                {
+                    mergeExecutor.execute(() -> mergeLocalCopy(store, written));
+                }
+                if (!values.isEmpty())
+                {
+                    store.write(values);
+                }
+            }
+            catch (IOException e)
+            {
+                log.warn("*** SAVE WARNING *** Could not write local copy {}", store.getFile(), e);
+            }
+        });
     }
 
     /**
-     * Save data to configuration
+     * Apply a batch of raid outcomes as one change, saving once at the end instead of after each outcome
      */
-    public void saveData()
+    public synchronized void applyBatch(Runnable outcomes)
     {
+        batching = true;
         try
         {
-            log.debug("*** SAVING DATA *** Current state before save:");
-            for (Map.Entry<RaidType, DryRateData> entry : raidData.entrySet())
-            {
-                DryRateData data = entry.getValue();
-                log.debug("*** {} SAVE *** Streak: {}, Completions: {}, Uniques: {}", 
-                    entry.getKey(), data.getCurrentDryStreak(), data.getTotalCompletions(), data.getTotalUniques());
-            }
-            
-            // Convert enum keys to strings to avoid serialization issues
-            Map<String, DryRateData> stringKeyMap = new java.util.HashMap<>();
-            for (Map.Entry<RaidType, DryRateData> entry : raidData.entrySet())
-            {
-                stringKeyMap.put(entry.getKey().name(), entry.getValue());
-            }
-            
-            String dataJson = gson.toJson(stringKeyMap);
-            log.debug("*** SAVING DATA *** JSON to save: {}", dataJson);
-            
-            configManager.setConfiguration(CONFIG_GROUP, DATA_KEY, dataJson);
-            log.debug("*** SAVE COMPLETE *** Data saved successfully to config group: {}, key: {}", CONFIG_GROUP, DATA_KEY);
+            outcomes.run();
         }
-        catch (Exception e)
+        finally
         {
-            log.error("*** SAVE ERROR *** Error saving dry rate data", e);
+            batching = false;
+        }
+
+        if (saveRequested)
+        {
+            saveRequested = false;
+            saveData();
         }
     }
 
@@ -141,6 +1142,16 @@ public class DryRateManager
      */
     public void handleRaidCompletion(RaidType raidType)
     {
+        handleRaidCompletion(raidType, RaidContext.UNKNOWN);
+    }
+
+    /**
+     * Handle a raid completion with the context it was completed in
+     */
+    public synchronized void handleRaidCompletion(RaidType raidType, RaidContext context)
+    {
+        ensureLoaded();
+
         if (!isRaidTrackingEnabled(raidType))
         {
             return;
@@ -149,10 +1160,22 @@ public class DryRateManager
         DryRateData data = raidData.get(raidType);
         if (data != null)
         {
+            Scalars before = Scalars.of(data);
+            RaidHistory history = raidHistory.get(raidType);
+            RaidRecord record = new RaidRecord(InstanceId.nextRecordId(), System.currentTimeMillis(), RaidOutcome.NO_UNIQUE, context);
+
             // Increment dry streak directly on each completion
             data.incrementDryStreak();
-            log.debug("Raid completion for {}: Dry streak now {}, total completions {}", 
-                raidType, data.getCurrentDryStreak(), data.getTotalCompletions());
+            history.append(record);
+            journal.record(new StateEntry(raidType, "completion", data, before, Scalars.of(data),
+                history::removeLast, () ->
+                {
+                    // The undone ID stays removed for other clients, so the redone raid gets a new one
+                    record.setId(InstanceId.nextRecordId());
+                    history.append(record);
+                }));
+            log.debug("Raid completion for {}: Dry streak now {}, total completions {}, context {}", 
+                raidType, data.getCurrentDryStreak(), data.getTotalCompletions(), context);
             saveData();
         }
     }
@@ -161,8 +1184,10 @@ public class DryRateManager
      * Handle receiving a unique drop (reset dry streak and increment unique count)
      * This is typically called manually when the user confirms they received a unique drop
      */
-    public void handleUniqueDropReceived(RaidType raidType)
+    public synchronized void handleUniqueDropReceived(RaidType raidType)
     {
+        ensureLoaded();
+
         if (!isRaidTrackingEnabled(raidType))
         {
             return;
@@ -172,9 +1197,11 @@ public class DryRateManager
         if (data != null)
         {
             int previousStreak = data.getCurrentDryStreak();
+            Scalars before = Scalars.of(data);
             
             // Reset dry streak (this handles history and unique count)
             data.resetDryStreak();
+            journalOutcome(raidType, "personal unique", data, before, RaidOutcome.PERSONAL_UNIQUE);
             
             log.debug("Unique drop for {}: Reset streak from {}, total uniques now {}", 
                 raidType, previousStreak, data.getTotalUniques());
@@ -183,38 +1210,147 @@ public class DryRateManager
     }
 
     /**
-     * Handle team member receiving unique drop (only reset if config enabled)
+     * Handle team member receiving unique drop
+     * Always recorded in the history, only resets the streak if config enabled
      */
-    public void handleTeamUniqueDropReceived(RaidType raidType)
+    public synchronized void handleTeamUniqueDropReceived(RaidType raidType)
     {
+        ensureLoaded();
+
         if (!isRaidTrackingEnabled(raidType))
         {
             return;
         }
 
+        DryRateData data = raidData.get(raidType);
+        if (data == null)
+        {
+            return;
+        }
+
+        Scalars before = Scalars.of(data);
+
         // Only reset dry streak if team drops are configured to reset personal streak
-        if (config != null && config.teamDropResets())
+        if (settings.isTeamDropResets())
         {
-            DryRateData data = raidData.get(raidType);
-            if (data != null)
+            int previousStreak = data.getCurrentDryStreak();
+            
+            // Reset dry streak but don't increment personal unique count
+            if (previousStreak > 0)
             {
-                int previousStreak = data.getCurrentDryStreak();
-                
-                // Reset dry streak but don't increment personal unique count
-                if (previousStreak > 0)
-                {
-                    data.getPreviousDryStreaks().add(previousStreak);
-                }
-                data.setCurrentDryStreak(0);
-                
-                log.debug("Team unique drop for {}: Reset streak from {} (team drops reset enabled)", 
-                    raidType, previousStreak);
-                saveData();
+                data.getPreviousDryStreaks().add(previousStreak);
             }
+            data.setCurrentDryStreak(0);
+            
+            log.debug("Team unique drop for {}: Reset streak from {} (team drops reset enabled)", 
+                raidType, previousStreak);
         }
         else
         {
-            log.debug("Team unique drop for {} ignored (team drops reset disabled)", raidType);
+            log.debug("Team unique drop for {} recorded, streak kept (team drops reset disabled)", raidType);
+        }
+        journalOutcome(raidType, "team unique", data, before, RaidOutcome.TEAM_UNIQUE);
+        saveData();
+    }
+
+    /**
+     * Rebuild every raid's aggregates from its baseline and history under the given team drop policy.
+     * Only a snapshot of each history's bitmaps is taken here, raids are replayed on the store thread
+     * and the results are swapped in together on applyExecutor.
+     */
+    public synchronized CompletableFuture<Void> recomputeAggregates(boolean teamDropResets, Executor applyExecutor)
+    {
+        ensureLoaded();
+
+        long start = System.nanoTime();
+        Map<RaidType, RaidHistory> histories = new EnumMap<>(RaidType.class);
+        Map<RaidType, AggregateRebuilder.Input> inputs = new EnumMap<>(RaidType.class);
+        Map<RaidType, CompletableFuture<DryRateData>> rebuilds = new EnumMap<>(RaidType.class);
+
+        for (RaidType raidType : RaidType.values())
+        {
+            RaidHistory history = raidHistory.get(raidType);
+            AggregateRebuilder.Input input = AggregateRebuilder.capture(raidType, raidData.get(raidType), history);
+            histories.put(raidType, history);
+            inputs.put(raidType, input);
+            rebuilds.put(raidType, CompletableFuture.supplyAsync(() -> AggregateRebuilder.rebuild(input, teamDropResets), storeExecutor));
+        }
+
+        return CompletableFuture.allOf(rebuilds.values().toArray(new CompletableFuture[0]))
+            .thenRunAsync(() ->
+            {
+                synchronized (this)
+                {
+                    if (profileKey == null)
+                    {
+                        return;
+                    }
+                    for (RaidType raidType : RaidType.values())
+                    {
+                        RaidHistory history = histories.get(raidType);
+                        AggregateRebuilder.Input input = inputs.get(raidType);
+                        DryRateData data = rebuilds.get(raidType).join();
+                        if (raidHistory.get(raidType) != history || input.isStale(history))
+                        {
+                            // Raids were recorded or data reset while rebuilding, replay the current state instead
+                            data = AggregateRebuilder.rebuild(AggregateRebuilder.capture(raidType, raidData.get(raidType), raidHistory.get(raidType)), teamDropResets);
+                        }
+                        raidData.put(raidType, data);
+                        log.debug("Recomputed {} from {} raids (teamDropResets={}): streak {}, uniques {}",
+                            raidType, input.size(), teamDropResets, data.getCurrentDryStreak(), data.getTotalUniques());
+                    }
+                    // Journal entries point at the replaced aggregates
+                    journal.clear();
+                    saveData();
+                }
+                log.debug("Recomputed all raid aggregates in {} ms", (System.nanoTime() - start) / 1_000_000);
+            }, applyExecutor);
+    }
+
+    /**
+     * Handle the player's own unique item being read from the reward chest
+     */
+    public synchronized void handleUniqueItemReceived(RaidType raidType, UniqueItem item)
+    {
+        ensureLoaded();
+
+        if (!isRaidTrackingEnabled(raidType))
+        {
+            return;
+        }
+
+        DryRateData data = raidData.get(raidType);
+        if (data != null)
+        {
+            RaidHistory history = raidHistory.get(raidType);
+            int index = history.size() - 1;
+            UniqueItem previousItem = index >= 0 ? history.get(index).getItem() : null;
+            int previousLastDrop = data.getUniqueItemLastDropAt(item);
+            Scalars scalars = Scalars.of(data);
+
+            data.recordUniqueItem(item);
+            history.setLastItem(item);
+            journal.record(new StateEntry(raidType, item.getShortName(), data, scalars, scalars,
+                () ->
+                {
+                    data.unrecordUniqueItem(item, previousLastDrop);
+                    if (index >= 0)
+                    {
+                        history.setItem(index, previousItem);
+                    }
+                },
+                () ->
+                {
+                    data.recordUniqueItem(item);
+                    if (index >= 0)
+                    {
+                        history.setItem(index, item);
+                    }
+                }));
+
+            log.debug("Unique item for {}: {} (received {} times)",
+                raidType, item.getShortName(), data.getUniqueItemCount(item));
+            saveData();
         }
     }
 
@@ -226,6 +1362,86 @@ public class DryRateManager
         return raidData.get(raidType);
     }
 
+    /**
+     * Get the recorded raid history for a specific raid type
+     */
+    public RaidHistory getRaidHistory(RaidType raidType)
+    {
+        return raidHistory.get(raidType);
+    }
+
+    /**
+     * The numbers the overlay shows for a raid, read together so they match, null when the raid has no data
+     */
+    public synchronized RaidSummary getRaidSummary(RaidType raidType)
+    {
+        DryRateData data = raidData.get(raidType);
+        return data != null ? RaidSummary.of(data) : null;
+    }
+
+    /**
+     * Number of recorded raids of a raid type, 0 when it has no history
+     */
+    public synchronized int getHistorySize(RaidType raidType)
+    {
+        RaidHistory history = raidHistory.get(raidType);
+        return history != null ? history.size() : 0;
+    }
+
+    /**
+     * A copy of a recorded raid for readers off the pipeline thread, null past the end of the history
+     */
+    public synchronized RaidRecord getHistoryRecord(RaidType raidType, int index)
+    {
+        RaidHistory history = raidHistory.get(raidType);
+        return history != null && index >= 0 && index < history.size() ? history.get(index).copy() : null;
+    }
+
+    /**
+     * Dry streak counted at a recorded raid under the current settings, 0 past the end of the history
+     */
+    public synchronized int getHistoryStreak(RaidType raidType, int index)
+    {
+        RaidHistory history = raidHistory.get(raidType);
+        if (history == null || index < 0 || index >= history.size())
+        {
+            return 0;
+        }
+
+        boolean teamDropResets = settings.isTeamDropResets();
+        return history.streakAt(index, teamDropResets, baselineStreak(raidType, teamDropResets));
+    }
+
+    /**
+     * Indexes of the recorded raids of a raid type that match a query, with streaks counted under the current settings
+     */
+    public synchronized BitSet queryHistory(RaidType raidType, HistoryQuery query)
+    {
+        RaidHistory history = raidHistory.get(raidType);
+        if (history == null)
+        {
+            return new BitSet();
+        }
+
+        boolean teamDropResets = settings.isTeamDropResets();
+        return history.select(query, teamDropResets, baselineStreak(raidType, teamDropResets));
+    }
+
+    private int baselineStreak(RaidType raidType, boolean teamDropResets)
+    {
+        DryRateData data = raidData.get(raidType);
+        return data != null && data.getBaseline() != null ? data.getBaseline().dryStreak(teamDropResets) : 0;
+    }
+
+    /**
+     * Results of a raid type over the last days and raids, null when it has no history
+     */
+    public synchronized RecentStats getRecentStats(RaidType raidType)
+    {
+        RaidHistory history = raidHistory.get(raidType);
+        return history != null ? RecentStats.of(history, System.currentTimeMillis()) : null;
+    }
+
     /**
      * Get all raid data
      */
@@ -237,51 +1453,336 @@ public class DryRateManager
     /**
      * Reset dry streak for a specific raid type
      */
-    public void resetDryStreak(RaidType raidType)
+    public synchronized void resetDryStreak(RaidType raidType)
     {
+        ensureLoaded();
+
         DryRateData data = raidData.get(raidType);
         if (data != null)
         {
+            RaidHistory history = raidHistory.get(raidType);
+            int index = history.size() - 1;
+            boolean previousFlag = index >= 0 && history.get(index).isStreakReset();
+            // With no raid in the history to mark, the reset goes in the baseline that rebuilds start from
+            StreakBaseline baseline = index < 0 ? data.getBaseline() : null;
+            int baselineStreak = baseline != null ? baseline.getDryStreak() : 0;
+            int baselineTeamStreak = baseline != null ? baseline.getTeamDryStreak() : 0;
+            Scalars before = Scalars.of(data);
+
             data.setCurrentDryStreak(0);
+            markStreakReset(history, baseline);
+            journal.record(new StateEntry(raidType, "manual reset", data, before, Scalars.of(data),
+                () ->
+                {
+                    if (index >= 0)
+                    {
+                        history.setStreakReset(index, previousFlag);
+                    }
+                    else if (baseline != null)
+                    {
+                        baseline.setDryStreak(baselineStreak);
+                        baseline.setTeamDryStreak(baselineTeamStreak);
+                    }
+                },
+                () -> markStreakReset(history, baseline)));
             log.debug("Manually reset dry streak for {}", raidType);
             saveData();
         }
     }
 
+    private static void markStreakReset(RaidHistory history, StreakBaseline baseline)
+    {
+        if (!history.markLastStreakReset() && baseline != null)
+        {
+            baseline.resetDryStreak();
+        }
+    }
+
     /**
      * Reset all data for a specific raid type
      */
-    public void resetAllData(RaidType raidType)
+    public synchronized void resetAllData(RaidType raidType)
     {
-        raidData.put(raidType, new DryRateData());
+        ensureLoaded();
+
+        DryRateData oldData = raidData.get(raidType);
+        RaidHistory oldHistory = raidHistory.get(raidType);
+        DryRateData data = new DryRateData();
+        data.setBaseline(new StreakBaseline());
+        data.setResetEpoch(System.currentTimeMillis());
+
+        // A history file is kept per reset epoch
+        RaidHistory history = oldHistory.isPersistent()
+            ? openHistory(profileKey, raidType, data.getResetEpoch(), new ArrayList<>(), null, historyStores)
+            : new RaidHistory();
+
+        raidData.put(raidType, data);
+        raidHistory.put(raidType, history);
+
+        // The old objects are kept by reference, so undoing a full reset is a swap
+        journal.record(new DryRateJournal.Entry()
+        {
+            private RaidHistory before = oldHistory;
+            private RaidHistory after = history;
+
+            @Override
+            public RaidType getRaidType()
+            {
+                return raidType;
+            }
+
+            @Override
+            public String getDescription()
+            {
+                return raidType.getShortName() + " full reset";
+            }
+
+            @Override
+            public void undo()
+            {
+                before = reinstate(raidType, oldData, before);
+            }
+
+            @Override
+            public void redo()
+            {
+                after = reinstate(raidType, data, after);
+            }
+        });
         log.debug("Reset all data for {}", raidType);
         saveData();
     }
 
+    /**
+     * Swap a raid's data back in under a new reset epoch, so it wins over the copy saved before it.
+     * A history kept in a file moves to the file of the new epoch.
+     */
+    private RaidHistory reinstate(RaidType raidType, DryRateData data, RaidHistory history)
+    {
+        long epoch = Math.max(System.currentTimeMillis(), raidData.get(raidType).getResetEpoch() + 1);
+        data.setResetEpoch(epoch);
+        if (history.isPersistent())
+        {
+            history = openHistory(profileKey, raidType, epoch, new ArrayList<>(history.getRecords()),
+                history.getRemovedIds(), historyStores);
+        }
+
+        raidData.put(raidType, data);
+        raidHistory.put(raidType, history);
+        return history;
+    }
+
+    /**
+     * Undo the most recent detection or reset
+     * @return a description of what was undone, or null if there was nothing to undo
+     */
+    public synchronized String undo()
+    {
+        ensureLoaded();
+
+        DryRateJournal.Entry entry = journal.undo();
+        if (entry == null)
+        {
+            return null;
+        }
+
+        log.debug("Undid {}", entry.getDescription());
+        saveData();
+        return entry.getDescription();
+    }
 
+    /**
+     * Redo the most recently undone detection or reset
+     * @return a description of what was redone, or null if there was nothing to redo
+     */
+    public synchronized String redo()
+    {
+        ensureLoaded();
 
+        DryRateJournal.Entry entry = journal.redo();
+        if (entry == null)
+        {
+            return null;
+        }
 
+        log.debug("Redid {}", entry.getDescription());
+        saveData();
+        return entry.getDescription();
+    }
 
     /**
-     * Check if tracking is enabled for a specific raid type
+     * Get the journal of detections and resets that can be undone
      */
-    private boolean isRaidTrackingEnabled(RaidType raidType)
+    public DryRateJournal getJournal()
+    {
+        return journal;
+    }
+
+    /**
+     * Journal an outcome change on the most recent raid, applying it to the history
+     */
+    private void journalOutcome(RaidType raidType, String description, DryRateData data, Scalars before, RaidOutcome outcome)
+    {
+        RaidHistory history = raidHistory.get(raidType);
+        int index = history.size() - 1;
+        RaidOutcome previousOutcome = index >= 0 ? history.get(index).getOutcome() : null;
+        history.setLastOutcome(outcome);
+
+        journal.record(new StateEntry(raidType, description, data, before, Scalars.of(data),
+            () ->
+            {
+                if (index >= 0)
+                {
+                    history.setOutcome(index, previousOutcome);
+                }
+            },
+            () ->
+            {
+                if (index >= 0)
+                {
+                    history.setOutcome(index, outcome);
+                }
+            }));
+    }
+
+    /**
+     * Scalar aggregates of a raid before or after a journaled change
+     */
+    private static final class Scalars
+    {
+        private final int dryStreak;
+        private final int completions;
+        private final int uniques;
+        private final long lastDropTime;
+        private final int previousStreakCount;
+        private final Integer lastPreviousStreak;
+
+        private Scalars(DryRateData data)
+        {
+            List<Integer> previous = data.getPreviousDryStreaks();
+            this.dryStreak = data.getCurrentDryStreak();
+            this.completions = data.getTotalCompletions();
+            this.uniques = data.getTotalUniques();
+            this.lastDropTime = data.getLastDropTime();
+            this.previousStreakCount = previous.size();
+            this.lastPreviousStreak = previous.isEmpty() ? null : previous.get(previous.size() - 1);
+        }
+
+        static Scalars of(DryRateData data)
+        {
+            return new Scalars(data);
+        }
+
+        /**
+         * Restore these values, trimming or extending the streak list by at most one entry
+         */
+        void applyTo(DryRateData data)
+        {
+            data.setCurrentDryStreak(dryStreak);
+            data.setTotalCompletions(completions);
+            data.setTotalUniques(uniques);
+            data.setLastDropTime(lastDropTime);
+
+            List<Integer> previous = data.getPreviousDryStreaks();
+            while (previous.size() > previousStreakCount)
+            {
+                previous.remove(previous.size() - 1);
+            }
+            if (previous.size() < previousStreakCount && lastPreviousStreak != null)
+            {
+                previous.add(lastPreviousStreak);
+            }
+        }
+    }
+
+    /**
+     * Journal entry that restores a raid's scalar aggregates and reverts its history change
+     */
+    private static final class StateEntry implements DryRateJournal.Entry
     {
-        if (config == null)
+        private final RaidType raidType;
+        private final String description;
+        private final DryRateData data;
+        private final Scalars before;
+        private final Scalars after;
+        private final Runnable historyUndo;
+        private final Runnable historyRedo;
+
+        StateEntry(RaidType raidType, String description, DryRateData data, Scalars before, Scalars after,
+            Runnable historyUndo, Runnable historyRedo)
+        {
+            this.raidType = raidType;
+            this.description = raidType.getShortName() + " " + description;
+            this.data = data;
+            this.before = before;
+            this.after = after;
+            this.historyUndo = historyUndo;
+            this.historyRedo = historyRedo;
+        }
+
+        @Override
+        public RaidType getRaidType()
+        {
+            return raidType;
+        }
+
+        @Override
+        public String getDescription()
+        {
+            return description;
+        }
+
+        @Override
+        public void undo()
         {
-            return true; // Default to enabled if config is not available
+            before.applyTo(data);
+            historyUndo.run();
         }
 
-        switch (raidType)
+        @Override
+        public void redo()
+        {
+            after.applyTo(data);
+            historyRedo.run();
+        }
+    }
+
+    /**
+     * Check if tracking is enabled for a specific raid type
+     */
+    private boolean isRaidTrackingEnabled(RaidType raidType)
+    {
+        return settings.isTracked(raidType);
+    }
+
+    /**
+     * A raid's history as of its last save
+     */
+    private static final class SavedHistory
+    {
+        private final RaidHistory history;
+        private final int offset;
+        private final int firstChunk;
+
+        private SavedHistory(RaidHistory history, int offset, int firstChunk)
         {
-            case TOB:
-                return config.trackToB();
-            case TOA:
-                return config.trackToA();
-            case COX:
-                return config.trackCoX();
-            default:
-                return true;
+            this.history = history;
+            this.offset = offset;
+            this.firstChunk = firstChunk;
         }
     }
+
+    /**
+     * An account's parsed data, before it is swapped in
+     */
+    private static final class LoadedProfile
+    {
+        private final List<MappedRecordStore> stores = new ArrayList<>();
+        private final Map<String, String> local = new HashMap<>();
+        private final Map<RaidType, SavedHistory> saved = new EnumMap<>(RaidType.class);
+        private final Map<String, String> chunks = new HashMap<>();
+        private boolean applied;
+        private final Map<RaidType, DryRateData> data = new EnumMap<>(RaidType.class);
+        private final Map<RaidType, RaidHistory> history = new EnumMap<>(RaidType.class);
+    }
 } 
\ No newline at end of file
@@ -0,0 +1,185 @@
+package com.dryrate;
+
+import net.runelite.client.ui.FontManager;
+import net.runelite.client.ui.overlay.Overlay;
+import net.runelite.client.ui.overlay.OverlayLayer;
+import net.runelite.client.ui.overlay.OverlayPosition;
+import net.runelite.client.ui.overlay.components.ComponentConstants;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+/**
+ * In-game overlay with the dry streak, odds and session count of the raid the player is in.
+ * The overlay is drawn into an image that is only redrawn when the numbers it shows change,
+ * so a frame costs a few field reads and one image blit.
+ */
+@Singleton
+public class DryRateOverlay extends Overlay
+{
+    private static final int PADDING = 4;
+    private static final int LINE_GAP = 2;
+    private static final int COLUMN_GAP = 10;
+
+    private final DryRateManager dryRateManager;
+
+    // Raid of the region the player is in, null outside raids, only touched on the client thread
+    private RaidType raidType;
+
+    // Completions of each raid when the account's data was loaded, -1 until then
+    private final int[] sessionStart = new int[RaidType.values().length];
+
+    // The numbers the cached image shows
+    private BufferedImage image;
+    private Dimension size;
+    private RaidType imageRaid;
+    private int imageStreak = -1;
+    private int imageCompletions = -1;
+    private int imageUniques = -1;
+    private int imageSession = -1;
+
+    @Inject
+    public DryRateOverlay(DryRateManager dryRateManager)
+    {
+        this.dryRateManager = dryRateManager;
+        setPosition(OverlayPosition.TOP_LEFT);
+        setLayer(OverlayLayer.ABOVE_WIDGETS);
+        Arrays.fill(sessionStart, -1);
+    }
+
+    /**
+     * Set the raid whose stats are shown, null hides the overlay
+     */
+    public void setRaidType(RaidType raidType)
+    {
+        this.raidType = raidType;
+    }
+
+    /**
+     * Start counting session completions from the loaded totals
+     */
+    public void startSession()
+    {
+        for (RaidType raid : RaidType.values())
+        {
+            RaidSummary summary = dryRateManager.getRaidSummary(raid);
+            sessionStart[raid.ordinal()] = summary != null ? summary.getTotalCompletions() : -1;
+        }
+    }
+
+    /**
+     * Forget the session, the next load starts a new one
+     */
+    public void endSession()
+    {
+        Arrays.fill(sessionStart, -1);
+    }
+
+    @Override
+    public Dimension render(Graphics2D graphics)
+    {
+        RaidType raid = raidType;
+        if (raid == null || !dryRateManager.getSettings().isShowOverlay() || !dryRateManager.isProfileLoaded())
+        {
+            return null;
+        }
+
+        // Read under the manager's lock, raids are recorded on the pipeline thread while the overlay renders
+        RaidSummary summary = dryRateManager.getRaidSummary(raid);
+        if (summary == null)
+        {
+            return null;
+        }
+
+        int streak = summary.getCurrentDryStreak();
+        int completions = summary.getTotalCompletions();
+        int uniques = summary.getTotalUniques();
+        int start = sessionStart[raid.ordinal()];
+        int session = start < 0 ? 0 : Math.max(0, completions - start);
+
+        if (image == null || raid != imageRaid || streak != imageStreak || completions != imageCompletions
+            || uniques != imageUniques || session != imageSession)
+        {
+            image = draw(raid, streak, completions, uniques, session);
+            size = new Dimension(image.getWidth(), image.getHeight());
+            imageRaid = raid;
+            imageStreak = streak;
+            imageCompletions = completions;
+            imageUniques = uniques;
+            imageSession = session;
+        }
+
+        graphics.drawImage(image, 0, 0, null);
+        return size;
+    }
+
+    /**
+     * Lay out and draw the overlay for the given numbers
+     */
+    private static BufferedImage draw(RaidType raid, int streak, int completions, int uniques, int session)
+    {
+        String[] labels = {"Dry streak:", "Your rate:", "Odds this dry:", "This session:"};
+        String[] values = {
+            Integer.toString(streak),
+            uniques > 0 ? String.format("1/%.1f", (double) completions / uniques) : "-",
+            uniques > 0 ? String.format("%.1f%%", 100 * Math.pow(1 - (double) uniques / completions, streak)) : "-",
+            Integer.toString(session)
+        };
+        String title = raid.getFullName();
+
+        Font font = FontManager.getRunescapeFont();
+        Font titleFont = FontManager.getRunescapeBoldFont();
+
+        // Measure with a scratch image, the real one is sized from the result
+        BufferedImage scratch = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D measure = scratch.createGraphics();
+        FontMetrics metrics = measure.getFontMetrics(font);
+        FontMetrics titleMetrics = measure.getFontMetrics(titleFont);
+        measure.dispose();
+
+        int labelWidth = 0;
+        int valueWidth = 0;
+        for (int i = 0; i < labels.length; i++)
+        {
+            labelWidth = Math.max(labelWidth, metrics.stringWidth(labels[i]));
+            valueWidth = Math.max(valueWidth, metrics.stringWidth(values[i]));
+        }
+        int width = Math.max(ComponentConstants.STANDARD_WIDTH,
+            Math.max(titleMetrics.stringWidth(title), labelWidth + COLUMN_GAP + valueWidth) + 2 * PADDING);
+        int lineHeight = metrics.getHeight() + LINE_GAP;
+        int height = 2 * PADDING + titleMetrics.getHeight() + LINE_GAP + labels.length * lineHeight;
+
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = image.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_OFF);
+        g.setColor(ComponentConstants.STANDARD_BACKGROUND_COLOR);
+        g.fillRect(0, 0, width, height);
+
+        int y = PADDING + titleMetrics.getAscent();
+        g.setFont(titleFont);
+        g.setColor(Color.ORANGE);
+        g.drawString(title, (width - titleMetrics.stringWidth(title)) / 2, y);
+        y += titleMetrics.getDescent() + LINE_GAP;
+
+        g.setFont(font);
+        for (int i = 0; i < labels.length; i++)
+        {
+            y += metrics.getAscent();
+            g.setColor(Color.WHITE);
+            g.drawString(labels[i], PADDING, y);
+            g.setColor(i == 0 && streak > 0 ? Color.YELLOW : Color.WHITE);
+            g.drawString(values[i], width - PADDING - metrics.stringWidth(values[i]), y);
+            y += metrics.getDescent() + LINE_GAP;
+        }
+        g.dispose();
+        return image;
+    }
+}
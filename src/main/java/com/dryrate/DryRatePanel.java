@@ -1,5 +1,8 @@
 package com.dryrate;
 
+import com.dryrate.history.HistoryQuery;
+import com.dryrate.history.RaidOutcome;
+import com.dryrate.metrics.DryRateMetrics;
 import lombok.extern.slf4j.Slf4j;
 import net.runelite.client.ui.ColorScheme;
 import net.runelite.client.ui.PluginPanel;
@@ -10,6 +13,7 @@ import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.text.DecimalFormat;
+import java.util.EnumMap;
 import java.util.Map;
 
 /**
@@ -20,16 +24,22 @@ public class DryRatePanel extends PluginPanel
 {
     private final DryRateManager dryRateManager;
     private final DryRateConfig config;
+    private final DryRateMetrics metrics;
     private final DecimalFormat decimalFormat;
     
     // UI Components
     private JPanel mainPanel;
     private Map<RaidType, JPanel> raidPanels;
+    // Kept across rebuilds so their cached images survive a refresh that does not change the history
+    private final Map<RaidType, StreakChart> streakCharts = new EnumMap<>(RaidType.class);
+    private HistoryTableModel historyModel;
+    private JPanel historyPanel;
 
-    public DryRatePanel(DryRateManager dryRateManager, DryRateConfig config)
+    public DryRatePanel(DryRateManager dryRateManager, DryRateConfig config, DryRateMetrics metrics)
     {
         this.dryRateManager = dryRateManager;
         this.config = config;
+        this.metrics = metrics;
         this.decimalFormat = new DecimalFormat("#.#");
         
         setBackground(ColorScheme.DARK_GRAY_COLOR);
@@ -146,6 +156,8 @@ public class DryRatePanel extends PluginPanel
     public void updateDisplay()
     {
         SwingUtilities.invokeLater(() -> {
+            metrics.panelRefreshed();
+
             // Remove all components and rebuild
             mainPanel.removeAll();
             
@@ -156,7 +168,9 @@ public class DryRatePanel extends PluginPanel
             titleLabel.setAlignmentX(Component.CENTER_ALIGNMENT);
             mainPanel.add(titleLabel);
             
-            mainPanel.add(Box.createVerticalStrut(12));
+            mainPanel.add(Box.createVerticalStrut(6));
+            mainPanel.add(createJournalPanel());
+            mainPanel.add(Box.createVerticalStrut(8));
 
             // Re-add raid panels with updated data
             for (RaidType raidType : RaidType.values())
@@ -166,11 +180,233 @@ public class DryRatePanel extends PluginPanel
                 mainPanel.add(Box.createVerticalStrut(8));
             }
 
+            if (historyPanel == null)
+            {
+                historyPanel = createHistoryPanel();
+            }
+            historyModel.refresh();
+            mainPanel.add(historyPanel);
+            mainPanel.add(Box.createVerticalStrut(8));
+
+            if (metrics.isEnabled())
+            {
+                mainPanel.add(createMetricsPanel());
+            }
+
             mainPanel.revalidate();
             mainPanel.repaint();
         });
     }
 
+    /**
+     * Undo/redo buttons for the most recent detections and resets
+     */
+    private JPanel createJournalPanel()
+    {
+        JPanel journalPanel = new JPanel(new GridLayout(1, 2, 4, 0));
+        journalPanel.setBackground(ColorScheme.DARK_GRAY_COLOR);
+        journalPanel.setMaximumSize(new Dimension(Integer.MAX_VALUE, 24));
+
+        DryRateJournal journal = dryRateManager.getJournal();
+        DryRateJournal.Entry undoEntry = journal.peekUndo();
+        DryRateJournal.Entry redoEntry = journal.peekRedo();
+
+        JButton undoButton = new JButton("Undo");
+        undoButton.setEnabled(undoEntry != null);
+        undoButton.setToolTipText(undoEntry != null ? "Undo " + undoEntry.getDescription() : "Nothing to undo");
+        undoButton.setFocusPainted(false);
+        undoButton.setFont(new Font("SansSerif", Font.PLAIN, 11));
+        undoButton.addActionListener(e ->
+        {
+            dryRateManager.undo();
+            updateDisplay();
+        });
+
+        JButton redoButton = new JButton("Redo");
+        redoButton.setEnabled(redoEntry != null);
+        redoButton.setToolTipText(redoEntry != null ? "Redo " + redoEntry.getDescription() : "Nothing to redo");
+        redoButton.setFocusPainted(false);
+        redoButton.setFont(new Font("SansSerif", Font.PLAIN, 11));
+        redoButton.addActionListener(e ->
+        {
+            dryRateManager.redo();
+            updateDisplay();
+        });
+
+        journalPanel.add(undoButton);
+        journalPanel.add(redoButton);
+        return journalPanel;
+    }
+
+    /**
+     * Browser over every recorded raid of one raid type, created once and kept across rebuilds
+     */
+    private JPanel createHistoryPanel()
+    {
+        JPanel panel = new JPanel(new BorderLayout(0, 4));
+        panel.setBackground(ColorScheme.DARKER_GRAY_COLOR);
+        panel.setBorder(BorderFactory.createCompoundBorder(
+            BorderFactory.createLineBorder(ColorScheme.MEDIUM_GRAY_COLOR),
+            new EmptyBorder(8, 8, 8, 8)
+        ));
+
+        JLabel titleLabel = new JLabel("Raid history");
+        titleLabel.setForeground(Color.WHITE);
+        titleLabel.setFont(titleLabel.getFont().deriveFont(Font.BOLD, 14f));
+
+        JComboBox<RaidType> raidSelector = new JComboBox<>(RaidType.values());
+        raidSelector.setFont(new Font("SansSerif", Font.PLAIN, 11));
+        raidSelector.setFocusable(false);
+        raidSelector.setRenderer(new DefaultListCellRenderer()
+        {
+            @Override
+            public Component getListCellRendererComponent(JList<?> list, Object value, int index, boolean selected, boolean focused)
+            {
+                super.getListCellRendererComponent(list, value, index, selected, focused);
+                setText(value instanceof RaidType ? ((RaidType) value).getShortName() : "");
+                return this;
+            }
+        });
+
+        JPanel header = new JPanel(new BorderLayout(4, 0));
+        header.setBackground(ColorScheme.DARKER_GRAY_COLOR);
+        header.add(titleLabel, BorderLayout.WEST);
+        header.add(raidSelector, BorderLayout.EAST);
+        panel.add(header, BorderLayout.NORTH);
+
+        historyModel = new HistoryTableModel(dryRateManager, RaidType.values()[0]);
+        raidSelector.addActionListener(e -> historyModel.setRaidType((RaidType) raidSelector.getSelectedItem()));
+
+        // Filters, answered from the history's indexes
+        JComboBox<String> outcomeFilter = createFilter("Any outcome", "Purples", "Team purples", "No purple", "Dry 50+");
+        JComboBox<String> modeFilter = createFilter("Any mode", "Entry", "Normal", "Hard");
+        JComboBox<String> teamFilter = createFilter("Any team", "Solo", "Duo", "Trio", "4", "5", "6", "7", "8+");
+        ActionListener applyFilters = e ->
+        {
+            HistoryQuery query = HistoryQuery.ALL;
+            switch (outcomeFilter.getSelectedIndex())
+            {
+                case 1:
+                    query = query.withOutcome(RaidOutcome.PERSONAL_UNIQUE);
+                    break;
+                case 2:
+                    query = query.withOutcome(RaidOutcome.TEAM_UNIQUE);
+                    break;
+                case 3:
+                    query = query.withOutcome(RaidOutcome.NO_UNIQUE);
+                    break;
+                case 4:
+                    query = query.withMinStreak(50);
+                    break;
+                default:
+                    break;
+            }
+            if (modeFilter.getSelectedIndex() > 0)
+            {
+                query = query.withMode(RaidMode.values()[modeFilter.getSelectedIndex() - 1]);
+            }
+            int team = teamFilter.getSelectedIndex();
+            if (team > 0)
+            {
+                query = query.withTeamSize(team, team == 8 ? Integer.MAX_VALUE : team);
+            }
+            historyModel.setQuery(query);
+        };
+        outcomeFilter.addActionListener(applyFilters);
+        modeFilter.addActionListener(applyFilters);
+        teamFilter.addActionListener(applyFilters);
+
+        JPanel filterPanel = new JPanel(new GridLayout(1, 3, 4, 0));
+        filterPanel.setBackground(ColorScheme.DARKER_GRAY_COLOR);
+        filterPanel.add(outcomeFilter);
+        filterPanel.add(modeFilter);
+        filterPanel.add(teamFilter);
+
+        // Fixed row height and no sorter, so the table works out the visible rows by division and reads only those
+        JTable table = new JTable(historyModel);
+        table.setFont(new Font("SansSerif", Font.PLAIN, 10));
+        table.setRowHeight(16);
+        table.setFillsViewportHeight(true);
+        table.setShowGrid(false);
+        table.setBackground(ColorScheme.DARKER_GRAY_COLOR);
+        table.setForeground(ColorScheme.LIGHT_GRAY_COLOR);
+        table.getTableHeader().setReorderingAllowed(false);
+        table.getTableHeader().setFont(new Font("SansSerif", Font.BOLD, 10));
+        table.getColumnModel().getColumn(0).setPreferredWidth(62);
+        table.getColumnModel().getColumn(1).setPreferredWidth(60);
+        table.getColumnModel().getColumn(2).setPreferredWidth(30);
+        table.getColumnModel().getColumn(3).setPreferredWidth(88);
+
+        JScrollPane scrollPane = new JScrollPane(table);
+        scrollPane.setPreferredSize(new Dimension(0, 240));
+        scrollPane.setBorder(null);
+        scrollPane.getVerticalScrollBar().setPreferredSize(new Dimension(8, 0));
+        scrollPane.getVerticalScrollBar().setUnitIncrement(16);
+        JPanel content = new JPanel(new BorderLayout(0, 4));
+        content.setBackground(ColorScheme.DARKER_GRAY_COLOR);
+        content.add(filterPanel, BorderLayout.NORTH);
+        content.add(scrollPane, BorderLayout.CENTER);
+        panel.add(content, BorderLayout.CENTER);
+
+        panel.setMaximumSize(new Dimension(Integer.MAX_VALUE, 310));
+        return panel;
+    }
+
+    private static JComboBox<String> createFilter(String... options)
+    {
+        JComboBox<String> filter = new JComboBox<>(options);
+        filter.setFont(new Font("SansSerif", Font.PLAIN, 10));
+        filter.setFocusable(false);
+        return filter;
+    }
+
+    /**
+     * Debug section with the handler, detector and save metrics
+     */
+    private JPanel createMetricsPanel()
+    {
+        JPanel panel = new JPanel(new BorderLayout(0, 4));
+        panel.setBackground(ColorScheme.DARKER_GRAY_COLOR);
+        panel.setBorder(BorderFactory.createCompoundBorder(
+            BorderFactory.createLineBorder(ColorScheme.MEDIUM_GRAY_COLOR),
+            new EmptyBorder(8, 8, 8, 8)
+        ));
+
+        JLabel titleLabel = new JLabel("Debug metrics");
+        titleLabel.setForeground(Color.WHITE);
+        titleLabel.setFont(titleLabel.getFont().deriveFont(Font.BOLD, 14f));
+        panel.add(titleLabel, BorderLayout.NORTH);
+
+        JTextArea report = new JTextArea(metrics.format());
+        report.setEditable(false);
+        report.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 10));
+        report.setForeground(ColorScheme.LIGHT_GRAY_COLOR);
+        report.setBackground(ColorScheme.DARKER_GRAY_COLOR);
+        panel.add(report, BorderLayout.CENTER);
+
+        JPanel buttonPanel = new JPanel(new GridLayout(1, 2, 4, 0));
+        buttonPanel.setBackground(ColorScheme.DARKER_GRAY_COLOR);
+
+        JButton refreshButton = new JButton("Refresh");
+        refreshButton.setFocusPainted(false);
+        refreshButton.setFont(new Font("SansSerif", Font.PLAIN, 11));
+        refreshButton.addActionListener(e -> report.setText(metrics.format()));
+
+        JButton resetButton = new JButton("Reset");
+        resetButton.setFocusPainted(false);
+        resetButton.setFont(new Font("SansSerif", Font.PLAIN, 11));
+        resetButton.addActionListener(e ->
+        {
+            metrics.reset();
+            report.setText(metrics.format());
+        });
+
+        buttonPanel.add(refreshButton);
+        buttonPanel.add(resetButton);
+        panel.add(buttonPanel, BorderLayout.SOUTH);
+        return panel;
+    }
+
     /**
      * Force refresh the display (useful for testing config changes)
      */
@@ -244,6 +480,61 @@ public class DryRatePanel extends PluginPanel
         stats3Label.setAlignmentX(Component.CENTER_ALIGNMENT);
         panel.add(stats3Label);
 
+        // Recent results from the history's range indexes
+        RecentStats recent = dryRateManager.getRecentStats(raidType);
+        if (recent != null && recent.getCompletions() > 0)
+        {
+            String recentText = "Last " + RecentStats.DAYS + " days: " + recent.getCompletions() + " | Uniques: " + recent.getUniques();
+            if (recent.getTeamUniques() > 0)
+            {
+                recentText += " (+" + recent.getTeamUniques() + " team)";
+            }
+            JLabel recentLabel = new JLabel(recentText);
+            recentLabel.setForeground(ColorScheme.LIGHT_GRAY_COLOR);
+            recentLabel.setFont(new Font("SansSerif", Font.PLAIN, 12));
+            recentLabel.setAlignmentX(Component.CENTER_ALIGNMENT);
+            panel.add(recentLabel);
+        }
+        if (recent != null && recent.getRecentDryRate() > 0)
+        {
+            JLabel rateLabel = new JLabel("Last " + RecentStats.RAIDS + " raids: 1 in " + decimalFormat.format(recent.getRecentDryRate()));
+            rateLabel.setForeground(ColorScheme.LIGHT_GRAY_COLOR);
+            rateLabel.setFont(new Font("SansSerif", Font.PLAIN, 12));
+            rateLabel.setAlignmentX(Component.CENTER_ALIGNMENT);
+            panel.add(rateLabel);
+        }
+
+        // Per-unique counts, only for items that have been received
+        boolean hasItems = false;
+        for (UniqueItem item : UniqueItem.forRaid(raidType))
+        {
+            int count = data.getUniqueItemCount(item);
+            if (count == 0)
+            {
+                continue;
+            }
+
+            if (!hasItems)
+            {
+                panel.add(Box.createVerticalStrut(4));
+                hasItems = true;
+            }
+
+            JLabel itemLabel = new JLabel(item.getShortName() + ": " + count + " (dry " + data.getUniqueItemDryStreak(item) + ")");
+            itemLabel.setForeground(ColorScheme.LIGHT_GRAY_COLOR);
+            itemLabel.setFont(new Font("SansSerif", Font.PLAIN, 11));
+            itemLabel.setAlignmentX(Component.CENTER_ALIGNMENT);
+            panel.add(itemLabel);
+        }
+
+        panel.add(Box.createVerticalStrut(6));
+
+        // Dry streak history and distribution
+        StreakChart chart = streakCharts.computeIfAbsent(raidType, r -> new StreakChart());
+        chart.setData(data);
+        chart.setAlignmentX(Component.CENTER_ALIGNMENT);
+        panel.add(chart);
+
         panel.add(Box.createVerticalStrut(6));
 
         // Reset buttons panel
@@ -304,7 +595,7 @@ public class DryRatePanel extends PluginPanel
                     "• Total completions\n" +
                     "• Total uniques\n" +
                     "• Longest dry streak\n\n" +
-                    "This action cannot be undone!",
+                    "You can revert this with the Undo button.",
                     "Confirm Full Reset",
                     JOptionPane.YES_NO_OPTION,
                     JOptionPane.WARNING_MESSAGE
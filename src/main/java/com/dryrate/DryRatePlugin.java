@@ -4,33 +4,51 @@ import com.dryrate.detectors.RaidDetector;
 import com.dryrate.detectors.TobRaidDetector;
 import com.dryrate.detectors.ToaRaidDetector;
 import com.dryrate.detectors.CoxRaidDetector;
+import com.dryrate.detectors.CreditedInstances;
+import com.dryrate.detectors.LootTiles;
+import com.dryrate.diagnostics.Diagnostics;
+import com.dryrate.metrics.DryRateMetrics;
+import com.dryrate.metrics.MetricsExporter;
+import com.dryrate.pipeline.OutcomePipeline;
 import com.google.inject.Provides;
 import javax.inject.Inject;
 import lombok.extern.slf4j.Slf4j;
 
+import net.runelite.api.ChatMessageType;
 import net.runelite.api.Client;
+import net.runelite.api.Constants;
+import net.runelite.api.GameObject;
 import net.runelite.api.GameState;
 import net.runelite.api.Player;
-import net.runelite.api.coords.WorldPoint;
+import net.runelite.api.Point;
+import net.runelite.api.Scene;
+import net.runelite.api.Tile;
+import net.runelite.api.WallObject;
+import net.runelite.api.WorldView;
 import net.runelite.api.coords.LocalPoint;
 
+import net.runelite.api.events.ChatMessage;
 import net.runelite.api.events.GameObjectSpawned;
 import net.runelite.api.events.GameStateChanged;
 import net.runelite.api.events.GameTick;
+import net.runelite.api.events.ItemContainerChanged;
 import net.runelite.api.events.VarbitChanged;
 import net.runelite.api.events.WallObjectSpawned;
+import net.runelite.client.RuneLite;
+import net.runelite.client.callback.ClientThread;
 import net.runelite.client.events.ConfigChanged;
+import net.runelite.client.events.RuneScapeProfileChanged;
 import net.runelite.client.config.ConfigManager;
 import net.runelite.client.eventbus.Subscribe;
 import net.runelite.client.plugins.Plugin;
 import net.runelite.client.plugins.PluginDescriptor;
 import net.runelite.client.ui.ClientToolbar;
 import net.runelite.client.ui.NavigationButton;
+import net.runelite.client.ui.overlay.OverlayManager;
 import net.runelite.client.util.ImageUtil;
 
 import java.awt.image.BufferedImage;
-import java.util.HashMap;
-import java.util.Map;
+import java.io.File;
 
 @Slf4j
 @PluginDescriptor(
@@ -40,21 +58,43 @@ import java.util.Map;
 )
 public class DryRatePlugin extends Plugin
 {
+	private static final String CONFIG_GROUP = "dryrate";
+	// Loot tiles each detector has learned are saved under this key plus the raid
+	private static final String LOOT_TILES_KEY = "lootTiles";
+
 	@Inject
 	private Client client;
 
 	@Inject
 	private DryRateConfig config;
 
+	@Inject
+	private ClientThread clientThread;
+
 	@Inject
 	private ClientToolbar clientToolbar;
 
+	@Inject
+	private OverlayManager overlayManager;
+
+	@Inject
+	private DryRateOverlay overlay;
+
 	@Inject
 	private ConfigManager configManager;
 
 	@Inject
 	private DryRateManager dryRateManager;
 
+	@Inject
+	private DryRateMetrics metrics;
+
+	@Inject
+	private MetricsExporter metricsExporter;
+
+	@Inject
+	private Diagnostics diagnostics;
+
 	// Raid detectors
 	@Inject
 	private TobRaidDetector tobDetector;
@@ -65,26 +105,41 @@ public class DryRatePlugin extends Plugin
 	@Inject
 	private CoxRaidDetector coxDetector;
 
+	@Inject
+	private CreditedInstances creditedInstances;
+
+	@Inject
+	private OutcomePipeline outcomePipeline;
+
 	private DryRatePanel panel;
 	private NavigationButton navButton;
 
 	// Track current state
 	private int previousRegionId = -1;
 	private RaidDetector currentDetector = null;
+	// Bumped whenever the player is seen outside an instance, which every new raid is entered from
+	private int instanceVisit;
 	
-	// Map regions to detectors for quick lookup
-	private Map<Integer, RaidDetector> regionToDetector;
+	// All detectors, searched by region without boxing the region ID
+	private RaidDetector[] detectors;
 
 	@Override
 	protected void startUp() throws Exception
 	{
 		log.debug("Dry Rate Tracker started!");
-		
-		// Initialize the dry rate manager
-		dryRateManager.loadData();
+
+		// Config is read once here and again on each change, everything else reads the snapshot
+		dryRateManager.refreshSettings();
+		DryRateSettings settings = dryRateManager.getSettings();
+		metrics.setEnabled(settings.isCollectMetrics());
+		diagnostics.configure(settings.getDiagnostics());
+		metrics.setTickBudgetMicros(settings.getTickBudget());
+		metrics.setJournalSize(() -> dryRateManager.getJournal().size());
+		metricsExporter.register();
+		updateMetricsExport();
 		
 		// Create the panel
-		panel = new DryRatePanel(dryRateManager, config);
+		panel = new DryRatePanel(dryRateManager, config, metrics);
 		log.debug("Panel created successfully");
 		
 		// Load the custom icon (replace "panel_icon.png" with the actual filename)
@@ -113,19 +168,23 @@ public class DryRatePlugin extends Plugin
 		
 		clientToolbar.addNavigation(navButton);
 		log.debug("Navigation button added to toolbar");
+		overlayManager.add(overlay);
 		
 		// Initialize region-to-detector mapping
 		initializeDetectorMapping();
+		loadLootTiles();
 		
 		// Set up UI update callbacks for all detectors
 		setupUICallbacks();
 		
-		// Initialize region tracking
-		if (client.getLocalPlayer() != null)
+		// Only the logged in account's data is loaded, later logins load it on LOGGED_IN
+		if (client.getGameState() == GameState.LOGGED_IN)
 		{
-			previousRegionId = getCurrentRegionId();
-			updateRaidState();
+			loadAccountData();
 		}
+		
+		// Initialize region tracking, entering a loot room we are already in scans it for its objects
+		clientThread.invokeLater(this::updateRaidState);
 	}
 
 	@Override
@@ -133,16 +192,21 @@ public class DryRatePlugin extends Plugin
 	{
 		log.debug("Dry Rate Tracker stopped!");
 		
-		// Save data before shutting down
-		dryRateManager.saveData();
+		// Record outstanding raid outcomes, then save data before shutting down
+		outcomePipeline.stop();
+		dryRateManager.unloadProfile();
+		metricsExporter.shutDown();
 		
-		// Remove the panel
+		// Remove the panel and overlay
 		clientToolbar.removeNavigation(navButton);
+		overlayManager.remove(overlay);
+		overlay.setRaidType(null);
+		overlay.endSession();
 		
 		// Reset all detectors
-		if (regionToDetector != null)
+		if (detectors != null)
 		{
-			for (RaidDetector detector : regionToDetector.values())
+			for (RaidDetector detector : detectors)
 			{
 				detector.reset();
 			}
@@ -158,17 +222,34 @@ public class DryRatePlugin extends Plugin
 	 */
 	private void initializeDetectorMapping()
 	{
-		regionToDetector = new HashMap<>();
-		regionToDetector.put(tobDetector.getRaidRegion(), tobDetector);
-		regionToDetector.put(toaDetector.getRaidRegion(), toaDetector);
-		regionToDetector.put(coxDetector.getRaidRegion(), coxDetector);
+		detectors = new RaidDetector[] {tobDetector, toaDetector, coxDetector};
 		
 				log.debug("*** DETECTOR MAPPING *** Initialized: ToB={}, ToA={}, CoX={}",
 			tobDetector.getRaidRegion(), toaDetector.getRaidRegion(), coxDetector.getRaidRegion());
 	}
 
 	/**
-	 * Set up UI update callbacks for all detectors
+	 * Pick up the loot tiles saved by earlier runs, so the first scan after a restart probes them
+	 */
+	private void loadLootTiles()
+	{
+		for (RaidDetector detector : detectors)
+		{
+			LootTiles lootTiles = detector.getLootTiles();
+			if (lootTiles != null)
+			{
+				lootTiles.load(configManager.getConfiguration(CONFIG_GROUP, lootTilesKey(detector)));
+			}
+		}
+	}
+
+	private static String lootTilesKey(RaidDetector detector)
+	{
+		return LOOT_TILES_KEY + "." + detector.getRaidType().name();
+	}
+
+	/**
+	 * Refresh the panel whenever the pipeline has recorded a batch of raid outcomes
 	 */
 	private void setupUICallbacks()
 	{
@@ -185,17 +266,10 @@ public class DryRatePlugin extends Plugin
 			}
 		};
 		
-		tobDetector.setUIUpdateCallback(updateCallback);
-		toaDetector.setUIUpdateCallback(updateCallback);
-		coxDetector.setUIUpdateCallback(updateCallback);
+		outcomePipeline.setUIUpdateCallback(updateCallback);
+		outcomePipeline.start();
 		
-		log.debug("*** UI SETUP *** UI update callbacks configured for all detectors");
-		log.debug("*** UI SETUP *** ToB detector: region={}, class={}", 
-			tobDetector.getRaidRegion(), tobDetector.getClass().getSimpleName());
-		log.debug("*** UI SETUP *** ToA detector: region={}, class={}", 
-			toaDetector.getRaidRegion(), toaDetector.getClass().getSimpleName());
-		log.debug("*** UI SETUP *** CoX detector: region={}, class={}", 
-			coxDetector.getRaidRegion(), coxDetector.getClass().getSimpleName());
+		log.debug("*** UI SETUP *** UI update callback configured for the outcome pipeline");
 	}
 
 	/**
@@ -204,16 +278,18 @@ public class DryRatePlugin extends Plugin
 	@Subscribe
 	public void onGameObjectSpawned(GameObjectSpawned event)
 	{
+		long start = metrics.start();
+
 		// Ensure raid state is up to date before processing objects
 		updateRaidState();
 		
 		// Additional safety check: ensure detector is set for current region
 		int currentRegion = getCurrentRegionId();
-		if (currentDetector == null && regionToDetector.containsKey(currentRegion))
+		if (currentDetector == null && detectorForRegion(currentRegion) != null)
 		{
-			currentDetector = regionToDetector.get(currentRegion);
-			log.debug("*** SAFETY FIX *** Set detector for region {} to {}", 
-				currentRegion, currentDetector.getRaidType());
+			currentDetector = detectorForRegion(currentRegion);
+			diagnostics.log(Diagnostics.Category.REGION, "*** SAFETY FIX *** Set detector for {} in region {}",
+				currentDetector.getRaidType(), currentRegion);
 		}
 		
 		int objectId = event.getGameObject().getId();
@@ -224,22 +300,27 @@ public class DryRatePlugin extends Plugin
 			// Only log if it's a potential chest/important object (reduce spam)
 			if (objectId >= 33086 && objectId <= 33090 || // TOB chests
 				objectId >= 44786 && objectId <= 44787 || // TOA chests  
-				objectId == 44825 || objectId == 44826)   // TOA sarcophagi
+				objectId == 46220)                        // TOA sarcophagus
 			{
-				log.debug("*** {} CHEST *** Object: {}", currentDetector.getRaidType(), objectId);
+				diagnostics.log(Diagnostics.Category.OBJECTS, "*** {} CHEST *** Object: {}", currentDetector.getRaidType(), objectId);
 			}
 		}
 		
 		// Route to current detector if available
-		if (currentDetector != null)
+		boolean routed = currentDetector != null;
+		if (routed)
 		{
-			currentDetector.handleGameObjectSpawned(event);
+			if (currentDetector.handleGameObjectSpawned(event))
+			{
+				noteLootTile(currentDetector, event.getTile());
+			}
 		}
 		else if (currentRegion == 12867 || currentRegion == 14672 || currentRegion == 12889)
 		{
 			// Only log once when entering raid region without detector
 			log.warn("*** ERROR *** No detector for raid region: {}", currentRegion);
 		}
+		metrics.handled(DryRateMetrics.Handler.GAME_OBJECT_SPAWNED, start, routed);
 	}
 
 	/**
@@ -248,10 +329,13 @@ public class DryRatePlugin extends Plugin
 	@Subscribe
 	public void onWallObjectSpawned(WallObjectSpawned event)
 	{
-		if (currentDetector != null)
+		long start = metrics.start();
+		boolean routed = currentDetector != null;
+		if (routed && currentDetector.handleWallObjectSpawned(event))
 		{
-			currentDetector.handleWallObjectSpawned(event);
+			noteLootTile(currentDetector, event.getTile());
 		}
+		metrics.handled(DryRateMetrics.Handler.WALL_OBJECT_SPAWNED, start, routed);
 	}
 
 	/**
@@ -260,12 +344,16 @@ public class DryRatePlugin extends Plugin
 	@Subscribe(priority = 7)  // HIGH PRIORITY 
 	public void onGameTick(GameTick event)
 	{
+		long start = metrics.start();
 		updateRaidState();
 		
-		if (currentDetector != null)
+		boolean routed = currentDetector != null;
+		if (routed)
 		{
 			currentDetector.handleGameTick(event);
 		}
+		metrics.handled(DryRateMetrics.Handler.GAME_TICK, start, routed);
+		metrics.tickEnded();
 	}
 
 	/**
@@ -274,10 +362,46 @@ public class DryRatePlugin extends Plugin
 	@Subscribe
 	public void onVarbitChanged(VarbitChanged event)
 	{
-		if (currentDetector != null)
+		long start = metrics.start();
+		boolean routed = currentDetector != null;
+		if (routed)
 		{
 			currentDetector.handleVarbitChanged(event);
 		}
+		metrics.handled(DryRateMetrics.Handler.VARBIT_CHANGED, start, routed);
+	}
+
+	/**
+	 * Route item container changes (opened reward chests) to the appropriate detector
+	 */
+	@Subscribe
+	public void onItemContainerChanged(ItemContainerChanged event)
+	{
+		long start = metrics.start();
+		boolean routed = currentDetector != null;
+		if (routed)
+		{
+			currentDetector.handleItemContainerChanged(event);
+		}
+		metrics.handled(DryRateMetrics.Handler.ITEM_CONTAINER_CHANGED, start, routed);
+	}
+
+	/**
+	 * Pass game messages to every detector, a raid's completion message arrives before its loot room is entered
+	 */
+	@Subscribe
+	public void onChatMessage(ChatMessage event)
+	{
+		long start = metrics.start();
+		boolean routed = event.getType() == ChatMessageType.GAMEMESSAGE && detectors != null;
+		if (routed)
+		{
+			for (RaidDetector detector : detectors)
+			{
+				detector.handleChatMessage(event);
+			}
+		}
+		metrics.handled(DryRateMetrics.Handler.CHAT_MESSAGE, start, routed);
 	}
 
 	/**
@@ -285,10 +409,87 @@ public class DryRatePlugin extends Plugin
 	 */
 	@Subscribe
 	public void onConfigChanged(ConfigChanged event)
+	{
+		long start = metrics.start();
+		boolean routed = event.getGroup().equals("dryrate");
+		try
+		{
+			handleConfigChanged(event);
+		}
+		finally
+		{
+			metrics.handled(DryRateMetrics.Handler.CONFIG_CHANGED, start, routed);
+		}
+	}
+
+	/**
+	 * Apply a change to one of our config items
+	 */
+	private void handleConfigChanged(ConfigChanged event)
 	{
 		if (event.getGroup().equals("dryrate"))
 		{
+			if (event.getKey().startsWith(LOOT_TILES_KEY + "."))
+			{
+				// Learned loot tiles, nothing to refresh
+				return;
+			}
+
+			if (DryRateManager.isStoredDataKey(event.getKey()))
+			{
+				// Saved data rather than a setting, only another client's save synced in needs merging
+				if (dryRateManager.mergeStoredData(event.getKey(), event.getNewValue()) && panel != null)
+				{
+					panel.updateDisplay();
+				}
+				return;
+			}
+
 			log.debug("Config changed: {} = {}", event.getKey(), event.getNewValue());
+			dryRateManager.refreshSettings();
+
+			if ("collectMetrics".equals(event.getKey()))
+			{
+				metrics.setEnabled(dryRateManager.getSettings().isCollectMetrics());
+			}
+
+			if ("diagnostics".equals(event.getKey()))
+			{
+				diagnostics.configure(dryRateManager.getSettings().getDiagnostics());
+				return;
+			}
+
+			if ("tickBudget".equals(event.getKey()))
+			{
+				metrics.setTickBudgetMicros(dryRateManager.getSettings().getTickBudget());
+				return;
+			}
+
+			if ("exportMetrics".equals(event.getKey()))
+			{
+				updateMetricsExport();
+				return;
+			}
+
+			if ("teamDropResets".equals(event.getKey()))
+			{
+				// Rebuild existing streaks under the new policy instead of mixing the two
+				clientThread.invokeLater(() ->
+					dryRateManager.recomputeAggregates(dryRateManager.getSettings().isTeamDropResets(), clientThread::invokeLater)
+						.thenRun(() -> panel.updateDisplay()));
+				return;
+			}
+
+			if ("retainRaids".equals(event.getKey()) || "retainDays".equals(event.getKey()))
+			{
+				clientThread.invokeLater(() ->
+				{
+					dryRateManager.applyRetention();
+					panel.updateDisplay();
+				});
+				return;
+			}
+
 			// Refresh the panel to reflect config changes
 			if (panel != null)
 			{
@@ -298,25 +499,99 @@ public class DryRatePlugin extends Plugin
 	}
 
 	/**
-	 * Handle game state changes to reset when logging out
+	 * Handle game state changes to load account data on login and reset when logging out
 	 */
 	@Subscribe
 	public void onGameStateChanged(GameStateChanged event)
 	{
-		if (event.getGameState() == GameState.LOGIN_SCREEN)
+		long start = metrics.start();
+		boolean routed = true;
+		if (event.getGameState() == GameState.LOGGED_IN)
+		{
+			loadAccountData();
+		}
+		else if (event.getGameState() == GameState.LOGIN_SCREEN)
 		{
 			log.debug("Player logged out, resetting state");
+			
+			// Flush and evict the account's data, once outstanding raid outcomes are recorded
+			outcomePipeline.flush();
+			dryRateManager.unloadProfile();
+			if (panel != null)
+			{
+				panel.updateDisplay();
+			}
+			
 			if (currentDetector != null)
 			{
 				currentDetector.reset();
+				creditedInstances.leave(System.currentTimeMillis());
 			}
 			currentDetector = null;
 			previousRegionId = -1;
+			overlay.setRaidType(null);
+			overlay.endSession();
+		}
+		else
+		{
+			routed = false;
+		}
+		metrics.handled(DryRateMetrics.Handler.GAME_STATE_CHANGED, start, routed);
+	}
+
+	/**
+	 * Load the account's data once its RuneScape profile is known, it may be set after the login itself
+	 */
+	@Subscribe
+	public void onRuneScapeProfileChanged(RuneScapeProfileChanged event)
+	{
+		if (client.getGameState() == GameState.LOGGED_IN)
+		{
+			loadAccountData();
+		}
+	}
+
+	/**
+	 * Write the metrics file while export is turned on
+	 */
+	private void updateMetricsExport()
+	{
+		File file = new File(new File(RuneLite.RUNELITE_DIR, "dry-rate"), "metrics.prom");
+		metricsExporter.setFileExport(dryRateManager.getSettings().isExportMetrics() ? file.toPath() : null);
+	}
+
+	/**
+	 * Load the logged in account's data shard, a no-op if it is already loaded
+	 */
+	private void loadAccountData()
+	{
+		// The data lives in the account's RuneScape profile, which is loaded once it is known
+		long accountHash = client.getAccountHash();
+		if (accountHash == -1 || configManager.getRSProfileKey() == null)
+		{
+			return;
+		}
+
+		// Render the saved summary now and the full data once it has been parsed
+		boolean newSession = !dryRateManager.isProfileLoaded();
+		dryRateManager.loadProfile(accountHash, clientThread::invokeLater)
+			.thenRun(() ->
+			{
+				if (newSession)
+				{
+					overlay.startSession();
+				}
+				panel.updateDisplay();
+			});
+		if (panel != null)
+		{
+			panel.updateDisplay();
 		}
 	}
 
 	/**
 	 * Get the current region ID from the player's location
+	 * Runs on every spawn and tick, so it reads the region straight from the scene instead of building a WorldPoint
 	 */
 	private int getCurrentRegionId()
 	{
@@ -332,23 +607,56 @@ public class DryRatePlugin extends Plugin
 			return -1;
 		}
 
-		WorldPoint worldPoint = WorldPoint.fromLocalInstance(client, localPoint);
-		if (worldPoint == null)
+		int regionId = regionOf(client.getTopLevelWorldView(), localPoint.getSceneX(), localPoint.getSceneY());
+		if (regionId == -1)
 		{
 			return -1;
 		}
-
-		int regionId = worldPoint.getRegionID();
 		
-		// Only log when entering raid regions (not every tick)
-		if ((regionId == 12867 || regionId == 14672 || regionId == 12889) && 
-			regionId != previousRegionId)
+		return regionId;
+	}
+
+	/**
+	 * Region ID of a scene tile, in an instance the region of the template chunk the tile was copied from.
+	 * A chunk lies within one region whatever its rotation, so the chunk coordinates alone decide the region.
+	 */
+	private static int regionOf(WorldView worldView, int sceneX, int sceneY)
+	{
+		if (worldView == null || sceneX < 0 || sceneY < 0 || sceneX >= Constants.SCENE_SIZE || sceneY >= Constants.SCENE_SIZE)
 		{
-			String raidName = (regionId == 12867) ? "TOB" : (regionId == 14672) ? "TOA" : "COX";
-		log.debug("*** ENTERED {} REGION ***", raidName);
+			return -1;
 		}
 
-		return regionId;
+		int x;
+		int y;
+		if (worldView.isInstance())
+		{
+			int[][][] templateChunks = worldView.getInstanceTemplateChunks();
+			int templateChunk = templateChunks[worldView.getPlane()][sceneX / Constants.CHUNK_SIZE][sceneY / Constants.CHUNK_SIZE];
+			x = (templateChunk >> 14 & 0x3FF) * Constants.CHUNK_SIZE;
+			y = (templateChunk >> 3 & 0x7FF) * Constants.CHUNK_SIZE;
+		}
+		else
+		{
+			x = worldView.getBaseX() + sceneX;
+			y = worldView.getBaseY() + sceneY;
+		}
+		return (x >> 6) << 8 | y >> 6;
+	}
+
+	/**
+	 * The detector of a raid region, or null
+	 */
+	private RaidDetector detectorForRegion(int regionId)
+	{
+		for (RaidDetector detector : detectors)
+		{
+			if (detector.getRaidRegion() == regionId)
+			{
+				return detector;
+			}
+		}
+		return null;
 	}
 
 	/**
@@ -362,9 +670,15 @@ public class DryRatePlugin extends Plugin
 		{
 			return; // No region change
 		}
+
+		WorldView worldView = client.getTopLevelWorldView();
+		if (worldView != null && !worldView.isInstance())
+		{
+			instanceVisit++;
+		}
 		
 		// Check if we're entering a new raid region
-		RaidDetector newDetector = regionToDetector.get(currentRegionId);
+		RaidDetector newDetector = detectorForRegion(currentRegionId);
 		
 		// Handle detector transitions
 		if (newDetector != currentDetector)
@@ -372,26 +686,279 @@ public class DryRatePlugin extends Plugin
 			// Reset previous detector if we had one
 			if (currentDetector != null)
 			{
-				log.debug("*** LEAVING {} ***", currentDetector.getRaidType());
+				diagnostics.log(Diagnostics.Category.REGION, "*** LEAVING {} ***", currentDetector.getRaidType());
 				currentDetector.reset();
+				creditedInstances.leave(System.currentTimeMillis());
 			}
 			
 			// Set new detector
 			currentDetector = newDetector;
+			overlay.setRaidType(currentDetector != null ? currentDetector.getRaidType() : null);
 			
 			if (currentDetector != null)
 			{
-				log.debug("*** ENTERING {} ***", currentDetector.getRaidType());
+				diagnostics.log(Diagnostics.Category.REGION, "*** ENTERING {} *** region {}", currentDetector.getRaidType(), currentRegionId);
+				creditedInstances.enter(instanceFingerprint(currentRegionId), System.currentTimeMillis());
 			}
 		}
 		
 		// Update all detectors with current region
-		for (RaidDetector detector : regionToDetector.values())
+		for (RaidDetector detector : detectors)
 		{
 			detector.updateRaidState(currentRegionId);
 		}
 		
 		previousRegionId = currentRegionId;
+
+		// The room may have loaded before we were watching, after a restart of the plugin or a reconnect
+		if (currentDetector != null)
+		{
+			scanLootRoom(currentDetector);
+		}
+	}
+
+	/**
+	 * Fingerprint of the raid instance the player is in, the same on every visit to its loot room.
+	 * The next raid on the world can be built at the same place from the same chunks, but is entered
+	 * from outside an instance, so its visit count differs.
+	 */
+	private long instanceFingerprint(int regionId)
+	{
+		WorldView worldView = client.getTopLevelWorldView();
+		if (worldView == null)
+		{
+			return CreditedInstances.fingerprint(client.getWorld(), regionId, 0, 0, null, instanceVisit);
+		}
+
+		int[][] templateChunks = worldView.isInstance() ? worldView.getInstanceTemplateChunks()[worldView.getPlane()] : null;
+		return CreditedInstances.fingerprint(client.getWorld(), regionId, worldView.getBaseX(), worldView.getBaseY(), templateChunks,
+			instanceVisit);
+	}
+
+	/**
+	 * Feed the objects already in a raid's loot room to its detector, as if they had just spawned.
+	 * Only the scene chunks copied from the raid's region are visited, and in them only the tiles the detector
+	 * found loot on before, saved across restarts. The whole of those chunks is only scanned as a fallback,
+	 * while no tile is known or none holds anything.
+	 */
+	private void scanLootRoom(RaidDetector detector)
+	{
+		WorldView worldView = client.getTopLevelWorldView();
+		Scene scene = worldView != null ? worldView.getScene() : null;
+		if (scene == null)
+		{
+			return;
+		}
+
+		long start = System.nanoTime();
+		Tile[][] tiles = scene.getTiles()[worldView.getPlane()];
+		LootTiles lootTiles = detector.getLootTiles();
+		boolean probe = lootTiles != null && lootTiles.size() > 0;
+		int found = probe ? scanLootChunks(detector, worldView, tiles, lootTiles) : 0;
+		if (!probe || found == 0)
+		{
+			diagnostics.log(Diagnostics.Category.LOOT, "*** {} SCAN *** No loot on the {} known tiles, scanning the whole room",
+				detector.getRaidType(), probe ? lootTiles.size() : 0);
+			found = scanLootChunks(detector, worldView, tiles, null);
+		}
+		if (diagnostics.isEnabled(Diagnostics.Category.LOOT))
+		{
+			diagnostics.log(Diagnostics.Category.LOOT, "*** {} SCAN *** Fed {} existing objects to the detector in {} us",
+				detector.getRaidType(), found, (System.nanoTime() - start) / 1000);
+		}
+	}
+
+	/**
+	 * Pass the objects in the scene chunks copied from a raid's region to its detector
+	 * @param lootTiles the only tiles to look at, or null for every tile of those chunks
+	 * @return the number of objects passed
+	 */
+	private int scanLootChunks(RaidDetector detector, WorldView worldView, Tile[][] tiles, LootTiles lootTiles)
+	{
+		int chunks = Constants.SCENE_SIZE / Constants.CHUNK_SIZE;
+		int found = 0;
+		for (int chunkX = 0; chunkX < chunks; chunkX++)
+		{
+			for (int chunkY = 0; chunkY < chunks; chunkY++)
+			{
+				int sceneX = chunkX * Constants.CHUNK_SIZE;
+				int sceneY = chunkY * Constants.CHUNK_SIZE;
+				if (regionOf(worldView, sceneX, sceneY) != detector.getRaidRegion())
+				{
+					continue;
+				}
+
+				if (lootTiles != null)
+				{
+					for (int i = 0; i < lootTiles.size(); i++)
+					{
+						int sceneTile = sceneTile(worldView, sceneX, sceneY, lootTiles.get(i));
+						if (sceneTile >= 0)
+						{
+							found += scanTile(detector, tiles[sceneTile >> 8][sceneTile & 0xFF]);
+						}
+					}
+					continue;
+				}
+
+				for (int x = sceneX; x < sceneX + Constants.CHUNK_SIZE; x++)
+				{
+					for (int y = sceneY; y < sceneY + Constants.CHUNK_SIZE; y++)
+					{
+						found += scanTile(detector, tiles[x][y]);
+					}
+				}
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * Pass the objects on a tile to a detector
+	 * @return the number of objects passed
+	 */
+	private int scanTile(RaidDetector detector, Tile tile)
+	{
+		if (tile == null)
+		{
+			return 0;
+		}
+
+		int found = 0;
+		for (GameObject gameObject : tile.getGameObjects())
+		{
+			// Objects larger than a tile are on every tile they cover, only pass them on from their first
+			if (gameObject == null || !tile.getSceneLocation().equals(gameObject.getSceneMinLocation()))
+			{
+				continue;
+			}
+
+			GameObjectSpawned event = new GameObjectSpawned();
+			event.setTile(tile);
+			event.setGameObject(gameObject);
+			if (detector.handleGameObjectSpawned(event))
+			{
+				noteLootTile(detector, tile);
+			}
+			found++;
+		}
+
+		WallObject wallObject = tile.getWallObject();
+		if (wallObject != null)
+		{
+			WallObjectSpawned event = new WallObjectSpawned();
+			event.setTile(tile);
+			event.setWallObject(wallObject);
+			if (detector.handleWallObjectSpawned(event))
+			{
+				noteLootTile(detector, tile);
+			}
+			found++;
+		}
+		return found;
+	}
+
+	/**
+	 * Remember the tile a detector found one of its loot objects on, so later scans of the room look there first
+	 */
+	private void noteLootTile(RaidDetector detector, Tile tile)
+	{
+		LootTiles lootTiles = detector.getLootTiles();
+		Point location = tile != null ? tile.getSceneLocation() : null;
+		if (lootTiles == null || location == null)
+		{
+			return;
+		}
+
+		int regionTile = regionTile(client.getTopLevelWorldView(), location.getX(), location.getY());
+		if (regionTile >= 0 && lootTiles.add(regionTile))
+		{
+			configManager.setConfiguration(CONFIG_GROUP, lootTilesKey(detector), lootTiles.save());
+		}
+	}
+
+	/**
+	 * Tile of the template region a scene tile was copied from, as x << 6 | y within the region
+	 * @return -1 if the tile is outside the scene
+	 */
+	private static int regionTile(WorldView worldView, int sceneX, int sceneY)
+	{
+		if (worldView == null || sceneX < 0 || sceneY < 0 || sceneX >= Constants.SCENE_SIZE || sceneY >= Constants.SCENE_SIZE)
+		{
+			return -1;
+		}
+
+		int sceneChunkX = sceneX - (sceneX & (Constants.CHUNK_SIZE - 1));
+		int sceneChunkY = sceneY - (sceneY & (Constants.CHUNK_SIZE - 1));
+		int chunk = templateChunk(worldView, sceneChunkX, sceneChunkY);
+		// Scene tiles are the template tiles turned by the chunk's rotation, so turn them back the rest of the way
+		int offset = rotateInChunk(sceneX & (Constants.CHUNK_SIZE - 1), sceneY & (Constants.CHUNK_SIZE - 1), 4 - (chunk & 3));
+		int x = (chunk >> 8 & 0x7) * Constants.CHUNK_SIZE + (offset >> 3);
+		int y = (chunk >> 2 & 0x7) * Constants.CHUNK_SIZE + (offset & 0x7);
+		return x << 6 | y;
+	}
+
+	/**
+	 * Scene tile a tile of the template region was copied to, if it lies in the given scene chunk
+	 * @return the scene x and y packed as x << 8 | y, or -1 if the chunk holds another part of the region
+	 */
+	private static int sceneTile(WorldView worldView, int sceneChunkX, int sceneChunkY, int regionTile)
+	{
+		int regionX = regionTile >> 6;
+		int regionY = regionTile & 0x3F;
+		int chunk = templateChunk(worldView, sceneChunkX, sceneChunkY);
+		if ((chunk >> 8 & 0x7) != regionX / Constants.CHUNK_SIZE || (chunk >> 2 & 0x7) != regionY / Constants.CHUNK_SIZE)
+		{
+			return -1;
+		}
+
+		int offset = rotateInChunk(regionX & (Constants.CHUNK_SIZE - 1), regionY & (Constants.CHUNK_SIZE - 1), chunk & 3);
+		return (sceneChunkX + (offset >> 3)) << 8 | (sceneChunkY + (offset & 0x7));
+	}
+
+	/**
+	 * Where a scene chunk was copied from: its chunk x within the region in bits 8-10, chunk y in bits 2-4
+	 * and its rotation in bits 0-1. Outside an instance every chunk is in place and unrotated.
+	 */
+	private static int templateChunk(WorldView worldView, int sceneChunkX, int sceneChunkY)
+	{
+		int chunkX;
+		int chunkY;
+		int rotation = 0;
+		if (worldView.isInstance())
+		{
+			int templateChunk = worldView.getInstanceTemplateChunks()[worldView.getPlane()]
+				[sceneChunkX / Constants.CHUNK_SIZE][sceneChunkY / Constants.CHUNK_SIZE];
+			chunkX = templateChunk >> 14 & 0x3FF;
+			chunkY = templateChunk >> 3 & 0x7FF;
+			rotation = templateChunk >> 1 & 0x3;
+		}
+		else
+		{
+			chunkX = (worldView.getBaseX() + sceneChunkX) / Constants.CHUNK_SIZE;
+			chunkY = (worldView.getBaseY() + sceneChunkY) / Constants.CHUNK_SIZE;
+		}
+		return (chunkX & 0x7) << 8 | (chunkY & 0x7) << 2 | rotation;
+	}
+
+	/**
+	 * Turn a tile within its chunk clockwise by a number of quarter turns, as instance chunks are rotated
+	 * @return the turned x and y packed as x << 3 | y
+	 */
+	private static int rotateInChunk(int x, int y, int rotation)
+	{
+		int last = Constants.CHUNK_SIZE - 1;
+		switch (rotation & 3)
+		{
+			case 1:
+				return y << 3 | (last - x);
+			case 2:
+				return (last - x) << 3 | (last - y);
+			case 3:
+				return (last - y) << 3 | x;
+			default:
+				return x << 3 | y;
+		}
 	}
 
 	@Provides
@@ -0,0 +1,134 @@
+package com.dryrate;
+
+/**
+ * Immutable snapshot of the plugin config, rebuilt only when one of our config keys changes.
+ * Reading a setting is a plain field read instead of a call through the config proxy.
+ */
+public final class DryRateSettings
+{
+    /**
+     * The config defaults, used when there is no config to read
+     */
+    public static final DryRateSettings DEFAULTS = of(new DryRateConfig()
+    {
+    });
+
+    private final boolean showNotifications;
+    private final boolean trackToB;
+    private final boolean trackToA;
+    private final boolean trackCoX;
+    private final boolean resetConfirmation;
+    private final boolean teamDropResets;
+    private final int retainRaids;
+    private final int retainDays;
+    private final boolean collectMetrics;
+    private final boolean exportMetrics;
+    private final int tickBudget;
+    private final boolean showOverlay;
+    private final String diagnostics;
+
+    private DryRateSettings(DryRateConfig config)
+    {
+        this.showNotifications = config.showNotifications();
+        this.trackToB = config.trackToB();
+        this.trackToA = config.trackToA();
+        this.trackCoX = config.trackCoX();
+        this.resetConfirmation = config.resetConfirmation();
+        this.teamDropResets = config.teamDropResets();
+        this.retainRaids = config.retainRaids();
+        this.retainDays = config.retainDays();
+        this.collectMetrics = config.collectMetrics();
+        this.exportMetrics = config.exportMetrics();
+        this.tickBudget = config.tickBudget();
+        this.showOverlay = config.showOverlay();
+        this.diagnostics = config.diagnostics();
+    }
+
+    /**
+     * Read every setting once
+     */
+    public static DryRateSettings of(DryRateConfig config)
+    {
+        return new DryRateSettings(config);
+    }
+
+    public boolean isShowNotifications()
+    {
+        return showNotifications;
+    }
+
+    /**
+     * Whether raids of the given type are tracked
+     */
+    public boolean isTracked(RaidType raidType)
+    {
+        switch (raidType)
+        {
+            case TOB:
+                return trackToB;
+            case TOA:
+                return trackToA;
+            case COX:
+                return trackCoX;
+            default:
+                return true;
+        }
+    }
+
+    public boolean isResetConfirmation()
+    {
+        return resetConfirmation;
+    }
+
+    public boolean isTeamDropResets()
+    {
+        return teamDropResets;
+    }
+
+    /**
+     * Number of recent raids kept individually, 0 keeps all
+     */
+    public int getRetainRaids()
+    {
+        return retainRaids;
+    }
+
+    /**
+     * Days of raids kept individually, 0 keeps all
+     */
+    public int getRetainDays()
+    {
+        return retainDays;
+    }
+
+    public boolean isCollectMetrics()
+    {
+        return collectMetrics;
+    }
+
+    public boolean isExportMetrics()
+    {
+        return exportMetrics;
+    }
+
+    /**
+     * Tick budget in microseconds, 0 when the watchdog is off
+     */
+    public int getTickBudget()
+    {
+        return tickBudget;
+    }
+
+    public boolean isShowOverlay()
+    {
+        return showOverlay;
+    }
+
+    /**
+     * Comma separated diagnostic log categories
+     */
+    public String getDiagnostics()
+    {
+        return diagnostics;
+    }
+}
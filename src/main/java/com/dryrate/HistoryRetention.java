@@ -0,0 +1,85 @@
+package com.dryrate;
+
+import com.dryrate.history.RaidHistory;
+import com.dryrate.history.Rollup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Folds raids that fall outside the retention settings out of the detailed history
+ * and into the baseline. The baseline keeps the folded raids' totals, every ended dry streak
+ * and the per-item stats, so totals, the longest streak and streak percentiles are unchanged,
+ * plus monthly rollups of what was folded.
+ */
+final class HistoryRetention
+{
+    private HistoryRetention()
+    {
+    }
+
+    /**
+     * Number of leading raids outside the retention settings, 0 keeps everything.
+     * A raid is kept while it is within either limit.
+     */
+    static int foldCount(RaidHistory history, int keepRaids, int keepDays, long now)
+    {
+        if (keepRaids <= 0 && keepDays <= 0)
+        {
+            return 0;
+        }
+
+        int count = history.size();
+        if (keepRaids > 0)
+        {
+            count = Math.min(count, Math.max(0, history.size() - keepRaids));
+        }
+        if (keepDays > 0)
+        {
+            count = Math.min(count, history.completionsBetween(Long.MIN_VALUE, now - TimeUnit.DAYS.toMillis(keepDays)));
+        }
+
+        // Never split raids that share a timestamp, the merge tells folded raids apart by timestamp alone
+        while (count > 0 && count < history.size() && history.get(count).getTimestamp() == history.get(count - 1).getTimestamp())
+        {
+            count--;
+        }
+        return count;
+    }
+
+    /**
+     * Fold the first count raids of a history into the data's baseline, keeping the streaks under either team drop setting
+     * @return the history without the folded raids, the given history must not be used afterwards
+     */
+    static RaidHistory fold(RaidType raidType, DryRateData data, RaidHistory history, int count)
+    {
+        // Replaying only the folded raids gives the baseline the remaining history continues from
+        AggregateRebuilder.Input input = AggregateRebuilder.capture(raidType, data, history, count);
+        DryRateData replayed = AggregateRebuilder.rebuild(input, false);
+        DryRateData teamReplayed = AggregateRebuilder.rebuild(input, true);
+        StreakBaseline baseline = data.getBaseline() != null ? data.getBaseline() : new StreakBaseline();
+
+        List<Rollup> rollups = new ArrayList<>(baseline.getRollups());
+        for (int i = 0; i < count; i++)
+        {
+            Rollup.add(rollups, history.get(i));
+        }
+
+        StreakBaseline folded = new StreakBaseline();
+        folded.setCompletions(baseline.getCompletions() + count);
+        folded.setUniques(baseline.getUniques() + history.uniquesBetweenRaids(1, count));
+        folded.setDryStreak(replayed.getCurrentDryStreak());
+        folded.setPreviousDryStreaks(replayed.getPreviousDryStreaks());
+        folded.setTeamDryStreak(teamReplayed.getCurrentDryStreak());
+        folded.setTeamPreviousDryStreaks(teamReplayed.getPreviousDryStreaks());
+        folded.setLastDropTime(replayed.getLastDropTime());
+        folded.setUniqueItemCounts(replayed.getUniqueItemCounts());
+        folded.setUniqueItemLastDrop(replayed.getUniqueItemLastDrop());
+        folded.setFoldedThrough(history.get(count - 1).getTimestamp());
+        folded.setRollups(rollups);
+
+        data.setBaseline(folded);
+        return history.withoutFirst(count);
+    }
+}
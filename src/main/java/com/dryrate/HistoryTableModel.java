@@ -0,0 +1,185 @@
+package com.dryrate;
+
+import com.dryrate.history.HistoryQuery;
+import com.dryrate.history.RaidRecord;
+
+import javax.swing.table.AbstractTableModel;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+
+/**
+ * Table over a raid's recorded history, newest raid first.
+ * Rows are read from the history store as the table asks for them, and the table only asks for the rows on screen,
+ * so opening a long history costs nothing up front and holds no more than a few decoded rows.
+ * A filter is answered from the history's indexes and only keeps the positions of the matching raids.
+ * Raids are recorded on the pipeline thread, so every read goes through the manager's lock and gets a copy.
+ */
+public class HistoryTableModel extends AbstractTableModel
+{
+    private static final String[] COLUMNS = {"Date", "Outcome", "Streak", "Context"};
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+
+    private final DryRateManager dryRateManager;
+    private final ZoneId zone = ZoneId.systemDefault();
+
+    private RaidType raidType;
+    private HistoryQuery query = HistoryQuery.ALL;
+    // History indexes of the rows when filtered, null when every raid is shown
+    private int[] matches;
+    private int rowCount;
+
+    // The table reads every column of a row in turn, so the last decoded record is kept
+    private int cachedIndex = -1;
+    private RaidRecord cachedRecord;
+
+    public HistoryTableModel(DryRateManager dryRateManager, RaidType raidType)
+    {
+        this.dryRateManager = dryRateManager;
+        this.raidType = raidType;
+        refresh();
+    }
+
+    public RaidType getRaidType()
+    {
+        return raidType;
+    }
+
+    /**
+     * Show the history of another raid
+     */
+    public void setRaidType(RaidType raidType)
+    {
+        this.raidType = raidType;
+        refresh();
+    }
+
+    /**
+     * Only show the raids matching a query
+     */
+    public void setQuery(HistoryQuery query)
+    {
+        this.query = query;
+        refresh();
+    }
+
+    /**
+     * Pick up the current history of the raid, must be called on the event dispatch thread
+     */
+    public void refresh()
+    {
+        matches = raidType != null && !query.isAll() ? dryRateManager.queryHistory(raidType, query).stream().toArray() : null;
+        rowCount = matches != null ? matches.length : raidType != null ? dryRateManager.getHistorySize(raidType) : 0;
+        cachedIndex = -1;
+        cachedRecord = null;
+        fireTableDataChanged();
+    }
+
+    @Override
+    public int getRowCount()
+    {
+        return rowCount;
+    }
+
+    @Override
+    public int getColumnCount()
+    {
+        return COLUMNS.length;
+    }
+
+    @Override
+    public String getColumnName(int column)
+    {
+        return COLUMNS[column];
+    }
+
+    @Override
+    public Object getValueAt(int row, int column)
+    {
+        int index = matches != null ? matches[rowCount - 1 - row] : rowCount - 1 - row;
+        RaidRecord record = record(index);
+        if (record == null)
+        {
+            return "";
+        }
+
+        switch (column)
+        {
+            case 0:
+                return DATE_FORMAT.format(Instant.ofEpochMilli(record.getTimestamp()).atZone(zone));
+            case 1:
+                return outcome(record);
+            case 2:
+                return dryRateManager.getHistoryStreak(raidType, index);
+            case 3:
+                return context(record);
+            default:
+                return "";
+        }
+    }
+
+    /**
+     * The record at a history index, null if the history shrank since the last refresh
+     */
+    private RaidRecord record(int index)
+    {
+        if (index == cachedIndex)
+        {
+            return cachedRecord;
+        }
+        RaidRecord record = raidType != null ? dryRateManager.getHistoryRecord(raidType, index) : null;
+        if (record == null)
+        {
+            return null;
+        }
+
+        cachedRecord = record;
+        cachedIndex = index;
+        return record;
+    }
+
+    private static String outcome(RaidRecord record)
+    {
+        String outcome;
+        switch (record.getOutcome())
+        {
+            case PERSONAL_UNIQUE:
+                outcome = "Purple";
+                break;
+            case TEAM_UNIQUE:
+                outcome = "Team purple";
+                break;
+            default:
+                outcome = "-";
+                break;
+        }
+        if (record.getItem() != null)
+        {
+            outcome += " (" + record.getItem().getShortName() + ")";
+        }
+        return outcome;
+    }
+
+    private String context(RaidRecord record)
+    {
+        StringBuilder context = new StringBuilder();
+        if (raidType == RaidType.TOA && record.getInvocation() > 0)
+        {
+            context.append("Level ").append(record.getInvocation());
+        }
+        else if (record.getMode() != null)
+        {
+            context.append(record.getMode().name().charAt(0)).append(record.getMode().name().substring(1).toLowerCase(Locale.ROOT));
+        }
+        if (record.getTeamSize() > 0)
+        {
+            if (context.length() > 0)
+            {
+                context.append(", ");
+            }
+            context.append(record.getTeamSize()).append(record.getTeamSize() == 1 ? " player" : " players");
+        }
+        return context.toString();
+    }
+}
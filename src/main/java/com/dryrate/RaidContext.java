@@ -0,0 +1,61 @@
+package com.dryrate;
+
+/**
+ * Context a raid was completed in, read from varbits and party size at loot time
+ */
+public final class RaidContext
+{
+    public static final RaidContext UNKNOWN = new RaidContext(0, RaidMode.NORMAL, 0);
+
+    // ToA raid level thresholds for entry and expert mode
+    private static final int TOA_NORMAL_LEVEL = 150;
+    private static final int TOA_EXPERT_LEVEL = 300;
+
+    private final int teamSize;
+    private final RaidMode mode;
+    private final int invocation;
+
+    public RaidContext(int teamSize, RaidMode mode, int invocation)
+    {
+        this.teamSize = teamSize;
+        this.mode = mode;
+        this.invocation = invocation;
+    }
+
+    /**
+     * Build a ToA context, deriving the mode from the raid level
+     */
+    public static RaidContext forToa(int teamSize, int invocation)
+    {
+        RaidMode mode = invocation >= TOA_EXPERT_LEVEL ? RaidMode.HARD
+            : invocation >= TOA_NORMAL_LEVEL ? RaidMode.NORMAL : RaidMode.ENTRY;
+        return new RaidContext(teamSize, mode, invocation);
+    }
+
+    /**
+     * Team size, 0 when unknown
+     */
+    public int getTeamSize()
+    {
+        return teamSize;
+    }
+
+    public RaidMode getMode()
+    {
+        return mode;
+    }
+
+    /**
+     * ToA raid level, 0 for other raids
+     */
+    public int getInvocation()
+    {
+        return invocation;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "teamSize=" + teamSize + ", mode=" + mode + ", invocation=" + invocation;
+    }
+}
@@ -0,0 +1,12 @@
+package com.dryrate;
+
+/**
+ * Difficulty mode a raid was completed on
+ * ToA modes are derived from the raid level (entry below 150, expert from 300)
+ */
+public enum RaidMode
+{
+    ENTRY,
+    NORMAL,
+    HARD
+}
@@ -0,0 +1,48 @@
+package com.dryrate;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The handful of numbers the panel shows for a raid, saved next to the full data
+ * so the panel can render them before the history has been parsed
+ */
+@Data
+public class RaidSummary
+{
+    private int currentDryStreak;
+    private int totalCompletions;
+    private int totalUniques;
+    private int longestDryStreak;
+
+    public static RaidSummary of(DryRateData data)
+    {
+        RaidSummary summary = new RaidSummary();
+        summary.currentDryStreak = data.getCurrentDryStreak();
+        summary.totalCompletions = data.getTotalCompletions();
+        summary.totalUniques = data.getTotalUniques();
+        summary.longestDryStreak = data.getLongestDryStreak();
+        return summary;
+    }
+
+    /**
+     * Placeholder data that displays the same as the summarised data, until the full data is loaded
+     */
+    public DryRateData toData()
+    {
+        DryRateData data = new DryRateData();
+        data.setCurrentDryStreak(currentDryStreak);
+        data.setTotalCompletions(totalCompletions);
+        data.setTotalUniques(totalUniques);
+
+        List<Integer> previous = new ArrayList<>();
+        if (longestDryStreak > currentDryStreak)
+        {
+            previous.add(longestDryStreak);
+        }
+        data.setPreviousDryStreaks(previous);
+        return data;
+    }
+}
@@ -0,0 +1,69 @@
+package com.dryrate;
+
+import com.dryrate.history.RaidHistory;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Recent results of a raid read from its history's range indexes: the last days by date and the last raids by count
+ */
+public final class RecentStats
+{
+    public static final int DAYS = 30;
+    public static final int RAIDS = 100;
+
+    private final int completions;
+    private final int uniques;
+    private final int teamUniques;
+    private final double recentDryRate;
+
+    private RecentStats(int completions, int uniques, int teamUniques, double recentDryRate)
+    {
+        this.completions = completions;
+        this.uniques = uniques;
+        this.teamUniques = teamUniques;
+        this.recentDryRate = recentDryRate;
+    }
+
+    /**
+     * Read the stats of a history as of the given time
+     */
+    public static RecentStats of(RaidHistory history, long now)
+    {
+        long from = now - TimeUnit.DAYS.toMillis(DAYS);
+        return new RecentStats(history.completionsBetween(from, Long.MAX_VALUE), history.uniquesBetween(from, Long.MAX_VALUE),
+            history.teamUniquesBetween(from, Long.MAX_VALUE), history.dryRateOverLast(RAIDS));
+    }
+
+    /**
+     * Raids completed in the last DAYS days
+     */
+    public int getCompletions()
+    {
+        return completions;
+    }
+
+    /**
+     * Personal uniques in the last DAYS days
+     */
+    public int getUniques()
+    {
+        return uniques;
+    }
+
+    /**
+     * Team uniques in the last DAYS days
+     */
+    public int getTeamUniques()
+    {
+        return teamUniques;
+    }
+
+    /**
+     * Raids per personal unique over the last RAIDS raids, 0 when there was none
+     */
+    public double getRecentDryRate()
+    {
+        return recentDryRate;
+    }
+}
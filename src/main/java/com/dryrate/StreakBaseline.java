@@ -0,0 +1,113 @@
+package com.dryrate;
+
+import com.dryrate.history.RaidHistory;
+import com.dryrate.history.RaidOutcome;
+import com.dryrate.history.Rollup;
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Aggregates that are not backed by individual raid records
+ * (data recorded before the history existed, or raids folded out of it by the retention settings).
+ * Recomputes start from here and replay the history.
+ */
+@Data
+public class StreakBaseline
+{
+    private int completions;
+    private int uniques;
+    private int dryStreak;
+    private List<Integer> previousDryStreaks;
+    private long lastDropTime;
+
+    // Streak state when team uniques also end a dry streak, so a change of that setting needs no folded raids.
+    // Null in baselines saved before both were kept, which then use the fields above for either setting.
+    private int teamDryStreak;
+    private List<Integer> teamPreviousDryStreaks;
+
+    // Per-item stats of folded raids, null when nothing has been folded
+    private int[] uniqueItemCounts;
+    private int[] uniqueItemLastDrop;
+
+    // Timestamp of the newest folded raid, other clients' copies of raids up to here are ignored
+    private long foldedThrough;
+
+    // Monthly totals of the folded raids
+    private List<Rollup> rollups;
+
+    public StreakBaseline()
+    {
+        this.previousDryStreaks = new ArrayList<>();
+        this.rollups = new ArrayList<>();
+    }
+
+    /**
+     * Dry streak before the first raid of the history under a team drop setting
+     */
+    public int dryStreak(boolean teamDropResets)
+    {
+        return teamDropResets && teamPreviousDryStreaks != null ? teamDryStreak : dryStreak;
+    }
+
+    /**
+     * Dry streaks ended before the first raid of the history under a team drop setting
+     */
+    public List<Integer> previousDryStreaks(boolean teamDropResets)
+    {
+        return teamDropResets && teamPreviousDryStreaks != null ? teamPreviousDryStreaks : previousDryStreaks;
+    }
+
+    /**
+     * End the dry streak of the folded raids under both team drop settings,
+     * for a manual reset while the history holds no raid to mark
+     */
+    public void resetDryStreak()
+    {
+        dryStreak = 0;
+        teamDryStreak = 0;
+    }
+
+    /**
+     * Derive the baseline for data that predates this field, by removing what the history accounts for
+     */
+    public static StreakBaseline derive(DryRateData data, RaidHistory history)
+    {
+        StreakBaseline baseline = new StreakBaseline();
+        if (history.size() == 0)
+        {
+            baseline.completions = data.getTotalCompletions();
+            baseline.uniques = data.getTotalUniques();
+            baseline.dryStreak = data.getCurrentDryStreak();
+            baseline.previousDryStreaks.addAll(data.getPreviousDryStreaks());
+            baseline.lastDropTime = data.getLastDropTime();
+            baseline.keepForBothSettings();
+            return baseline;
+        }
+
+        int personal = history.uniquesBetweenRaids(1, history.size());
+        int streakEnds = 0;
+        for (int i = 0; i < history.size(); i++)
+        {
+            if (history.get(i).getOutcome() != RaidOutcome.NO_UNIQUE)
+            {
+                streakEnds++;
+            }
+        }
+
+        List<Integer> previous = data.getPreviousDryStreaks();
+        baseline.completions = Math.max(0, data.getTotalCompletions() - history.size());
+        baseline.uniques = Math.max(0, data.getTotalUniques() - personal);
+        baseline.previousDryStreaks.addAll(previous.subList(0, Math.max(0, previous.size() - streakEnds)));
+        baseline.keepForBothSettings();
+        return baseline;
+    }
+
+    // The data predating the baseline was counted under one setting only, which is the best guess for the other
+    private void keepForBothSettings()
+    {
+        teamDryStreak = dryStreak;
+        teamPreviousDryStreaks = new ArrayList<>(previousDryStreaks);
+    }
+}
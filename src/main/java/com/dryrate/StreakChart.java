@@ -0,0 +1,206 @@
+package com.dryrate;
+
+import net.runelite.client.ui.ColorScheme;
+
+import javax.swing.JComponent;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.util.List;
+
+/**
+ * Dry streak history of one raid: a sparkline of every streak in order and a histogram of streak lengths.
+ * Both are drawn into one image at the component's width, which is only redrawn when the history or the width changes,
+ * so a repaint or scroll is a single drawImage however long the history is.
+ */
+public class StreakChart extends JComponent
+{
+    private static final int SPARKLINE_HEIGHT = 36;
+    private static final int HISTOGRAM_HEIGHT = 40;
+    private static final int GAP = 6;
+    private static final int MAX_BINS = 20;
+
+    private static final Color LINE_COLOR = new Color(255, 200, 100);
+    private static final Color CURRENT_COLOR = new Color(100, 200, 100);
+    private static final Color BAR_COLOR = new Color(120, 160, 220);
+    private static final Font LABEL_FONT = new Font("SansSerif", Font.PLAIN, 10);
+
+    // Streaks ended by a purple followed by the current one, copied when the history changes
+    private int[] streaks = new int[0];
+    private long dataKey = Long.MIN_VALUE;
+
+    private BufferedImage image;
+    private int imageWidth = -1;
+
+    public StreakChart()
+    {
+        setOpaque(false);
+        int height = SPARKLINE_HEIGHT + GAP + HISTOGRAM_HEIGHT;
+        setPreferredSize(new Dimension(0, height));
+        setMinimumSize(new Dimension(0, height));
+        setMaximumSize(new Dimension(Integer.MAX_VALUE, height));
+    }
+
+    /**
+     * Show the history of a raid, the image is dropped only if it differs from what is shown
+     */
+    public void setData(DryRateData data)
+    {
+        List<Integer> previous = data.getPreviousDryStreaks();
+        int size = previous.size();
+        long key = size;
+        key = key * 31 + data.getCurrentDryStreak();
+        key = key * 31 + data.getTotalCompletions();
+        key = key * 31 + data.getTotalUniques();
+        if (key == dataKey)
+        {
+            return;
+        }
+
+        int[] copy = new int[size + 1];
+        for (int i = 0; i < size; i++)
+        {
+            copy[i] = previous.get(i);
+        }
+        copy[size] = data.getCurrentDryStreak();
+
+        streaks = copy;
+        dataKey = key;
+        image = null;
+        repaint();
+    }
+
+    @Override
+    protected void paintComponent(Graphics g)
+    {
+        int width = getWidth();
+        if (width <= 0)
+        {
+            return;
+        }
+
+        if (image == null || imageWidth != width)
+        {
+            image = draw(streaks, width);
+            imageWidth = width;
+        }
+        g.drawImage(image, 0, 0, null);
+    }
+
+    private static BufferedImage draw(int[] streaks, int width)
+    {
+        BufferedImage image = new BufferedImage(width, SPARKLINE_HEIGHT + GAP + HISTOGRAM_HEIGHT, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = image.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        g.setFont(LABEL_FONT);
+
+        int max = 0;
+        for (int streak : streaks)
+        {
+            max = Math.max(max, streak);
+        }
+
+        g.setColor(ColorScheme.DARK_GRAY_COLOR);
+        g.fillRect(0, 0, width, SPARKLINE_HEIGHT);
+        g.fillRect(0, SPARKLINE_HEIGHT + GAP, width, HISTOGRAM_HEIGHT);
+
+        if (max == 0)
+        {
+            g.setColor(ColorScheme.LIGHT_GRAY_COLOR);
+            String text = "No dry streaks yet";
+            FontMetrics metrics = g.getFontMetrics();
+            g.drawString(text, (width - metrics.stringWidth(text)) / 2, (SPARKLINE_HEIGHT + metrics.getAscent()) / 2);
+        }
+        else
+        {
+            drawSparkline(g, streaks, max, width);
+            drawHistogram(g, streaks, width);
+        }
+
+        g.dispose();
+        return image;
+    }
+
+    /**
+     * One point per streak, or per pixel column holding the longest of its streaks when there are more streaks than pixels
+     */
+    private static void drawSparkline(Graphics2D g, int[] streaks, int max, int width)
+    {
+        int points = Math.min(streaks.length, width);
+        int[] xs = new int[points];
+        int[] ys = new int[points];
+        int plotHeight = SPARKLINE_HEIGHT - 4;
+        for (int p = 0; p < points; p++)
+        {
+            int from = (int) ((long) p * streaks.length / points);
+            int to = (int) ((long) (p + 1) * streaks.length / points);
+            int value = 0;
+            for (int i = from; i < to; i++)
+            {
+                value = Math.max(value, streaks[i]);
+            }
+            xs[p] = points == 1 ? width / 2 : (int) ((long) p * (width - 1) / (points - 1));
+            ys[p] = SPARKLINE_HEIGHT - 2 - (int) ((long) value * plotHeight / max);
+        }
+
+        g.setColor(LINE_COLOR);
+        g.drawPolyline(xs, ys, points);
+
+        // The current streak is the last point
+        g.setColor(CURRENT_COLOR);
+        g.fillOval(xs[points - 1] - 2, ys[points - 1] - 2, 4, 4);
+
+        g.setColor(ColorScheme.LIGHT_GRAY_COLOR);
+        g.drawString(Integer.toString(max), 2, g.getFontMetrics().getAscent());
+    }
+
+    /**
+     * Streak lengths in up to MAX_BINS equal bins, the current streak is left out as it has not ended
+     */
+    private static void drawHistogram(Graphics2D g, int[] streaks, int width)
+    {
+        int max = 0;
+        for (int i = 0; i < streaks.length - 1; i++)
+        {
+            max = Math.max(max, streaks[i]);
+        }
+        if (max == 0)
+        {
+            return;
+        }
+
+        int bins = Math.max(1, Math.min(MAX_BINS, Math.min(max, width / 4)));
+        int[] counts = new int[bins];
+        int highest = 0;
+        for (int i = 0; i < streaks.length - 1; i++)
+        {
+            int bin = Math.max(0, Math.min(bins - 1, (int) ((long) (streaks[i] - 1) * bins / max)));
+            counts[bin]++;
+            highest = Math.max(highest, counts[bin]);
+        }
+
+        int top = SPARKLINE_HEIGHT + GAP;
+        FontMetrics metrics = g.getFontMetrics();
+        int plotHeight = HISTOGRAM_HEIGHT - metrics.getHeight() - 2;
+        g.setColor(BAR_COLOR);
+        for (int b = 0; b < bins; b++)
+        {
+            int x = b * width / bins;
+            int barWidth = Math.max(1, (b + 1) * width / bins - x - 1);
+            int barHeight = counts[b] * plotHeight / highest;
+            g.fillRect(x, top + 2 + plotHeight - barHeight, barWidth, barHeight);
+        }
+
+        g.setColor(ColorScheme.LIGHT_GRAY_COLOR);
+        int baseline = top + HISTOGRAM_HEIGHT - metrics.getDescent();
+        g.drawString("1", 2, baseline);
+        String maxLabel = Integer.toString(max);
+        g.drawString(maxLabel, width - 2 - metrics.stringWidth(maxLabel), baseline);
+    }
+}
@@ -0,0 +1,130 @@
+package com.dryrate;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Enum of the unique items tracked for each raid
+ * Each item has a compact index within its raid so counters can be stored in small arrays
+ */
+public enum UniqueItem
+{
+    // Theatre of Blood
+    SCYTHE_OF_VITUR(RaidType.TOB, "Scythe", 22486),
+    GHRAZI_RAPIER(RaidType.TOB, "Rapier", 22324),
+    SANGUINESTI_STAFF(RaidType.TOB, "Sang staff", 22481),
+    JUSTICIAR_FACEGUARD(RaidType.TOB, "Justi helm", 22326),
+    JUSTICIAR_CHESTGUARD(RaidType.TOB, "Justi chest", 22327),
+    JUSTICIAR_LEGGUARDS(RaidType.TOB, "Justi legs", 22328),
+    AVERNIC_DEFENDER_HILT(RaidType.TOB, "Avernic", 22477),
+    SANGUINE_ORNAMENT_KIT(RaidType.TOB, "Sanguine kit", 25371),
+    HOLY_ORNAMENT_KIT(RaidType.TOB, "Holy kit", 25742),
+    SANGUINE_DUST(RaidType.TOB, "Sanguine dust", 25746),
+
+    // Tombs of Amascut
+    TUMEKENS_SHADOW(RaidType.TOA, "Shadow", 27277),
+    ELIDINIS_WARD(RaidType.TOA, "Ward", 25985),
+    MASORI_MASK(RaidType.TOA, "Masori mask", 27226),
+    MASORI_BODY(RaidType.TOA, "Masori body", 27229),
+    MASORI_CHAPS(RaidType.TOA, "Masori chaps", 27232),
+    LIGHTBEARER(RaidType.TOA, "Lightbearer", 25975),
+    OSMUMTENS_FANG(RaidType.TOA, "Fang", 26219),
+
+    // Chambers of Xeric
+    TWISTED_BOW(RaidType.COX, "Tbow", 20997),
+    ELDER_MAUL(RaidType.COX, "Elder maul", 21003),
+    KODAI_INSIGNIA(RaidType.COX, "Kodai", 21043),
+    DRAGON_HUNTER_CROSSBOW(RaidType.COX, "DHCB", 21012),
+    DINHS_BULWARK(RaidType.COX, "Bulwark", 21015),
+    ANCESTRAL_HAT(RaidType.COX, "Ances hat", 21018),
+    ANCESTRAL_ROBE_TOP(RaidType.COX, "Ances top", 21021),
+    ANCESTRAL_ROBE_BOTTOM(RaidType.COX, "Ances bottom", 21024),
+    DRAGON_CLAWS(RaidType.COX, "Claws", 13652),
+    TWISTED_BUCKLER(RaidType.COX, "Buckler", 21000),
+    DEXTEROUS_PRAYER_SCROLL(RaidType.COX, "Dex scroll", 21034),
+    ARCANE_PRAYER_SCROLL(RaidType.COX, "Arcane scroll", 21079),
+    TWISTED_ANCESTRAL_KIT(RaidType.COX, "Ances kit", 24670),
+    METAMORPHIC_DUST(RaidType.COX, "Meta dust", 22386);
+
+    private static final Map<RaidType, UniqueItem[]> BY_RAID = new EnumMap<>(RaidType.class);
+    private static final Map<Integer, UniqueItem> BY_ITEM_ID = new HashMap<>();
+
+    static
+    {
+        Map<RaidType, Integer> counts = new EnumMap<>(RaidType.class);
+        for (UniqueItem item : values())
+        {
+            int index = counts.getOrDefault(item.raidType, 0);
+            item.index = index;
+            counts.put(item.raidType, index + 1);
+            BY_ITEM_ID.put(item.itemId, item);
+        }
+
+        for (RaidType raidType : RaidType.values())
+        {
+            UniqueItem[] items = new UniqueItem[counts.getOrDefault(raidType, 0)];
+            for (UniqueItem item : values())
+            {
+                if (item.raidType == raidType)
+                {
+                    items[item.index] = item;
+                }
+            }
+            BY_RAID.put(raidType, items);
+        }
+    }
+
+    private final RaidType raidType;
+    private final String shortName;
+    private final int itemId;
+    private int index;
+
+    UniqueItem(RaidType raidType, String shortName, int itemId)
+    {
+        this.raidType = raidType;
+        this.shortName = shortName;
+        this.itemId = itemId;
+    }
+
+    public RaidType getRaidType()
+    {
+        return raidType;
+    }
+
+    public String getShortName()
+    {
+        return shortName;
+    }
+
+    public int getItemId()
+    {
+        return itemId;
+    }
+
+    /**
+     * Index of this item within its raid, used for the per-raid counter arrays
+     */
+    public int getIndex()
+    {
+        return index;
+    }
+
+    /**
+     * Get the uniques of a raid ordered by their index
+     */
+    public static UniqueItem[] forRaid(RaidType raidType)
+    {
+        return BY_RAID.get(raidType);
+    }
+
+    /**
+     * Look up a unique of the given raid by item ID
+     * @return the unique, or null if the item is not a unique for that raid
+     */
+    public static UniqueItem fromItemId(RaidType raidType, int itemId)
+    {
+        UniqueItem item = BY_ITEM_ID.get(itemId);
+        return item != null && item.raidType == raidType ? item : null;
+    }
+}
@@ -1,11 +1,15 @@
 package com.dryrate.detectors;
 
-import com.dryrate.DryRateManager;
+import com.dryrate.RaidContext;
+import com.dryrate.RaidMode;
 import com.dryrate.RaidType;
-import lombok.extern.slf4j.Slf4j;
+import com.dryrate.UniqueItem;
+import com.dryrate.diagnostics.Diagnostics;
+import com.dryrate.pipeline.OutcomePipeline;
 import net.runelite.api.Client;
 import net.runelite.api.events.GameObjectSpawned;
 import net.runelite.api.events.GameTick;
+import net.runelite.api.events.ItemContainerChanged;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
@@ -14,7 +18,6 @@ import javax.inject.Singleton;
  * Chambers of Xeric raid detector
  * Handles CoX-specific detection logic including light object detection
  */
-@Slf4j
 @Singleton
 public class CoxRaidDetector implements RaidDetector
 {
@@ -24,23 +27,30 @@ public class CoxRaidDetector implements RaidDetector
     // CoX light detection constants
     private static final int COX_LIGHT_OBJECT_ID = 28848; // Light object spawned after raid completion
     private static final int COX_VARBIT_LIGHT_TYPE = 5456; // Varbit for loot type: 1=standard, 2=unique, 3=dust, 4=kit
+    private static final int COX_REWARD_CONTAINER_ID = 581; // Reward chest item container (opened chest contents)
+    private static final int COX_VARBIT_PARTY_SIZE = 5424; // Number of players in the raid
+    private static final int COX_VARBIT_CHALLENGE_MODE = 6385; // 1 when in a challenge mode raid
     
     private final Client client;
-    private final DryRateManager dryRateManager;
+    private final OutcomePipeline pipeline;
+    private final Diagnostics diagnostics;
+    private final CreditedInstances creditedInstances;
     
     // State tracking
     private boolean inRaid = false;
     private boolean chestsHandled = false;
+    private boolean uniqueItemRecorded = false;
     private boolean lightObjectDetected = false;
-    
-    // UI update callback
-    private UIUpdateCallback uiUpdateCallback;
+    // Where the light object was found, kept across visits as the room is laid out the same every time
+    private final LootTiles lootTiles = new LootTiles();
     
     @Inject
-    public CoxRaidDetector(Client client, DryRateManager dryRateManager)
+    public CoxRaidDetector(Client client, OutcomePipeline pipeline, Diagnostics diagnostics, CreditedInstances creditedInstances)
     {
         this.client = client;
-        this.dryRateManager = dryRateManager;
+        this.pipeline = pipeline;
+        this.diagnostics = diagnostics;
+        this.creditedInstances = creditedInstances;
     }
     
     @Override
@@ -55,6 +65,12 @@ public class CoxRaidDetector implements RaidDetector
         return COX_REGION;
     }
     
+    @Override
+    public LootTiles getLootTiles()
+    {
+        return lootTiles;
+    }
+
     @Override
     public boolean isInRaid()
     {
@@ -66,14 +82,9 @@ public class CoxRaidDetector implements RaidDetector
     {
         inRaid = false;
         chestsHandled = false;
+        uniqueItemRecorded = false;
         lightObjectDetected = false;
-        log.debug("CoX detector reset");
-    }
-    
-    @Override
-    public void setUIUpdateCallback(UIUpdateCallback callback)
-    {
-        this.uiUpdateCallback = callback;
+        diagnostics.log(Diagnostics.Category.REGION, "CoX detector reset");
     }
     
     @Override
@@ -84,13 +95,14 @@ public class CoxRaidDetector implements RaidDetector
         
         if (!wasInRaid && inRaid)
         {
-            log.debug("Entered CoX raid");
+            diagnostics.log(Diagnostics.Category.REGION, "Entered CoX raid, region {}", currentRegion);
             chestsHandled = false;
+            uniqueItemRecorded = false;
             lightObjectDetected = false;
         }
         else if (wasInRaid && !inRaid)
         {
-            log.debug("Left CoX raid");
+            diagnostics.log(Diagnostics.Category.REGION, "Left CoX raid, region {}", currentRegion);
             reset();
         }
     }
@@ -108,7 +120,7 @@ public class CoxRaidDetector implements RaidDetector
         // Special case: CoX light object detection
         if (objectId == COX_LIGHT_OBJECT_ID)
         {
-            log.debug("CoX light object detected: {}", objectId);
+            diagnostics.log(Diagnostics.Category.OBJECTS, "CoX light object detected: {}", objectId);
             lightObjectDetected = true;
             handleLight();
             return true;
@@ -131,11 +143,48 @@ public class CoxRaidDetector implements RaidDetector
         int lightType = client.getVarbitValue(COX_VARBIT_LIGHT_TYPE);
         if (lightType > 0)
         {
-            log.debug("*** COX LIGHT BECAME ACTIVE *** lightType={}", lightType);
+            diagnostics.log(Diagnostics.Category.LOOT, "*** COX LIGHT BECAME ACTIVE *** lightType={}", lightType);
             handleLight();
         }
     }
     
+    /**
+     * Read the opened reward chest and record which unique was received
+     */
+    @Override
+    public boolean handleItemContainerChanged(ItemContainerChanged event)
+    {
+        if (!inRaid || uniqueItemRecorded || event.getContainerId() != COX_REWARD_CONTAINER_ID)
+        {
+            return false;
+        }
+
+        UniqueItem unique = RaidDetector.findUniqueItem(RaidType.COX, event.getItemContainer());
+        if (unique == null)
+        {
+            return false;
+        }
+
+        uniqueItemRecorded = true;
+        if (!creditedInstances.claim(CreditedInstances.UNIQUE_ITEM))
+        {
+            diagnostics.log(Diagnostics.Category.LOOT, "*** COX *** Unique item of this raid was already counted: {}", unique.getShortName());
+            return true;
+        }
+        diagnostics.log(Diagnostics.Category.LOOT, "*** COX *** Unique item in reward chest: {}", unique.getShortName());
+        pipeline.uniqueItem(RaidType.COX, unique);
+        return true;
+    }
+    
+    /**
+     * Read party size and challenge mode at loot time
+     */
+    private RaidContext readContext()
+    {
+        RaidMode mode = client.getVarbitValue(COX_VARBIT_CHALLENGE_MODE) == 1 ? RaidMode.HARD : RaidMode.NORMAL;
+        return new RaidContext(client.getVarbitValue(COX_VARBIT_PARTY_SIZE), mode, 0);
+    }
+    
     /**
      * Handle CoX light object using varbit detection
      */
@@ -143,48 +192,50 @@ public class CoxRaidDetector implements RaidDetector
     {
         if (chestsHandled)
         {
-            log.debug("CoX light already handled, ignoring");
+            diagnostics.log(Diagnostics.Category.LOOT, "CoX light already handled, ignoring");
             return;
         }
         
         // Check light type using varbit
         int lightType = client.getVarbitValue(COX_VARBIT_LIGHT_TYPE);
         
-        log.debug("*** COX LIGHT DETECTED *** lightType={}", lightType);
+        diagnostics.log(Diagnostics.Category.LOOT, "*** COX LIGHT DETECTED *** lightType={}", lightType);
         
         // Only process if the light indicates actual completion (non-zero lightType)
         // lightType 0 = inactive/no completion, 1+ = actual completion states
         if (lightType == 0)
         {
-            log.debug("*** COX LIGHT *** Not active yet (lightType=0), waiting for completion");
+            diagnostics.log(Diagnostics.Category.LOOT, "*** COX LIGHT *** Not active yet (lightType=0), waiting for completion");
+            return;
+        }
+
+        if (!creditedInstances.claim(CreditedInstances.COMPLETION))
+        {
+            diagnostics.log(Diagnostics.Category.LOOT, "*** COX *** This raid was already counted, skipping");
+            chestsHandled = true;
             return;
         }
         
         boolean isPurple = (lightType == 2); // 2 = unique drop
         
-        log.debug("*** PROCESSING COX COMPLETION *** lightType={}, isPurple={}", lightType, isPurple);
+        diagnostics.log(Diagnostics.Category.LOOT, "*** PROCESSING COX COMPLETION *** lightType={}, isPurple={}", lightType, isPurple);
         
         // Always count as raid completion
-        dryRateManager.handleRaidCompletion(RaidType.COX);
+        pipeline.completion(RaidType.COX, readContext());
         
         // Handle unique drops - CoX light doesn't distinguish personal vs team
         // We'll treat all unique drops as personal for now
         if (isPurple)
         {
-            log.debug("*** COX UNIQUE DROP *** detected");
-            dryRateManager.handleUniqueDropReceived(RaidType.COX);
+            diagnostics.log(Diagnostics.Category.LOOT, "*** COX UNIQUE DROP *** detected");
+            pipeline.personalUnique(RaidType.COX);
         }
         else
         {
-            log.debug("No CoX purple detected - dry streak will increment");
+            pipeline.noUnique(RaidType.COX);
+            diagnostics.log(Diagnostics.Category.LOOT, "No CoX purple detected - dry streak will increment");
         }
         
         chestsHandled = true;
-        
-        // Update UI
-        if (uiUpdateCallback != null)
-        {
-            uiUpdateCallback.updateUI();
-        }
     }
 } 
\ No newline at end of file
@@ -0,0 +1,103 @@
+package com.dryrate.detectors;
+
+import javax.inject.Singleton;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Raid instances whose loot was recently counted, so walking out of a loot room and back in,
+ * or reconnecting inside it, cannot count the same raid twice.
+ * A fixed ring of fingerprints, only touched on the client thread.
+ */
+@Singleton
+public class CreditedInstances
+{
+    /**
+     * The raid completion and purple of an instance
+     */
+    public static final int COMPLETION = 1;
+
+    /**
+     * The unique item read from the reward chest of an instance
+     */
+    public static final int UNIQUE_ITEM = 2;
+
+    private static final int SIZE = 16;
+
+    // Two completions of a raid are always further apart than this, so a fingerprint seen again within it is the same raid
+    private static final long WINDOW_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
+    private final long[] fingerprints = new long[SIZE];
+    private final long[] lastSeen = new long[SIZE];
+    private final int[] credited = new int[SIZE];
+    private int next;
+    private int current = -1;
+
+    /**
+     * Fingerprint of the instance a loot room is in, from the world, the instance's position and the chunks it was built from
+     * @param visit count of times the player was outside an instance before entering this one
+     */
+    public static long fingerprint(int world, int regionId, int baseX, int baseY, int[][] templateChunks, int visit)
+    {
+        long hash = world;
+        hash = hash * 0x9E3779B97F4A7C15L + visit;
+        hash = hash * 0x9E3779B97F4A7C15L + regionId;
+        hash = hash * 0x9E3779B97F4A7C15L + baseX;
+        hash = hash * 0x9E3779B97F4A7C15L + baseY;
+        hash = hash * 0x9E3779B97F4A7C15L + (templateChunks != null ? Arrays.deepHashCode(templateChunks) : 0);
+        return hash ^ (hash >>> 29);
+    }
+
+    /**
+     * Enter the loot room of an instance, picking up what was already counted if it was seen recently
+     */
+    public void enter(long fingerprint, long now)
+    {
+        for (int i = 0; i < SIZE; i++)
+        {
+            if (credited[i] != 0 && fingerprints[i] == fingerprint && now - lastSeen[i] < WINDOW_MILLIS)
+            {
+                current = i;
+                lastSeen[i] = now;
+                return;
+            }
+        }
+
+        current = next;
+        fingerprints[current] = fingerprint;
+        lastSeen[current] = now;
+        credited[current] = 0;
+        next = (next + 1) % SIZE;
+    }
+
+    /**
+     * Leave the loot room, the window of its instance starts over from now
+     */
+    public void leave(long now)
+    {
+        if (current >= 0)
+        {
+            lastSeen[current] = now;
+            current = -1;
+        }
+    }
+
+    /**
+     * Claim the right to count something for the current instance
+     * @param what COMPLETION or UNIQUE_ITEM
+     * @return false if it was already counted, true otherwise and when no instance is known
+     */
+    public boolean claim(int what)
+    {
+        if (current < 0)
+        {
+            return true;
+        }
+        if ((credited[current] & what) != 0)
+        {
+            return false;
+        }
+        credited[current] |= what;
+        return true;
+    }
+}
@@ -0,0 +1,90 @@
+package com.dryrate.detectors;
+
+/**
+ * Tiles of a raid's loot room where its detector found loot objects, as tiles of the template region
+ * (x and y within the region, packed as x << 6 | y). The room is built from the same template on every visit,
+ * so a scan of the room only has to look at these tiles once they are known.
+ * The tiles are saved with the plugin's config, so they are known from the first scan after a restart.
+ */
+public final class LootTiles
+{
+    // A loot room holds a handful of loot objects, tiles past this are not kept
+    private static final int MAX_TILES = 32;
+
+    private final int[] tiles = new int[MAX_TILES];
+    private int size;
+
+    /**
+     * Note a tile of the template region
+     * @return whether the tile was not known yet
+     */
+    public boolean add(int regionTile)
+    {
+        for (int i = 0; i < size; i++)
+        {
+            if (tiles[i] == regionTile)
+            {
+                return false;
+            }
+        }
+        if (size == MAX_TILES)
+        {
+            return false;
+        }
+        tiles[size++] = regionTile;
+        return true;
+    }
+
+    /**
+     * Add the tiles of a saved list, skipping anything that is not a tile
+     */
+    public void load(String saved)
+    {
+        if (saved == null || saved.isEmpty())
+        {
+            return;
+        }
+        for (String tile : saved.split(","))
+        {
+            try
+            {
+                int regionTile = Integer.parseInt(tile.trim());
+                if (regionTile >= 0 && regionTile < 64 * 64)
+                {
+                    add(regionTile);
+                }
+            }
+            catch (NumberFormatException e)
+            {
+                // a damaged entry only costs that tile
+            }
+        }
+    }
+
+    /**
+     * The tiles as a list for the config
+     */
+    public String save()
+    {
+        StringBuilder saved = new StringBuilder();
+        for (int i = 0; i < size; i++)
+        {
+            if (i > 0)
+            {
+                saved.append(',');
+            }
+            saved.append(tiles[i]);
+        }
+        return saved.toString();
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    public int get(int index)
+    {
+        return tiles[index];
+    }
+}
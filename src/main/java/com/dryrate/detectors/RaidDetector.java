@@ -1,8 +1,13 @@
 package com.dryrate.detectors;
 
 import com.dryrate.RaidType;
+import com.dryrate.UniqueItem;
+import net.runelite.api.Item;
+import net.runelite.api.ItemContainer;
+import net.runelite.api.events.ChatMessage;
 import net.runelite.api.events.GameObjectSpawned;
 import net.runelite.api.events.GameTick;
+import net.runelite.api.events.ItemContainerChanged;
 import net.runelite.api.events.WallObjectSpawned;
 import net.runelite.api.events.VarbitChanged;
 
@@ -13,7 +18,7 @@ import net.runelite.api.events.VarbitChanged;
 public interface RaidDetector
 {
     /**
-     * Callback interface for UI updates
+     * Callback interface for UI updates, called once raid outcomes are recorded
      */
     interface UIUpdateCallback
     {
@@ -36,14 +41,18 @@ public interface RaidDetector
     boolean isInRaid();
 
     /**
-     * Reset the detector state (called when leaving raids)
+     * Tiles of the loot room the detector found its loot objects on, so a scan of the room can look only there
+     * @return null to always scan the whole room
      */
-    void reset();
+    default LootTiles getLootTiles()
+    {
+        return null;
+    }
 
     /**
-     * Set the UI update callback
+     * Reset the detector state (called when leaving raids)
      */
-    void setUIUpdateCallback(UIUpdateCallback callback);
+    void reset();
 
     /**
      * Handle game object spawned events
@@ -77,8 +86,48 @@ public interface RaidDetector
         return false; // Most raids don't need varbit handling
     }
 
+    /**
+     * Handle item container changed events (reward chest contents)
+     * @return true if the event was handled, false otherwise
+     */
+    default boolean handleItemContainerChanged(ItemContainerChanged event)
+    {
+        return false;
+    }
+
+    /**
+     * Handle game messages, passed to every detector as raid completion messages arrive before the loot room is entered
+     * @return true if the message was used, false otherwise
+     */
+    default boolean handleChatMessage(ChatMessage event)
+    {
+        return false;
+    }
+
     /**
      * Update the raid state based on current region
      */
     void updateRaidState(int currentRegion);
+
+    /**
+     * Find the first unique of the given raid in a reward container
+     * @return the unique, or null if the container holds none
+     */
+    static UniqueItem findUniqueItem(RaidType raidType, ItemContainer container)
+    {
+        if (container == null)
+        {
+            return null;
+        }
+
+        for (Item item : container.getItems())
+        {
+            UniqueItem unique = UniqueItem.fromItemId(raidType, item.getId());
+            if (unique != null)
+            {
+                return unique;
+            }
+        }
+        return null;
+    }
 } 
\ No newline at end of file
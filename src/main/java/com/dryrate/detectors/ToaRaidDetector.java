@@ -1,68 +1,94 @@
 package com.dryrate.detectors;
 
-import com.dryrate.DryRateConfig;
 import com.dryrate.DryRateManager;
+import com.dryrate.RaidContext;
 import com.dryrate.RaidType;
-import lombok.extern.slf4j.Slf4j;
+import com.dryrate.UniqueItem;
+import com.dryrate.diagnostics.Diagnostics;
+import com.dryrate.diagnostics.SeenIds;
+import com.dryrate.pipeline.OutcomePipeline;
 import net.runelite.api.Client;
 import net.runelite.api.events.GameObjectSpawned;
+import net.runelite.api.events.GameTick;
+import net.runelite.api.events.ItemContainerChanged;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
 
 /**
  * Tombs of Amascut raid detector
  * Handles TOA loot room object detection and raid completion tracking
  */
-@Slf4j
 @Singleton
 public class ToaRaidDetector implements RaidDetector
 {
     // TOA loot room region ID
     private static final int TOA_REGION = 14672; // Tombs of Amascut loot room
     
-    // TOA object IDs (confirmed from actual raids)
-    private static final int TOA_SARCOPHAGUS_PURPLE = 44826;    // Purple sarcophagus (indicates unique) - TBD
+    // TOA object IDs (confirmed from actual raids), the purple sarcophagus is told apart by not being the plain one
     private static final int TOA_SARCOPHAGUS_NON_PURPLE = 46220; // Non-purple sarcophagus (no unique) - CONFIRMED
     private static final int TOA_PLAYER_CHEST = 29994;          // Player's unopened chest - CONFIRMED
     private static final int TOA_VAULT_CHEST_OPEN = 44787;      // Opened vault chest (toa_vault_chest_open) - CONFIRMED
     
+    // Party member health varbits, non-zero for each member present in the raid
+    private static final int TOA_VARBIT_MEMBER_HEALTH_FIRST = 14345;
+    private static final int TOA_VARBIT_MEMBER_HEALTH_LAST = 14352;
+    private static final int TOA_VARBIT_RAID_LEVEL = 14380;
+
+    // Loot room varbits: the sarcophagus is odd when it is purple, a teammate's chest is 2 when they hold the key
+    private static final int TOA_VARBIT_SARCOPHAGUS = 14373;
+    private static final int[] TOA_VARBIT_TEAMMATE_CHESTS = {14356, 14357, 14358, 14359, 14360, 14370, 14371, 14372};
+    private static final int TOA_CHEST_HAS_KEY = 2;
+
+    // Ticks the loot varbits may stay unset after the first loot object appears before the objects are used instead,
+    // long enough for the rest of the room's objects to spawn
+    private static final int TOA_VARBIT_WAIT_TICKS = 5;
+    
+    // Reward chest item container (opened chest contents)
+    private static final int TOA_REWARD_CONTAINER_ID = 811;
+    
     // Complete list of ALL object IDs that can spawn
     private static final List<Integer> TOA_ALL_OBJECT_IDS = Arrays.asList(
-        TOA_SARCOPHAGUS_PURPLE,      // 44826 - Purple sarcophagus (TBD)
         TOA_SARCOPHAGUS_NON_PURPLE,  // 46220 - Non-purple sarcophagus (CONFIRMED)
         TOA_PLAYER_CHEST,            // 29994 - Player's unopened chest (CONFIRMED)
         TOA_VAULT_CHEST_OPEN,        // 44787 - Opened vault chest (CONFIRMED)
         44788                        // 44788 - Additional vault chest variant (observed)
     );
-    
-    // Purple detection IDs for analysis
-    private static final List<Integer> TOA_PURPLE_SARCOPHAGUS_IDS = Arrays.asList(
-        TOA_SARCOPHAGUS_PURPLE
-    );
 
-    @Inject
-    private Client client;
-
-    @Inject
-    private DryRateManager dryRateManager;
-
-    @Inject
-    private DryRateConfig config;
+    private final Client client;
+    private final DryRateManager dryRateManager;
+    private final OutcomePipeline pipeline;
+    private final Diagnostics diagnostics;
+    private final CreditedInstances creditedInstances;
 
     // State tracking
     private boolean inRaid = false;
     private boolean chestsHandled = false;
+    private boolean uniqueItemRecorded = false;
     private final List<Integer> loadedObjects = new ArrayList<>();
-    private final Set<Integer> seenObjectIds = new HashSet<>();
-    
-    // UI update callback
-    private UIUpdateCallback uiUpdateCallback;
+    // Loot room varbits of this tick and the last, the sarcophagus first then the teammate chests
+    private final int[] lootVarbits = new int[1 + TOA_VARBIT_TEAMMATE_CHESTS.length];
+    private final int[] previousLootVarbits = new int[1 + TOA_VARBIT_TEAMMATE_CHESTS.length];
+    // Ticks the loot objects have been there while the loot varbits were unset
+    private int varbitWaitTicks;
+    // Unknown objects already logged this visit, bounded so a long visit cannot grow it
+    private final SeenIds loggedObjects = new SeenIds(256);
+    // Where the loot objects were found, kept across visits as the room is laid out the same every time
+    private final LootTiles lootTiles = new LootTiles();
+
+    @Inject
+    public ToaRaidDetector(Client client, DryRateManager dryRateManager, OutcomePipeline pipeline, Diagnostics diagnostics,
+        CreditedInstances creditedInstances)
+    {
+        this.client = client;
+        this.dryRateManager = dryRateManager;
+        this.pipeline = pipeline;
+        this.diagnostics = diagnostics;
+        this.creditedInstances = creditedInstances;
+    }
 
     @Override
     public RaidType getRaidType()
@@ -77,15 +103,15 @@ public class ToaRaidDetector implements RaidDetector
     }
 
     @Override
-    public boolean isInRaid()
+    public LootTiles getLootTiles()
     {
-        return inRaid;
+        return lootTiles;
     }
 
     @Override
-    public void setUIUpdateCallback(UIUpdateCallback callback)
+    public boolean isInRaid()
     {
-        this.uiUpdateCallback = callback;
+        return inRaid;
     }
 
     @Override
@@ -97,14 +123,17 @@ public class ToaRaidDetector implements RaidDetector
         // Only log when actually entering/leaving TOA
         if (!wasInRaid && inRaid)
         {
-            		log.debug("*** TOA *** ENTERING loot room - region {}", currentRegion);
+            diagnostics.log(Diagnostics.Category.REGION, "*** TOA *** ENTERING loot room - region {}", currentRegion);
 		chestsHandled = false;
+		uniqueItemRecorded = false;
 		loadedObjects.clear();
-            seenObjectIds.clear();
+            loggedObjects.clear();
+            Arrays.fill(previousLootVarbits, 0);
+            varbitWaitTicks = 0;
         }
         else if (wasInRaid && !inRaid)
         {
-            		log.debug("*** TOA *** LEAVING loot room - region {}", currentRegion);
+            diagnostics.log(Diagnostics.Category.REGION, "*** TOA *** LEAVING loot room - region {}", currentRegion);
 		reset();
         }
     }
@@ -122,134 +151,204 @@ public class ToaRaidDetector implements RaidDetector
         // Check if objectId is in expected object list
         if (TOA_ALL_OBJECT_IDS.contains(objectId))
         {
-            log.debug("*** TOA *** Found object: {}", objectId);
+            diagnostics.log(Diagnostics.Category.OBJECTS, "*** TOA *** Found object: {}", objectId);
             
             // Use the object ID directly for processing
             handleObject(objectId);
             return true;
         }
         
-        // Log unknown objects once only (reduced spam)
-        if (!seenObjectIds.contains(objectId))
-        {
-            log.debug("TOA: Unknown object {} (expected: {})", objectId, TOA_ALL_OBJECT_IDS);
-            seenObjectIds.add(objectId);
-        }
+        diagnostics.logOnce(Diagnostics.Category.OBJECTS, loggedObjects, "TOA: Unknown object {}", objectId);
         
         return false;
     }
     
+    /**
+     * Read the opened reward chest and record which unique was received
+     */
+    @Override
+    public boolean handleItemContainerChanged(ItemContainerChanged event)
+    {
+        if (!inRaid || uniqueItemRecorded || event.getContainerId() != TOA_REWARD_CONTAINER_ID)
+        {
+            return false;
+        }
+
+        UniqueItem unique = RaidDetector.findUniqueItem(RaidType.TOA, event.getItemContainer());
+        if (unique == null)
+        {
+            return false;
+        }
+
+        uniqueItemRecorded = true;
+        if (!creditedInstances.claim(CreditedInstances.UNIQUE_ITEM))
+        {
+            diagnostics.log(Diagnostics.Category.LOOT, "*** TOA *** Unique item of this raid was already counted: {}", unique.getShortName());
+            return true;
+        }
+        diagnostics.log(Diagnostics.Category.LOOT, "*** TOA *** Unique item in reward chest: {}", unique.getShortName());
+        pipeline.uniqueItem(RaidType.TOA, unique);
+        return true;
+    }
+    
+    /**
+     * Decide the loot from the varbits once they have settled, the first tick they read the same as the tick before.
+     * If the loot room's objects have started to spawn and the varbits stay unset for a few ticks, fall back to the spawned objects.
+     */
+    @Override
+    public void handleGameTick(GameTick event)
+    {
+        if (!inRaid || chestsHandled)
+        {
+            return;
+        }
+
+        if (readLootVarbits())
+        {
+            if (Arrays.equals(lootVarbits, previousLootVarbits))
+            {
+                processLootVarbits();
+            }
+        }
+        else if (!loadedObjects.isEmpty() && ++varbitWaitTicks >= TOA_VARBIT_WAIT_TICKS)
+        {
+            processObjects();
+        }
+        System.arraycopy(lootVarbits, 0, previousLootVarbits, 0, lootVarbits.length);
+    }
+
+    /**
+     * Read the loot room varbits into lootVarbits
+     * @return whether any of them is set, they are all 0 until the raid is complete
+     */
+    private boolean readLootVarbits()
+    {
+        lootVarbits[0] = client.getVarbitValue(TOA_VARBIT_SARCOPHAGUS);
+        boolean any = lootVarbits[0] != 0;
+        for (int i = 0; i < TOA_VARBIT_TEAMMATE_CHESTS.length; i++)
+        {
+            lootVarbits[i + 1] = client.getVarbitValue(TOA_VARBIT_TEAMMATE_CHESTS[i]);
+            any |= lootVarbits[i + 1] != 0;
+        }
+        return any;
+    }
+
+    /**
+     * Attribute the raid from settled loot varbits: a purple sarcophagus is a teammate's if one of their chests holds the key
+     */
+    private void processLootVarbits()
+    {
+        boolean purple = (lootVarbits[0] & 1) != 0;
+        boolean teammate = false;
+        for (int i = 1; i < lootVarbits.length; i++)
+        {
+            teammate |= lootVarbits[i] == TOA_CHEST_HAS_KEY;
+        }
+
+        diagnostics.log(Diagnostics.Category.LOOT, "*** TOA ANALYSIS *** Loot varbits settled: {}", () -> Arrays.toString(lootVarbits));
+        diagnostics.log(Diagnostics.Category.LOOT, "*** TOA ANALYSIS *** Purple: {}, teammate's: {}", purple, teammate);
+        recordLoot(purple && !teammate, purple && teammate);
+    }
+
     /**
      * Handle object spawning
      */
     private void handleObject(int objectId)
     {
-        log.debug("*** TOA *** Found: {}", objectId);
+        diagnostics.log(Diagnostics.Category.LOOT, "*** TOA *** Found: {}", objectId);
         
         // Add to loaded objects
         if (!loadedObjects.contains(objectId))
         {
             loadedObjects.add(objectId);
         }
+    }
+    
+    /**
+     * Infer the loot from the spawned objects, only used when the loot varbits are unavailable
+     */
+    private void processObjects()
+    {
+        diagnostics.log(Diagnostics.Category.LOOT, "*** TOA *** PROCESSING OBJECTS: {}", loadedObjects);
         
-        // Process objects when we have a player chest (indicating raid completion)
+        // The plain sarcophagus means no purple. Without it the sarcophagus is purple: with the player chest there
+        // it is a teammate's, and without it the player's own, as the player's key is in the sarcophagus.
+        boolean hasPlainSarcophagus = loadedObjects.contains(TOA_SARCOPHAGUS_NON_PURPLE);
         boolean hasPlayerChest = loadedObjects.contains(TOA_PLAYER_CHEST);
         
-        if (hasPlayerChest && !chestsHandled)
-        {
-            processObjects();
-        }
+        diagnostics.log(Diagnostics.Category.LOOT, "*** TOA ANALYSIS *** Plain sarcophagus: {}, Player chest: {}",
+            hasPlainSarcophagus, hasPlayerChest);
+        recordLoot(!hasPlainSarcophagus && !hasPlayerChest, !hasPlainSarcophagus && hasPlayerChest);
     }
-    
+
     /**
-     * Process objects and handle raid completion
+     * Record the raid completion and who got the purple, once per loot room visit
      */
-    private void processObjects()
+    private void recordLoot(boolean isPurpleDropForPlayer, boolean isPurpleDropForTeammate)
     {
         if (chestsHandled)
         {
-            log.debug("*** TOA *** Objects already processed, skipping");
+            diagnostics.log(Diagnostics.Category.LOOT, "*** TOA *** Loot already processed, skipping");
             return;
         }
         
         chestsHandled = true;
-        
-        log.debug("*** TOA *** PROCESSING OBJECTS: {}", loadedObjects);
-        
-        // TOA-specific logic: check for purple sarcophagus, player chest, and opened vault
-        boolean hasPurpleSarcophagus = loadedObjects.contains(TOA_SARCOPHAGUS_PURPLE);
-        boolean hasPlayerChest = loadedObjects.contains(TOA_PLAYER_CHEST);
-        boolean hasOpenedVault = loadedObjects.contains(TOA_VAULT_CHEST_OPEN);
-        
-        log.debug("*** TOA ANALYSIS *** Purple sarcophagus: {}, Player chest: {}, Opened vault: {}", 
-            hasPurpleSarcophagus, hasPlayerChest, hasOpenedVault);
-        
-        // Determine if this is a purple and if it's the player's
-        boolean isPurpleDropForPlayer = false;
-        boolean isPurpleDropForTeammate = false;
-        
-        if (hasPurpleSarcophagus)
-        {
-            if (hasPlayerChest)
-            {
-                // Purple sarcophagus + player chest present = teammate's purple
-                isPurpleDropForTeammate = true;
-                log.debug("*** TOA ANALYSIS *** TEAMMATE'S PURPLE detected (purple sarc + player chest)");
-            }
-            else
-            {
-                // Purple sarcophagus + no player chest = player's purple
-                isPurpleDropForPlayer = true;
-                log.debug("*** TOA ANALYSIS *** PLAYER'S PURPLE detected (purple sarc + no player chest)");
-            }
-        }
-        else
+
+        if (!creditedInstances.claim(CreditedInstances.COMPLETION))
         {
-            log.debug("*** TOA ANALYSIS *** NO PURPLE detected (no purple sarcophagus)");
+            diagnostics.log(Diagnostics.Category.LOOT, "*** TOA *** This raid was already counted, skipping");
+            return;
         }
         
         // Handle completion and unique drops
-        log.debug("*** TOA *** Recording raid completion");
-        dryRateManager.handleRaidCompletion(RaidType.TOA);
+        diagnostics.log(Diagnostics.Category.LOOT, "*** TOA *** Recording raid completion");
+        pipeline.completion(RaidType.TOA, readContext());
         
         if (isPurpleDropForPlayer)
         {
-            log.debug("*** TOA *** Recording PLAYER'S unique drop");
-            dryRateManager.handleUniqueDropReceived(RaidType.TOA);
+            diagnostics.log(Diagnostics.Category.LOOT, "*** TOA *** Recording PLAYER'S unique drop");
+            pipeline.personalUnique(RaidType.TOA);
         }
         else if (isPurpleDropForTeammate)
         {
-            // Handle teammate drops based on config
-            if (config.teamDropResets())
-            {
-                log.debug("*** TOA *** Recording teammate's unique drop (team drop reset enabled)");
-                dryRateManager.handleUniqueDropReceived(RaidType.TOA);
-            }
-            else
-            {
-                log.debug("*** TOA *** Teammate's unique drop ignored (team drop reset disabled)");
-            }
+            // Always record teammate drops, the manager decides whether they reset the streak
+            diagnostics.log(Diagnostics.Category.LOOT, "*** TOA *** Recording teammate's unique drop, teamDropResets: {}", dryRateManager.getSettings().isTeamDropResets());
+            pipeline.teamUnique(RaidType.TOA);
         }
-        
-        // Trigger UI update
-        if (uiUpdateCallback != null)
+        else
         {
-            log.debug("*** TOA *** Triggering UI update");
-            uiUpdateCallback.updateUI();
+            diagnostics.log(Diagnostics.Category.LOOT, "*** TOA ANALYSIS *** NO PURPLE detected");
+            pipeline.noUnique(RaidType.TOA);
         }
-        else
+    }
+
+    /**
+     * Read team size and raid level at loot time
+     */
+    private RaidContext readContext()
+    {
+        int teamSize = 0;
+        for (int varbit = TOA_VARBIT_MEMBER_HEALTH_FIRST; varbit <= TOA_VARBIT_MEMBER_HEALTH_LAST; varbit++)
         {
-            log.warn("*** TOA *** No UI update callback set!");
+            if (client.getVarbitValue(varbit) != 0)
+            {
+                teamSize++;
+            }
         }
+
+        return RaidContext.forToa(teamSize, client.getVarbitValue(TOA_VARBIT_RAID_LEVEL));
     }
 
     @Override
     public void reset()
     {
-        log.debug("*** TOA *** Detector reset");
+        diagnostics.log(Diagnostics.Category.REGION, "*** TOA *** Detector reset");
         inRaid = false;
         chestsHandled = false;
+        uniqueItemRecorded = false;
         loadedObjects.clear();
-        seenObjectIds.clear();
+        loggedObjects.clear();
+        Arrays.fill(previousLootVarbits, 0);
+        varbitWaitTicks = 0;
     }
 } 
\ No newline at end of file
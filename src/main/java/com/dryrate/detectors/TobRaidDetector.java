@@ -1,19 +1,26 @@
 package com.dryrate.detectors;
 
-import com.dryrate.DryRateConfig;
 import com.dryrate.DryRateManager;
+import com.dryrate.RaidContext;
+import com.dryrate.RaidMode;
 import com.dryrate.RaidType;
+import com.dryrate.UniqueItem;
+import com.dryrate.diagnostics.Diagnostics;
+import com.dryrate.diagnostics.SeenIds;
+import com.dryrate.pipeline.OutcomePipeline;
 import lombok.extern.slf4j.Slf4j;
 import net.runelite.api.Client;
+import net.runelite.api.events.ChatMessage;
 import net.runelite.api.events.GameObjectSpawned;
+import net.runelite.api.events.ItemContainerChanged;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  * Theatre of Blood raid detector
@@ -32,6 +39,16 @@ public class TobRaidDetector implements RaidDetector
     private static final int TOB_TEAMMATES_PURPLE = 32991;       // Teammates' purple chests
     private static final int TOB_TEAMMATES_CHEST_CLOSED = 32990; // Teammates' closed chests
     
+    // Party orb varbits, non-zero for each member present in the raid
+    private static final int[] TOB_VARBIT_PARTY_ORBS = {6442, 6443, 6444, 6445, 6446};
+    
+    // Completion count message sent as the raid ends, it names the mode the raid was played in:
+    // "Theatre of Blood", "Theatre of Blood: Entry Mode" or "Theatre of Blood: Hard Mode"
+    private static final Pattern TOB_COMPLETION_MESSAGE = Pattern.compile("Your completed Theatre of Blood(?:: (Entry|Hard) Mode)? count is");
+    
+    // Reward chest item container (opened chest contents)
+    private static final int TOB_REWARD_CONTAINER_ID = 612;
+    
     // Complete list of ALL chest IDs that can spawn
     private static final List<Integer> TOB_ALL_CHEST_IDS = Arrays.asList(
         // Regular chests that spawn in the room
@@ -51,25 +68,32 @@ public class TobRaidDetector implements RaidDetector
     
     private final Client client;
     private final DryRateManager dryRateManager;
-    private final DryRateConfig config;
+    private final OutcomePipeline pipeline;
+    private final Diagnostics diagnostics;
+    private final CreditedInstances creditedInstances;
     
     // State tracking
     private boolean inRaid = false;
     private boolean chestsHandled = false;
+    private boolean uniqueItemRecorded = false;
     private List<Integer> loadedChests = new ArrayList<>();
+    // Mode named by the last completion message, null until one is seen
+    private RaidMode completedMode;
     
-    // Track seen object IDs to prevent log spam
-    private Set<Integer> seenObjectIds = new HashSet<>();
-    
-    // UI update callback
-    private UIUpdateCallback uiUpdateCallback;
+    // Non-chest objects already logged this visit, bounded so a long visit cannot grow it
+    private final SeenIds loggedObjects = new SeenIds(256);
+    // Where the loot objects were found, kept across visits as the room is laid out the same every time
+    private final LootTiles lootTiles = new LootTiles();
     
     @Inject
-    public TobRaidDetector(Client client, DryRateManager dryRateManager, DryRateConfig config)
+    public TobRaidDetector(Client client, DryRateManager dryRateManager, OutcomePipeline pipeline, Diagnostics diagnostics,
+        CreditedInstances creditedInstances)
     {
         this.client = client;
         this.dryRateManager = dryRateManager;
-        this.config = config;
+        this.pipeline = pipeline;
+        this.diagnostics = diagnostics;
+        this.creditedInstances = creditedInstances;
     }
     
     @Override
@@ -84,6 +108,12 @@ public class TobRaidDetector implements RaidDetector
         return TOB_REGION;
     }
     
+    @Override
+    public LootTiles getLootTiles()
+    {
+        return lootTiles;
+    }
+
     @Override
     public boolean isInRaid()
     {
@@ -95,15 +125,11 @@ public class TobRaidDetector implements RaidDetector
     {
         inRaid = false;
         chestsHandled = false;
+        uniqueItemRecorded = false;
         loadedChests.clear();
-        seenObjectIds.clear();
-        log.debug("TOB detector reset");
-    }
-    
-    @Override
-    public void setUIUpdateCallback(UIUpdateCallback callback)
-    {
-        this.uiUpdateCallback = callback;
+        loggedObjects.clear();
+        completedMode = null;
+        diagnostics.log(Diagnostics.Category.REGION, "TOB detector reset");
     }
     
     @Override
@@ -115,14 +141,15 @@ public class TobRaidDetector implements RaidDetector
         // Only log when actually entering/leaving TOB
         if (!wasInRaid && inRaid)
         {
-            			log.debug("*** TOB *** ENTERING loot room - region {}", currentRegion);
+            diagnostics.log(Diagnostics.Category.REGION, "*** TOB *** ENTERING loot room - region {}", currentRegion);
             chestsHandled = false;
+            uniqueItemRecorded = false;
             loadedChests.clear();
-            seenObjectIds.clear();
+            loggedObjects.clear();
         }
         else if (wasInRaid && !inRaid)
         {
-            			log.debug("*** TOB *** LEAVING loot room - region {}", currentRegion);
+            diagnostics.log(Diagnostics.Category.REGION, "*** TOB *** LEAVING loot room - region {}", currentRegion);
             reset();
         }
     }
@@ -140,41 +167,82 @@ public class TobRaidDetector implements RaidDetector
         // Check if objectId is in expected chest list
         if (TOB_ALL_CHEST_IDS.contains(objectId))
         {
-            		log.debug("*** TOB *** Found chest object: {}", objectId);
+            diagnostics.log(Diagnostics.Category.OBJECTS, "*** TOB *** Found chest object: {}", objectId);
             
             // Use the object ID directly for processing
             handleChest(objectId);
             return true;
         }
         
-        // Only log non-chest objects at debug level to reduce spam
-        if (!seenObjectIds.contains(objectId))
-        {
-            log.debug("TOB: Object {} not a chest, ignoring", objectId);
-            seenObjectIds.add(objectId);
-        }
+        diagnostics.logOnce(Diagnostics.Category.OBJECTS, loggedObjects, "TOB: Object {} not a chest, ignoring", objectId);
         
         return false;
     }
     
+    /**
+     * Remember the mode named by the completion message, which is sent before the loot room is entered
+     */
+    @Override
+    public boolean handleChatMessage(ChatMessage event)
+    {
+        Matcher matcher = TOB_COMPLETION_MESSAGE.matcher(event.getMessage());
+        if (!matcher.lookingAt())
+        {
+            return false;
+        }
+
+        String mode = matcher.group(1);
+        completedMode = mode == null ? RaidMode.NORMAL : mode.equals("Entry") ? RaidMode.ENTRY : RaidMode.HARD;
+        diagnostics.log(Diagnostics.Category.LOOT, "*** TOB *** Completed in {} mode", completedMode);
+        return true;
+    }
+    
+    /**
+     * Read the opened reward chest and record which unique was received
+     */
+    @Override
+    public boolean handleItemContainerChanged(ItemContainerChanged event)
+    {
+        if (!inRaid || uniqueItemRecorded || event.getContainerId() != TOB_REWARD_CONTAINER_ID)
+        {
+            return false;
+        }
+
+        UniqueItem unique = RaidDetector.findUniqueItem(RaidType.TOB, event.getItemContainer());
+        if (unique == null)
+        {
+            return false;
+        }
+
+        uniqueItemRecorded = true;
+        if (!creditedInstances.claim(CreditedInstances.UNIQUE_ITEM))
+        {
+            diagnostics.log(Diagnostics.Category.LOOT, "*** TOB *** Unique item of this raid was already counted: {}", unique.getShortName());
+            return true;
+        }
+        diagnostics.log(Diagnostics.Category.LOOT, "*** TOB *** Unique item in reward chest: {}", unique.getShortName());
+        pipeline.uniqueItem(RaidType.TOB, unique);
+        return true;
+    }
+    
     /**
      * Handle chest spawning
      */
     private void handleChest(int chestId)
     {
-        		log.debug("*** TOB *** Processing chest: {}", chestId);
+        		diagnostics.log(Diagnostics.Category.LOOT, "*** TOB *** Processing chest: {}", chestId);
         
         // Add to loaded chests
         if (!loadedChests.contains(chestId))
         {
             loadedChests.add(chestId);
-            log.debug("TOB: Added chest {} to loadedChests: {}", chestId, loadedChests);
+            diagnostics.log(Diagnostics.Category.LOOT, "TOB: loadedChests {} after adding chest {}", loadedChests, chestId);
         }
         
         // Process chests when we have at least one
         if (!loadedChests.isEmpty() && !chestsHandled)
         {
-            log.debug("TOB: Triggering chest processing");
+            diagnostics.log(Diagnostics.Category.LOOT, "TOB: Triggering chest processing");
             processChests();
         }
     }
@@ -184,7 +252,7 @@ public class TobRaidDetector implements RaidDetector
      */
     private void processChests()
     {
-        log.debug("TOB: Processing chests: {}", loadedChests);
+        diagnostics.log(Diagnostics.Category.LOOT, "TOB: Processing chests: {}", loadedChests);
         
         if (loadedChests.isEmpty())
         {
@@ -192,18 +260,25 @@ public class TobRaidDetector implements RaidDetector
             return;
         }
 
+        if (!creditedInstances.claim(CreditedInstances.COMPLETION))
+        {
+            diagnostics.log(Diagnostics.Category.LOOT, "*** TOB *** This raid was already counted, skipping");
+            chestsHandled = true;
+            return;
+        }
+
         // Detect purple chests
         boolean isPurple = loadedChests.stream().anyMatch(TOB_PURPLE_CHEST_IDS::contains);
         
         // Detect if it's a personal purple (player's own purple)
         boolean isPersonal = loadedChests.contains(TOB_PLAYER_PURPLE);
 
-        		log.debug("*** TOB *** Analysis - chests: {}, isPurple: {}, isPersonal: {}",
+        		diagnostics.log(Diagnostics.Category.LOOT, "*** TOB *** Analysis - chests: {}, isPurple: {}, isPersonal: {}",
 			loadedChests, isPurple, isPersonal);
 
         // Always count this as a raid completion
-        		log.debug("*** TOB *** Recording raid completion");
-        dryRateManager.handleRaidCompletion(RaidType.TOB);
+        		diagnostics.log(Diagnostics.Category.LOOT, "*** TOB *** Recording raid completion");
+        pipeline.completion(RaidType.TOB, readContext());
 
         // Handle unique drops
         if (isPurple)
@@ -211,57 +286,52 @@ public class TobRaidDetector implements RaidDetector
             if (isPersonal)
             {
                 // Personal purple - always reset dry streak
-                			log.debug("*** TOB *** PERSONAL purple detected - resetting dry streak");
-                dryRateManager.handleUniqueDropReceived(RaidType.TOB);
+                			diagnostics.log(Diagnostics.Category.LOOT, "*** TOB *** PERSONAL purple detected - resetting dry streak");
+                pipeline.personalUnique(RaidType.TOB);
                 processCompletion(true);
             }
             else
             {
-                // Team purple - handle based on config
-                				log.debug("*** TOB *** TEAM purple detected, teamDropResets: {}", config.teamDropResets());
-                if (config.teamDropResets())
-                {
-                    					log.debug("*** TOB *** Team drops reset enabled - resetting dry streak");
-                    dryRateManager.handleTeamUniqueDropReceived(RaidType.TOB);
-                    processCompletion(true);
-                }
-                else
-                {
-                    					log.debug("*** TOB *** Team drops reset disabled - NOT resetting dry streak");
-                    processCompletion(false);
-                }
+                // Team purple - always recorded, the manager decides whether it resets the streak
+                boolean teamDropResets = dryRateManager.getSettings().isTeamDropResets();
+                				diagnostics.log(Diagnostics.Category.LOOT, "*** TOB *** TEAM purple detected, teamDropResets: {}", teamDropResets);
+                pipeline.teamUnique(RaidType.TOB);
+                processCompletion(teamDropResets);
             }
         }
         else
         {
-            			log.debug("*** TOB *** No purple detected - dry streak will increment");
+            			diagnostics.log(Diagnostics.Category.LOOT, "*** TOB *** No purple detected - dry streak will increment");
+            pipeline.noUnique(RaidType.TOB);
             processCompletion(false);
         }
-        
-        // Always trigger UI update after processing
-        processCompletion(isPurple);
     }
     
     /**
-     * Process raid completion and trigger UI update
+     * Read team size at loot time, the mode comes from the completion message and is normal if it was missed
+     */
+    private RaidContext readContext()
+    {
+        int teamSize = 0;
+        for (int varbit : TOB_VARBIT_PARTY_ORBS)
+        {
+            if (client.getVarbitValue(varbit) != 0)
+            {
+                teamSize++;
+            }
+        }
+
+        return new RaidContext(teamSize, completedMode != null ? completedMode : RaidMode.NORMAL, 0);
+    }
+    
+    /**
+     * Finish processing the raid, the pipeline refreshes the UI once the outcome is recorded
      */
     private void processCompletion(boolean hasUnique)
     {
-        log.debug("TOB: Completion processing, hasUnique={}, uiCallback present: {}", 
-            hasUnique, (uiUpdateCallback != null));
+        diagnostics.log(Diagnostics.Category.LOOT, "TOB: Completion processing, hasUnique={}", hasUnique);
         
         // Set flag to prevent duplicate processing
         chestsHandled = true;
-        
-        // Trigger UI update callback
-        if (uiUpdateCallback != null)
-        {
-            		log.debug("*** TOB *** Triggering UI update");
-            uiUpdateCallback.updateUI();
-        }
-        else
-        {
-            log.warn("TOB: No UI update callback set!");
-        }
     }
 } 
\ No newline at end of file
@@ -0,0 +1,221 @@
+package com.dryrate.diagnostics;
+
+import lombok.extern.slf4j.Slf4j;
+
+import javax.inject.Singleton;
+import java.util.Locale;
+import java.util.function.Supplier;
+
+/**
+ * Diagnostic logging for the hot paths of the plugin, switched on per category from the config.
+ * A disabled category costs one field read: the overloads take primitives or suppliers, so nothing is boxed,
+ * formatted or built unless the category is on. Each category is rate limited by a token bucket.
+ */
+@Slf4j
+@Singleton
+public class Diagnostics
+{
+    // Each category may log a burst of this many messages, then this many per second
+    private static final int BURST = 20;
+    private static final int PER_SECOND = 5;
+
+    /**
+     * What a diagnostic message is about
+     */
+    public enum Category
+    {
+        REGION("region"),
+        OBJECTS("objects"),
+        LOOT("loot"),
+        SAVE("save");
+
+        private final String configName;
+
+        Category(String configName)
+        {
+            this.configName = configName;
+        }
+
+        public String getConfigName()
+        {
+            return configName;
+        }
+    }
+
+    private static final class RateLimit
+    {
+        private double tokens = BURST;
+        private long refilled = System.nanoTime();
+        private int suppressed;
+
+        /**
+         * Take a token
+         * @return the number of messages dropped since the last one that got through, or -1 if this one is dropped too
+         */
+        synchronized int acquire()
+        {
+            long now = System.nanoTime();
+            tokens = Math.min(BURST, tokens + (now - refilled) * PER_SECOND / 1e9);
+            refilled = now;
+            if (tokens < 1)
+            {
+                suppressed++;
+                return -1;
+            }
+
+            tokens--;
+            int dropped = suppressed;
+            suppressed = 0;
+            return dropped;
+        }
+    }
+
+    private final RateLimit[] limits = new RateLimit[Category.values().length];
+    private volatile int enabled;
+
+    public Diagnostics()
+    {
+        for (int i = 0; i < limits.length; i++)
+        {
+            limits[i] = new RateLimit();
+        }
+    }
+
+    /**
+     * Enable the categories in a comma separated list of names, "all" enables every category and an empty list none
+     */
+    public void configure(String categories)
+    {
+        int mask = 0;
+        if (categories != null)
+        {
+            for (String name : categories.split(","))
+            {
+                name = name.trim().toLowerCase(Locale.ROOT);
+                if (name.isEmpty())
+                {
+                    continue;
+                }
+                if (name.equals("all"))
+                {
+                    mask = (1 << Category.values().length) - 1;
+                    continue;
+                }
+
+                Category category = byName(name);
+                if (category == null)
+                {
+                    log.warn("Unknown diagnostic category: {}", name);
+                    continue;
+                }
+                mask |= 1 << category.ordinal();
+            }
+        }
+        enabled = mask;
+    }
+
+    public boolean isEnabled(Category category)
+    {
+        return (enabled & 1 << category.ordinal()) != 0;
+    }
+
+    public void log(Category category, String message)
+    {
+        if (isEnabled(category))
+        {
+            emit(category, message);
+        }
+    }
+
+    public void log(Category category, String format, int arg)
+    {
+        if (isEnabled(category))
+        {
+            emit(category, format, arg);
+        }
+    }
+
+    public void log(Category category, String format, Object arg)
+    {
+        if (isEnabled(category))
+        {
+            emit(category, format, arg);
+        }
+    }
+
+    public void log(Category category, String format, Object arg, int arg2)
+    {
+        if (isEnabled(category))
+        {
+            emit(category, format, arg, arg2);
+        }
+    }
+
+    public void log(Category category, String format, Object arg, Object arg2)
+    {
+        if (isEnabled(category))
+        {
+            emit(category, format, arg, arg2);
+        }
+    }
+
+    public void log(Category category, String format, Object arg, Object arg2, Object arg3)
+    {
+        if (isEnabled(category))
+        {
+            emit(category, format, arg, arg2, arg3);
+        }
+    }
+
+    /**
+     * Log with an argument that is only computed if the category is on and the message is not rate limited
+     */
+    public void log(Category category, String format, Supplier<?> arg)
+    {
+        if (isEnabled(category) && acquire(category))
+        {
+            log.info("[" + category.getConfigName() + "] " + format, arg.get());
+        }
+    }
+
+    /**
+     * Log an ID the first time it is seen since the set was cleared
+     */
+    public void logOnce(Category category, SeenIds seen, String format, int id)
+    {
+        if (isEnabled(category) && seen.add(id))
+        {
+            emit(category, format, id);
+        }
+    }
+
+    private void emit(Category category, String format, Object... args)
+    {
+        if (acquire(category))
+        {
+            log.info("[" + category.getConfigName() + "] " + format, args);
+        }
+    }
+
+    private boolean acquire(Category category)
+    {
+        int dropped = limits[category.ordinal()].acquire();
+        if (dropped > 0)
+        {
+            log.info("[{}] {} messages dropped by the rate limit", category.getConfigName(), dropped);
+        }
+        return dropped >= 0;
+    }
+
+    private static Category byName(String name)
+    {
+        for (Category category : Category.values())
+        {
+            if (category.getConfigName().equals(name))
+            {
+                return category;
+            }
+        }
+        return null;
+    }
+}
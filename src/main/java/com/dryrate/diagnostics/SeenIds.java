@@ -0,0 +1,73 @@
+package com.dryrate.diagnostics;
+
+import java.util.Arrays;
+
+/**
+ * Bounded set of int IDs, used to log something once per ID without keeping every ID ever seen.
+ * Open addressing over a fixed array, when it fills up it is cleared and IDs may be logged again.
+ */
+public final class SeenIds
+{
+    private static final int EMPTY = Integer.MIN_VALUE;
+
+    private final int[] slots;
+    private final int limit;
+    private int size;
+
+    /**
+     * @param capacity how many IDs are remembered before the set starts over
+     */
+    public SeenIds(int capacity)
+    {
+        this.limit = Math.max(4, capacity);
+        this.slots = new int[Integer.highestOneBit(limit * 2 - 1) << 1];
+        Arrays.fill(slots, EMPTY);
+    }
+
+    /**
+     * Add an ID
+     * @return true if it was not in the set yet
+     */
+    public boolean add(int id)
+    {
+        int mask = slots.length - 1;
+        int slot = mix(id) & mask;
+        while (slots[slot] != EMPTY)
+        {
+            if (slots[slot] == id)
+            {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        if (size >= limit)
+        {
+            clear();
+            slot = mix(id) & mask;
+        }
+        slots[slot] = id;
+        size++;
+        return true;
+    }
+
+    public void clear()
+    {
+        if (size > 0)
+        {
+            Arrays.fill(slots, EMPTY);
+            size = 0;
+        }
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    private static int mix(int id)
+    {
+        int h = id * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,100 @@
+package com.dryrate.history;
+
+import java.util.Arrays;
+
+/**
+ * Growable Fenwick (binary indexed) tree over int values
+ * Supports O(log n) appends, point updates and prefix sums
+ */
+public class FenwickTree
+{
+    private static final int INITIAL_CAPACITY = 64;
+
+    // 1-based tree, tree[0] is unused
+    private int[] tree;
+    private int size;
+
+    public FenwickTree()
+    {
+        this.tree = new int[INITIAL_CAPACITY + 1];
+        this.size = 0;
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * Append a value at index size()
+     */
+    public void append(int value)
+    {
+        if (size + 1 >= tree.length)
+        {
+            tree = Arrays.copyOf(tree, tree.length * 2);
+        }
+
+        int i = ++size;
+        // Node i covers (i - lowbit(i), i], so it holds the new value plus the already known part of that range
+        tree[i] = value + prefixSum(i - 1) - prefixSum(i - (i & -i));
+    }
+
+    /**
+     * Add delta to the value at the given 0-based index
+     */
+    public void add(int index, int delta)
+    {
+        if (index < 0 || index >= size)
+        {
+            throw new IndexOutOfBoundsException("Index " + index + " out of range for size " + size);
+        }
+
+        for (int i = index + 1; i <= size; i += i & -i)
+        {
+            tree[i] += delta;
+        }
+    }
+
+    /**
+     * Drop the last value, the nodes below it are unaffected
+     */
+    public void removeLast()
+    {
+        if (size > 0)
+        {
+            tree[size--] = 0;
+        }
+    }
+
+    /**
+     * Sum of the first count values
+     */
+    public int prefixSum(int count)
+    {
+        int sum = 0;
+        for (int i = Math.min(count, size); i > 0; i -= i & -i)
+        {
+            sum += tree[i];
+        }
+        return sum;
+    }
+
+    /**
+     * Sum of the values in [from, to) using 0-based indexes
+     */
+    public int rangeSum(int from, int to)
+    {
+        if (to <= from)
+        {
+            return 0;
+        }
+        return prefixSum(to) - prefixSum(from);
+    }
+
+    public void clear()
+    {
+        Arrays.fill(tree, 0);
+        size = 0;
+    }
+}
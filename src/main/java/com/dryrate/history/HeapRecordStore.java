@@ -0,0 +1,54 @@
+package com.dryrate.history;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Records held in a list, saved along with the rest of the history
+ */
+class HeapRecordStore implements RecordStore
+{
+    private final List<RaidRecord> records = new ArrayList<>();
+
+    @Override
+    public int size()
+    {
+        return records.size();
+    }
+
+    @Override
+    public RaidRecord get(int index)
+    {
+        return records.get(index);
+    }
+
+    @Override
+    public long timestamp(int index)
+    {
+        return records.get(index).getTimestamp();
+    }
+
+    @Override
+    public void append(RaidRecord record)
+    {
+        records.add(record);
+    }
+
+    @Override
+    public void set(int index, RaidRecord record)
+    {
+        records.set(index, record);
+    }
+
+    @Override
+    public void truncate(int size)
+    {
+        records.subList(size, records.size()).clear();
+    }
+
+    @Override
+    public void removeFirst(int count)
+    {
+        records.subList(0, Math.min(count, records.size())).clear();
+    }
+}
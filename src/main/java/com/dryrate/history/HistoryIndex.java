@@ -0,0 +1,350 @@
+package com.dryrate.history;
+
+import com.dryrate.RaidMode;
+import com.dryrate.UniqueItem;
+
+import java.util.BitSet;
+
+/**
+ * Bitmaps over a history's raids, one per outcome, mode, team size, raid level band and unique item
+ * plus one of manual streak resets.
+ * Kept in step with the records on every append and edit, so a query is answered by intersecting a few bitmaps
+ * instead of reading every record.
+ */
+class HistoryIndex
+{
+    // Team sizes 1-8, 0 holds raids where the size was unknown and 8 larger teams
+    private static final int TEAM_SIZES = 9;
+
+    // Lowest raid level of each band, the first band also holds raids without a level
+    private static final int[] RAID_LEVEL_BANDS = {0, 150, 300, 400, 500};
+
+    private static final RaidOutcome[] OUTCOMES = RaidOutcome.values();
+    private static final RaidMode[] MODES = RaidMode.values();
+
+    // Indexed attributes of a raid packed into an int: outcome, mode and item are stored as ordinal + 1, 0 for none
+    private static final int OUTCOME_SHIFT = 0;
+    private static final int MODE_SHIFT = 4;
+    private static final int TEAM_SIZE_SHIFT = 8;
+    private static final int ITEM_SHIFT = 12;
+    private static final int STREAK_RESET = 1 << 20;
+    private static final int RAID_LEVEL_SHIFT = 21;
+
+    private final BitSet[] outcomes = bitmaps(OUTCOMES.length);
+    private final BitSet[] modes = bitmaps(MODES.length);
+    private final BitSet[] teamSizes = bitmaps(TEAM_SIZES);
+    private final BitSet[] items = bitmaps(UniqueItem.values().length);
+    private final BitSet[] raidLevels = bitmaps(RAID_LEVEL_BANDS.length);
+    private final BitSet streakResets = new BitSet();
+
+    /**
+     * Pack the indexed attributes of a raid
+     */
+    static int attributes(RaidRecord record)
+    {
+        return attributes(record.getOutcome() != null ? record.getOutcome().ordinal() + 1 : 0,
+            record.getMode() != null ? record.getMode().ordinal() + 1 : 0,
+            record.getTeamSize(),
+            record.getItem() != null ? record.getItem().ordinal() + 1 : 0,
+            record.getInvocation(),
+            record.isStreakReset());
+    }
+
+    /**
+     * Pack indexed attributes read straight from storage
+     * @param outcome outcome ordinal + 1, 0 for none
+     * @param mode mode ordinal + 1, 0 for none
+     * @param item unique item ordinal + 1, 0 for none
+     * @param raidLevel ToA raid level, 0 for none
+     */
+    static int attributes(int outcome, int mode, int teamSize, int item, int raidLevel, boolean streakReset)
+    {
+        int clampedTeam = Math.max(0, Math.min(TEAM_SIZES - 1, teamSize));
+        return outcome << OUTCOME_SHIFT | mode << MODE_SHIFT | clampedTeam << TEAM_SIZE_SHIFT | item << ITEM_SHIFT
+            | (streakReset ? STREAK_RESET : 0) | raidLevelBand(raidLevel) << RAID_LEVEL_SHIFT;
+    }
+
+    /**
+     * Band of a raid level, the last band whose lowest level it reaches
+     */
+    static int raidLevelBand(int raidLevel)
+    {
+        int band = 0;
+        while (band + 1 < RAID_LEVEL_BANDS.length && raidLevel >= RAID_LEVEL_BANDS[band + 1])
+        {
+            band++;
+        }
+        return band;
+    }
+
+    /**
+     * Outcome of packed attributes, null for none
+     */
+    static RaidOutcome outcome(int attributes)
+    {
+        int outcome = (attributes >>> OUTCOME_SHIFT) & 0xF;
+        return outcome > 0 ? OUTCOMES[outcome - 1] : null;
+    }
+
+    /**
+     * Index a raid at the given position from its packed attributes
+     */
+    void add(int index, int attributes)
+    {
+        int outcome = (attributes >>> OUTCOME_SHIFT) & 0xF;
+        if (outcome > 0)
+        {
+            outcomes[outcome - 1].set(index);
+        }
+        int mode = (attributes >>> MODE_SHIFT) & 0xF;
+        if (mode > 0)
+        {
+            modes[mode - 1].set(index);
+        }
+        teamSizes[(attributes >>> TEAM_SIZE_SHIFT) & 0xF].set(index);
+        int item = (attributes >>> ITEM_SHIFT) & 0xFF;
+        if (item > 0)
+        {
+            items[item - 1].set(index);
+        }
+        streakResets.set(index, (attributes & STREAK_RESET) != 0);
+        raidLevels[(attributes >>> RAID_LEVEL_SHIFT) & 0x7].set(index);
+    }
+
+    /**
+     * Drop a raid from the index, used when the last raid is removed
+     */
+    void remove(int index, RaidRecord record)
+    {
+        if (record.getOutcome() != null)
+        {
+            outcomes[record.getOutcome().ordinal()].clear(index);
+        }
+        if (record.getMode() != null)
+        {
+            modes[record.getMode().ordinal()].clear(index);
+        }
+        teamSizes[teamSize(record)].clear(index);
+        if (record.getItem() != null)
+        {
+            items[record.getItem().ordinal()].clear(index);
+        }
+        streakResets.clear(index);
+        raidLevels[raidLevelBand(record.getInvocation())].clear(index);
+    }
+
+    void changeOutcome(int index, RaidOutcome previous, RaidOutcome outcome)
+    {
+        if (previous != null)
+        {
+            outcomes[previous.ordinal()].clear(index);
+        }
+        outcomes[outcome.ordinal()].set(index);
+    }
+
+    void changeItem(int index, UniqueItem previous, UniqueItem item)
+    {
+        if (previous != null)
+        {
+            items[previous.ordinal()].clear(index);
+        }
+        if (item != null)
+        {
+            items[item.ordinal()].set(index);
+        }
+    }
+
+    void setStreakReset(int index, boolean streakReset)
+    {
+        streakResets.set(index, streakReset);
+    }
+
+    /**
+     * Narrow rows down to the raids whose outcome, mode, team size and item match the query
+     */
+    void filter(BitSet rows, HistoryQuery query)
+    {
+        if (query.filtersOutcome())
+        {
+            BitSet accepted = new BitSet();
+            for (RaidOutcome outcome : OUTCOMES)
+            {
+                if (query.accepts(outcome))
+                {
+                    accepted.or(outcomes[outcome.ordinal()]);
+                }
+            }
+            rows.and(accepted);
+        }
+
+        if (query.getMode() != null)
+        {
+            rows.and(modes[query.getMode().ordinal()]);
+        }
+
+        int minTeam = Math.max(0, Math.min(TEAM_SIZES - 1, query.getMinTeamSize()));
+        int maxTeam = Math.min(TEAM_SIZES - 1, query.getMaxTeamSize());
+        if (minTeam > 0 || maxTeam < TEAM_SIZES - 1)
+        {
+            BitSet accepted = new BitSet();
+            for (int size = minTeam; size <= maxTeam; size++)
+            {
+                accepted.or(teamSizes[size]);
+            }
+            rows.and(accepted);
+        }
+
+        if (query.getItem() != null)
+        {
+            rows.and(items[query.getItem().ordinal()]);
+        }
+
+        if (query.filtersRaidLevel())
+        {
+            BitSet accepted = new BitSet();
+            for (int band = 0; band < RAID_LEVEL_BANDS.length; band++)
+            {
+                if (bandLow(band) <= query.getMaxRaidLevel() && bandHigh(band) >= query.getMinRaidLevel())
+                {
+                    accepted.or(raidLevels[band]);
+                }
+            }
+            rows.and(accepted);
+        }
+    }
+
+    /**
+     * Raids in the bands a query's raid level range only partly covers, their levels have to be read to be sure
+     */
+    BitSet partialRaidLevels(HistoryQuery query)
+    {
+        BitSet partial = new BitSet();
+        if (!query.filtersRaidLevel())
+        {
+            return partial;
+        }
+        for (int band = 0; band < RAID_LEVEL_BANDS.length; band++)
+        {
+            int low = bandLow(band);
+            int high = bandHigh(band);
+            boolean overlaps = low <= query.getMaxRaidLevel() && high >= query.getMinRaidLevel();
+            boolean covered = low >= query.getMinRaidLevel() && high <= query.getMaxRaidLevel();
+            if (overlaps && !covered)
+            {
+                partial.or(raidLevels[band]);
+            }
+        }
+        return partial;
+    }
+
+    /**
+     * Drops that ended a dry streak of at least minStreak raids. Walks only the raids that end a streak,
+     * the first streak of the history continues the given streak of the raids before it.
+     */
+    BitSet streakEnds(int minStreak, boolean teamDropResets, int baselineStreak)
+    {
+        BitSet drops = (BitSet) outcomes[RaidOutcome.PERSONAL_UNIQUE.ordinal()].clone();
+        if (teamDropResets)
+        {
+            drops.or(outcomes[RaidOutcome.TEAM_UNIQUE.ordinal()]);
+        }
+        BitSet ends = (BitSet) drops.clone();
+        ends.or(streakResets);
+
+        BitSet result = new BitSet();
+        int previous = -1;
+        for (int i = ends.nextSetBit(0); i >= 0; i = ends.nextSetBit(i + 1))
+        {
+            int streak = i - previous + (previous < 0 ? baselineStreak : 0);
+            if (streak >= minStreak && drops.get(i))
+            {
+                result.set(i);
+            }
+            previous = i;
+        }
+        return result;
+    }
+
+    /**
+     * Dry streak counted at a raid, including it: the raids since the last drop or reset before it.
+     * Found with a backwards search of the bitmaps, the first streak of the history continues the given streak.
+     */
+    int streakAt(int index, boolean teamDropResets, int baselineStreak)
+    {
+        int previous = Math.max(outcomes[RaidOutcome.PERSONAL_UNIQUE.ordinal()].previousSetBit(index - 1),
+            streakResets.previousSetBit(index - 1));
+        if (teamDropResets)
+        {
+            previous = Math.max(previous, outcomes[RaidOutcome.TEAM_UNIQUE.ordinal()].previousSetBit(index - 1));
+        }
+        return index - previous + (previous < 0 ? baselineStreak : 0);
+    }
+
+    /**
+     * Copy the drop, item and manual reset bitmaps of the first size raids
+     * @param lastPersonalUniqueTime time of the last personal unique among them, -1 if there was none
+     */
+    HistorySnapshot snapshot(int size, int modCount, long lastPersonalUniqueTime)
+    {
+        BitSet[] itemRows = new BitSet[items.length];
+        for (int i = 0; i < items.length; i++)
+        {
+            itemRows[i] = items[i].get(0, size);
+        }
+        return new HistorySnapshot(size, modCount, outcomes[RaidOutcome.PERSONAL_UNIQUE.ordinal()].get(0, size),
+            outcomes[RaidOutcome.TEAM_UNIQUE.ordinal()].get(0, size), streakResets.get(0, size), itemRows,
+            lastPersonalUniqueTime);
+    }
+
+    /**
+     * Last personal unique before the given index
+     * @return -1 if there was none
+     */
+    int lastPersonalUnique(int before)
+    {
+        return outcomes[RaidOutcome.PERSONAL_UNIQUE.ordinal()].previousSetBit(before - 1);
+    }
+
+    void clear()
+    {
+        clear(outcomes);
+        clear(modes);
+        clear(teamSizes);
+        clear(items);
+        clear(raidLevels);
+        streakResets.clear();
+    }
+
+    private static int bandLow(int band)
+    {
+        return band == 0 ? Integer.MIN_VALUE : RAID_LEVEL_BANDS[band];
+    }
+
+    private static int bandHigh(int band)
+    {
+        return band + 1 < RAID_LEVEL_BANDS.length ? RAID_LEVEL_BANDS[band + 1] - 1 : Integer.MAX_VALUE;
+    }
+
+    private static int teamSize(RaidRecord record)
+    {
+        return Math.max(0, Math.min(TEAM_SIZES - 1, record.getTeamSize()));
+    }
+
+    private static BitSet[] bitmaps(int count)
+    {
+        BitSet[] bitmaps = new BitSet[count];
+        for (int i = 0; i < count; i++)
+        {
+            bitmaps[i] = new BitSet();
+        }
+        return bitmaps;
+    }
+
+    private static void clear(BitSet[] bitmaps)
+    {
+        for (BitSet bitmap : bitmaps)
+        {
+            bitmap.clear();
+        }
+    }
+}
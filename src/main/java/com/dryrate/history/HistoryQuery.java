@@ -0,0 +1,185 @@
+package com.dryrate.history;
+
+import com.dryrate.RaidMode;
+import com.dryrate.UniqueItem;
+
+/**
+ * Filter over individual recorded raids, answered from the history's indexes
+ * The time range is [fromMillis, toMillis), other bounds are inclusive
+ */
+public final class HistoryQuery
+{
+    public static final HistoryQuery ALL = new HistoryQuery(0, Long.MAX_VALUE, 0, null, 0, Integer.MAX_VALUE, null, 0,
+        0, Integer.MAX_VALUE);
+
+    private final long fromMillis;
+    private final long toMillis;
+    // Bit per RaidOutcome ordinal, 0 accepts every outcome
+    private final int outcomes;
+    private final RaidMode mode;
+    private final int minTeamSize;
+    private final int maxTeamSize;
+    private final UniqueItem item;
+    private final int minStreak;
+    private final int minRaidLevel;
+    private final int maxRaidLevel;
+
+    private HistoryQuery(long fromMillis, long toMillis, int outcomes, RaidMode mode, int minTeamSize, int maxTeamSize,
+        UniqueItem item, int minStreak, int minRaidLevel, int maxRaidLevel)
+    {
+        this.fromMillis = fromMillis;
+        this.toMillis = toMillis;
+        this.outcomes = outcomes;
+        this.mode = mode;
+        this.minTeamSize = minTeamSize;
+        this.maxTeamSize = maxTeamSize;
+        this.item = item;
+        this.minStreak = minStreak;
+        this.minRaidLevel = minRaidLevel;
+        this.maxRaidLevel = maxRaidLevel;
+    }
+
+    public HistoryQuery between(long fromMillis, long toMillis)
+    {
+        return new HistoryQuery(fromMillis, toMillis, outcomes, mode, minTeamSize, maxTeamSize, item, minStreak,
+            minRaidLevel, maxRaidLevel);
+    }
+
+    /**
+     * Only raids with one of the given outcomes, none accepts every outcome
+     */
+    public HistoryQuery withOutcome(RaidOutcome... accepted)
+    {
+        int mask = 0;
+        for (RaidOutcome outcome : accepted)
+        {
+            mask |= 1 << outcome.ordinal();
+        }
+        return new HistoryQuery(fromMillis, toMillis, mask, mode, minTeamSize, maxTeamSize, item, minStreak,
+            minRaidLevel, maxRaidLevel);
+    }
+
+    public HistoryQuery withMode(RaidMode mode)
+    {
+        return new HistoryQuery(fromMillis, toMillis, outcomes, mode, minTeamSize, maxTeamSize, item, minStreak,
+            minRaidLevel, maxRaidLevel);
+    }
+
+    public HistoryQuery withTeamSize(int min, int max)
+    {
+        return new HistoryQuery(fromMillis, toMillis, outcomes, mode, min, max, item, minStreak,
+            minRaidLevel, maxRaidLevel);
+    }
+
+    public HistoryQuery withItem(UniqueItem item)
+    {
+        return new HistoryQuery(fromMillis, toMillis, outcomes, mode, minTeamSize, maxTeamSize, item, minStreak,
+            minRaidLevel, maxRaidLevel);
+    }
+
+    /**
+     * Only drops that ended a dry streak of at least min raids
+     */
+    public HistoryQuery withMinStreak(int min)
+    {
+        return new HistoryQuery(fromMillis, toMillis, outcomes, mode, minTeamSize, maxTeamSize, item, min,
+            minRaidLevel, maxRaidLevel);
+    }
+
+    /**
+     * Only ToA raids with a raid level in the range, such as 400 and up
+     */
+    public HistoryQuery withRaidLevel(int min, int max)
+    {
+        return new HistoryQuery(fromMillis, toMillis, outcomes, mode, minTeamSize, maxTeamSize, item, minStreak,
+            min, max);
+    }
+
+    public long getFromMillis()
+    {
+        return fromMillis;
+    }
+
+    public long getToMillis()
+    {
+        return toMillis;
+    }
+
+    /**
+     * Whether raids with the outcome are accepted
+     */
+    public boolean accepts(RaidOutcome outcome)
+    {
+        return outcomes == 0 || (outcomes & 1 << outcome.ordinal()) != 0;
+    }
+
+    /**
+     * Whether the query narrows the outcome at all
+     */
+    public boolean filtersOutcome()
+    {
+        return outcomes != 0 && outcomes != (1 << RaidOutcome.values().length) - 1;
+    }
+
+    /**
+     * Required mode, or null to accept every mode
+     */
+    public RaidMode getMode()
+    {
+        return mode;
+    }
+
+    public int getMinTeamSize()
+    {
+        return minTeamSize;
+    }
+
+    public int getMaxTeamSize()
+    {
+        return maxTeamSize;
+    }
+
+    /**
+     * Required unique item, or null to accept any raid
+     */
+    public UniqueItem getItem()
+    {
+        return item;
+    }
+
+    /**
+     * Minimum length of the dry streak a drop ended, 0 when streaks are not filtered
+     */
+    public int getMinStreak()
+    {
+        return minStreak;
+    }
+
+    public int getMinRaidLevel()
+    {
+        return minRaidLevel;
+    }
+
+    public int getMaxRaidLevel()
+    {
+        return maxRaidLevel;
+    }
+
+    /**
+     * Whether the query narrows the raid level at all
+     */
+    public boolean filtersRaidLevel()
+    {
+        return minRaidLevel > 0 || maxRaidLevel != Integer.MAX_VALUE;
+    }
+
+    /**
+     * Whether the query accepts every raid
+     */
+    public boolean isAll()
+    {
+        return fromMillis <= 0 && toMillis == Long.MAX_VALUE && !filtersOutcome() && mode == null
+            && minTeamSize <= 0 && maxTeamSize == Integer.MAX_VALUE && item == null && minStreak <= 0
+            && !filtersRaidLevel();
+    }
+}
@@ -0,0 +1,78 @@
+package com.dryrate.history;
+
+import com.dryrate.UniqueItem;
+
+import java.util.BitSet;
+
+/**
+ * Copy of the bitmaps a replay of a history reads: its drops, items and manual streak resets.
+ * Taking one costs a few array copies instead of reading every record, and it can be read on any thread.
+ */
+public final class HistorySnapshot
+{
+    private final int size;
+    private final int modCount;
+    private final BitSet personalUniques;
+    private final BitSet teamUniques;
+    private final BitSet streakResets;
+    // Indexed by UniqueItem ordinal
+    private final BitSet[] items;
+    private final long lastPersonalUniqueTime;
+
+    HistorySnapshot(int size, int modCount, BitSet personalUniques, BitSet teamUniques, BitSet streakResets,
+        BitSet[] items, long lastPersonalUniqueTime)
+    {
+        this.size = size;
+        this.modCount = modCount;
+        this.personalUniques = personalUniques;
+        this.teamUniques = teamUniques;
+        this.streakResets = streakResets;
+        this.items = items;
+        this.lastPersonalUniqueTime = lastPersonalUniqueTime;
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * The history's change count when the snapshot was taken
+     */
+    public int getModCount()
+    {
+        return modCount;
+    }
+
+    public boolean isPersonalUnique(int index)
+    {
+        return personalUniques.get(index);
+    }
+
+    public boolean isTeamUnique(int index)
+    {
+        return teamUniques.get(index);
+    }
+
+    public boolean isStreakReset(int index)
+    {
+        return streakResets.get(index);
+    }
+
+    /**
+     * First raid from the given index on that got the item
+     * @return -1 if none did
+     */
+    public int nextItemRow(UniqueItem item, int from)
+    {
+        return items[item.ordinal()].nextSetBit(from);
+    }
+
+    /**
+     * Time of the last personal unique, -1 if there was none
+     */
+    public long getLastPersonalUniqueTime()
+    {
+        return lastPersonalUniqueTime;
+    }
+}
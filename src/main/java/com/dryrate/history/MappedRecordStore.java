@@ -0,0 +1,524 @@
+package com.dryrate.history;
+
+import com.dryrate.RaidMode;
+import com.dryrate.RaidType;
+import com.dryrate.UniqueItem;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Records stored as fixed-width binary rows in a memory-mapped file.
+ * Appends and edits are plain memory writes and reads decode a single row on demand,
+ * so a long history costs neither heap nor load time beyond its indexes.
+ * One client owns a file at a time, others read a snapshot of it.
+ * Edits rewrite a row in place, so the row's previous image is first kept in a small side file:
+ * a row torn by a crash during an edit falls back to its old value instead of losing the raid.
+ */
+@Slf4j
+public class MappedRecordStore implements RecordStore, Closeable
+{
+    private static final int MAGIC = 0x44525248; // "DRRH"
+    private static final int FORMAT_VERSION = 1;
+
+    // Header: magic, format version, record count, reserved
+    private static final int HEADER_SIZE = 16;
+    private static final int COUNT_OFFSET = 8;
+
+    // Row: timestamp, version, outcome, item, team size, mode, invocation, flags, reserved, ID, CRC32 of the row
+    private static final int RECORD_SIZE = 48;
+    private static final int TIMESTAMP = 0;
+    private static final int VERSION = 8;
+    private static final int OUTCOME = 12;
+    private static final int ITEM = 13;
+    private static final int TEAM_SIZE = 14;
+    private static final int MODE = 15;
+    private static final int INVOCATION = 16;
+    private static final int FLAGS = 18;
+    private static final int ID = 20;
+    private static final int ID_SIZE = 24;
+    private static final int CHECKSUM = 44;
+
+    // Side file: index + 1 of the row being edited (0 for none), then that row as it was before the edit
+    private static final int EDIT_INDEX = 0;
+    private static final int EDIT_ROW = 4;
+    private static final int EDIT_SIZE = EDIT_ROW + RECORD_SIZE;
+
+    private static final byte FLAG_STREAK_RESET = 1;
+    private static final int MIN_CAPACITY = 1024;
+
+    private static final RaidOutcome[] OUTCOMES = RaidOutcome.values();
+    private static final RaidMode[] MODES = RaidMode.values();
+
+    private final Path file;
+    private final UniqueItem[] items;
+    private final FileChannel channel;
+    private final FileChannel editChannel;
+    private final FileChannel lockChannel;
+    private final FileLock lock;
+    private final CRC32 crc = new CRC32();
+
+    // Written only by the owning thread. A grown buffer is published before the count that needs it,
+    // so a reader that checked an index against the count reads the row from a buffer that holds it.
+    private volatile MappedByteBuffer buffer;
+    private volatile int capacity;
+    private volatile int count;
+    private MappedByteBuffer edit;
+
+    private MappedRecordStore(Path file, RaidType raidType, FileChannel channel, FileChannel editChannel,
+        FileChannel lockChannel, FileLock lock)
+    {
+        this.file = file;
+        this.items = UniqueItem.forRaid(raidType);
+        this.channel = channel;
+        this.editChannel = editChannel;
+        this.lockChannel = lockChannel;
+        this.lock = lock;
+    }
+
+    /**
+     * Open or create a raid's history file and take ownership of it
+     * @return null if another client owns the file
+     */
+    public static MappedRecordStore open(Path file, RaidType raidType) throws IOException
+    {
+        Files.createDirectories(file.getParent());
+        FileChannel lockChannel = FileChannel.open(lockPath(file), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        FileLock lock;
+        try
+        {
+            lock = lockChannel.tryLock();
+        }
+        catch (OverlappingFileLockException e)
+        {
+            lock = null;
+        }
+        if (lock == null)
+        {
+            lockChannel.close();
+            return null;
+        }
+
+        FileChannel channel = null;
+        FileChannel editChannel = null;
+        try
+        {
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            editChannel = FileChannel.open(editPath(file), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            MappedRecordStore store = new MappedRecordStore(file, raidType, channel, editChannel, lockChannel, lock);
+            store.load();
+            return store;
+        }
+        catch (IOException | RuntimeException e)
+        {
+            if (channel != null)
+            {
+                channel.close();
+            }
+            if (editChannel != null)
+            {
+                editChannel.close();
+            }
+            lock.release();
+            lockChannel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Read every intact record of a history file owned by another client
+     */
+    public static List<RaidRecord> readSnapshot(Path file, RaidType raidType) throws IOException
+    {
+        List<RaidRecord> records = new ArrayList<>();
+        if (!Files.exists(file))
+        {
+            return records;
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ))
+        {
+            if (channel.size() < HEADER_SIZE)
+            {
+                return records;
+            }
+
+            ByteBuffer snapshot = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            int stored = (int) Math.min(snapshot.getInt(COUNT_OFFSET), rowsIn(channel.size()));
+            ByteBuffer edit = readEdit(editPath(file));
+            CRC32 crc = new CRC32();
+            UniqueItem[] items = UniqueItem.forRaid(raidType);
+            for (int i = 0; i < stored; i++)
+            {
+                if (isIntact(snapshot, offset(i), crc))
+                {
+                    records.add(decode(snapshot, offset(i), items));
+                }
+                else if (isPreviousImage(edit, i, crc))
+                {
+                    records.add(decode(edit, EDIT_ROW, items));
+                }
+            }
+        }
+        return records;
+    }
+
+    private void load() throws IOException
+    {
+        edit = editChannel.map(FileChannel.MapMode.READ_WRITE, 0, EDIT_SIZE);
+        long size = channel.size();
+        if (size < HEADER_SIZE)
+        {
+            map(MIN_CAPACITY);
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, FORMAT_VERSION);
+            buffer.putInt(COUNT_OFFSET, 0);
+            edit.putInt(EDIT_INDEX, 0);
+            return;
+        }
+
+        int rows = rowsIn(size);
+        map(Math.max(MIN_CAPACITY, rows));
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != FORMAT_VERSION)
+        {
+            throw new IOException("Not a dry rate history file: " + file);
+        }
+
+        int stored = Math.min(buffer.getInt(COUNT_OFFSET), rows);
+        count = dropTornRows(stored);
+        if (count < stored)
+        {
+            log.warn("Recovered {} by dropping {} torn records", file, stored - count);
+            buffer.putInt(COUNT_OFFSET, count);
+        }
+        // Restored rows are written through before the image they came from is let go
+        buffer.force();
+        edit.putInt(EDIT_INDEX, 0);
+    }
+
+    @Override
+    public int size()
+    {
+        return count;
+    }
+
+    @Override
+    public RaidRecord get(int index)
+    {
+        checkIndex(index);
+        return decode(buffer, offset(index), items);
+    }
+
+    @Override
+    public long timestamp(int index)
+    {
+        checkIndex(index);
+        return buffer.getLong(offset(index) + TIMESTAMP);
+    }
+
+    @Override
+    public int attributes(int index)
+    {
+        checkIndex(index);
+        ByteBuffer row = buffer;
+        int offset = offset(index);
+        int item = row.get(offset + ITEM);
+        return HistoryIndex.attributes(row.get(offset + OUTCOME) + 1, row.get(offset + MODE), row.get(offset + TEAM_SIZE),
+            item > 0 && item <= items.length ? items[item - 1].ordinal() + 1 : 0, row.getShort(offset + INVOCATION),
+            (row.get(offset + FLAGS) & FLAG_STREAK_RESET) != 0);
+    }
+
+    @Override
+    public void append(RaidRecord record)
+    {
+        if (count == capacity)
+        {
+            try
+            {
+                map(capacity * 2);
+            }
+            catch (IOException e)
+            {
+                throw new UncheckedIOException("Could not grow " + file, e);
+            }
+        }
+        int appended = count + 1;
+        encode(offset(appended - 1), record);
+        buffer.putInt(COUNT_OFFSET, appended);
+        count = appended;
+    }
+
+    @Override
+    public void set(int index, RaidRecord record)
+    {
+        checkIndex(index);
+        keepPreviousImage(index);
+        encode(offset(index), record);
+    }
+
+    @Override
+    public void truncate(int size)
+    {
+        int truncated = Math.max(0, Math.min(count, size));
+        count = truncated;
+        buffer.putInt(COUNT_OFFSET, truncated);
+        // A raid appended later in the same slot must not fall back to the image of the removed one
+        edit.putInt(EDIT_INDEX, 0);
+    }
+
+    @Override
+    public void removeFirst(int removed)
+    {
+        removed = Math.max(0, Math.min(count, removed));
+        if (removed == 0)
+        {
+            return;
+        }
+
+        ByteBuffer rest = buffer.duplicate();
+        rest.position(offset(removed)).limit(offset(count));
+        ByteBuffer front = buffer.duplicate();
+        front.position(offset(0));
+        front.put(rest);
+        // The kept image belongs to a row that has moved
+        edit.putInt(EDIT_INDEX, 0);
+
+        int remaining = count - removed;
+        count = remaining;
+        buffer.putInt(COUNT_OFFSET, remaining);
+    }
+
+    @Override
+    public boolean isPersistent()
+    {
+        return true;
+    }
+
+    public Path getFile()
+    {
+        return file;
+    }
+
+    /**
+     * Write changed rows through to the file
+     */
+    public void flush()
+    {
+        buffer.force();
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        try
+        {
+            flush();
+            channel.close();
+            editChannel.close();
+        }
+        finally
+        {
+            lock.release();
+            lockChannel.close();
+        }
+    }
+
+    /**
+     * Keep a row as it is in the side file and write it through, before the row is rewritten in place
+     */
+    private void keepPreviousImage(int index)
+    {
+        ByteBuffer row = buffer.duplicate();
+        row.position(offset(index)).limit(offset(index) + RECORD_SIZE);
+        ByteBuffer target = edit.duplicate();
+        target.position(EDIT_ROW);
+        target.put(row);
+        edit.putInt(EDIT_INDEX, index + 1);
+        edit.force();
+    }
+
+    private void map(int rows) throws IOException
+    {
+        capacity = rows;
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) rows * RECORD_SIZE);
+    }
+
+    private void encode(int offset, RaidRecord record)
+    {
+        MappedByteBuffer row = buffer;
+        row.putLong(offset + TIMESTAMP, record.getTimestamp());
+        row.putInt(offset + VERSION, record.getVersion());
+        row.put(offset + OUTCOME, (byte) (record.getOutcome() != null ? record.getOutcome().ordinal() : 0));
+        row.put(offset + ITEM, (byte) (record.getItem() != null ? record.getItem().getIndex() + 1 : 0));
+        row.put(offset + TEAM_SIZE, (byte) record.getTeamSize());
+        row.put(offset + MODE, (byte) (record.getMode() != null ? record.getMode().ordinal() + 1 : 0));
+        row.putShort(offset + INVOCATION, (short) record.getInvocation());
+        row.put(offset + FLAGS, record.isStreakReset() ? FLAG_STREAK_RESET : 0);
+        row.put(offset + FLAGS + 1, (byte) 0);
+
+        byte[] id = record.getId() != null ? record.getId().getBytes(StandardCharsets.US_ASCII) : new byte[0];
+        if (id.length > ID_SIZE)
+        {
+            throw new IllegalArgumentException("Record ID too long: " + record.getId());
+        }
+        for (int i = 0; i < ID_SIZE; i++)
+        {
+            row.put(offset + ID + i, i < id.length ? id[i] : 0);
+        }
+
+        row.putInt(offset + CHECKSUM, checksum(row, offset, crc));
+    }
+
+    private static RaidRecord decode(ByteBuffer row, int offset, UniqueItem[] items)
+    {
+        RaidRecord record = new RaidRecord();
+        record.setTimestamp(row.getLong(offset + TIMESTAMP));
+        record.setVersion(row.getInt(offset + VERSION));
+        record.setOutcome(OUTCOMES[row.get(offset + OUTCOME)]);
+
+        int item = row.get(offset + ITEM);
+        record.setItem(item > 0 && item <= items.length ? items[item - 1] : null);
+        record.setTeamSize(row.get(offset + TEAM_SIZE));
+
+        int mode = row.get(offset + MODE);
+        record.setMode(mode > 0 ? MODES[mode - 1] : null);
+        record.setInvocation(row.getShort(offset + INVOCATION));
+        record.setStreakReset((row.get(offset + FLAGS) & FLAG_STREAK_RESET) != 0);
+
+        int length = 0;
+        while (length < ID_SIZE && row.get(offset + ID + length) != 0)
+        {
+            length++;
+        }
+        if (length > 0)
+        {
+            byte[] id = new byte[length];
+            for (int i = 0; i < length; i++)
+            {
+                id[i] = row.get(offset + ID + i);
+            }
+            record.setId(new String(id, StandardCharsets.US_ASCII));
+        }
+        return record;
+    }
+
+    /**
+     * Drop the rows whose checksum fails, moving the intact rows after them forward.
+     * A row torn by an edit is put back as it was before the edit, so only a row torn some other way is lost,
+     * and not every raid after it.
+     * @return the number of intact rows
+     */
+    private int dropTornRows(int stored)
+    {
+        int kept = 0;
+        for (int i = 0; i < stored; i++)
+        {
+            if (!isIntact(buffer, offset(i), crc))
+            {
+                if (!isPreviousImage(edit, i, crc))
+                {
+                    continue;
+                }
+                log.warn("Restored record {} of {} as it was before an interrupted edit", i, file);
+                ByteBuffer previous = edit.duplicate();
+                previous.position(EDIT_ROW).limit(EDIT_ROW + RECORD_SIZE);
+                ByteBuffer target = buffer.duplicate();
+                target.position(offset(i));
+                target.put(previous);
+            }
+            if (kept < i)
+            {
+                ByteBuffer row = buffer.duplicate();
+                row.position(offset(i)).limit(offset(i) + RECORD_SIZE);
+                ByteBuffer target = buffer.duplicate();
+                target.position(offset(kept));
+                target.put(row);
+            }
+            kept++;
+        }
+        return kept;
+    }
+
+    /**
+     * Whether the side file holds an intact image of the given row from before an edit
+     */
+    private static boolean isPreviousImage(ByteBuffer edit, int index, CRC32 crc)
+    {
+        return edit != null && edit.getInt(EDIT_INDEX) == index + 1 && isIntact(edit, EDIT_ROW, crc);
+    }
+
+    /**
+     * The side file of a history file owned by another client, null if there is none
+     */
+    private static ByteBuffer readEdit(Path editFile) throws IOException
+    {
+        if (!Files.exists(editFile))
+        {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(editFile, StandardOpenOption.READ))
+        {
+            return channel.size() < EDIT_SIZE ? null : channel.map(FileChannel.MapMode.READ_ONLY, 0, EDIT_SIZE);
+        }
+    }
+
+    private static boolean isIntact(ByteBuffer rows, int offset, CRC32 crc)
+    {
+        return rows.getInt(offset + CHECKSUM) == checksum(rows, offset, crc);
+    }
+
+    private static int checksum(ByteBuffer rows, int offset, CRC32 crc)
+    {
+        ByteBuffer row = rows.duplicate();
+        row.position(offset).limit(offset + CHECKSUM);
+        crc.reset();
+        crc.update(row);
+        return (int) crc.getValue();
+    }
+
+    private void checkIndex(int index)
+    {
+        int size = count;
+        if (index < 0 || index >= size)
+        {
+            throw new IndexOutOfBoundsException("Index " + index + ", size " + size);
+        }
+    }
+
+    private static int offset(int index)
+    {
+        return HEADER_SIZE + index * RECORD_SIZE;
+    }
+
+    private static int rowsIn(long size)
+    {
+        return (int) Math.max(0, (size - HEADER_SIZE) / RECORD_SIZE);
+    }
+
+    private static Path lockPath(Path file)
+    {
+        return file.resolveSibling(file.getFileName() + ".lock");
+    }
+
+    /**
+     * Side file holding the previous image of the row being edited
+     */
+    public static Path editPath(Path file)
+    {
+        return file.resolveSibling(file.getFileName() + ".edit");
+    }
+}
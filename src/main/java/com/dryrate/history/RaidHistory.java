@@ -0,0 +1,514 @@
+package com.dryrate.history;
+
+import com.dryrate.UniqueItem;
+
+import java.util.AbstractList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Per-raid history of individual completions
+ * Keeps Fenwick tree indexes over the outcomes so range questions
+ * (by date or by raid number) are answered in O(log n) instead of scanning the list
+ * Timestamps are kept non-decreasing in raid order so date ranges can be binary searched,
+ * and bitmaps per attribute answer filters over individual raids
+ */
+public class RaidHistory
+{
+    private final RecordStore records;
+
+    private final FenwickTree personalUniques = new FenwickTree();
+    private final FenwickTree teamUniques = new FenwickTree();
+
+    // Bitmaps per outcome, mode, team size and item for filtered queries
+    private final HistoryIndex index = new HistoryIndex();
+
+    // IDs of undone records, so merging with another client's copy does not bring them back
+    private final Set<String> removedIds = new HashSet<>();
+
+    // Bumped on every change to the records, so work based on an earlier copy can tell it is stale
+    private int modCount;
+
+    // First record changed since the history was last saved, its size when nothing changed
+    private int dirtyFrom;
+
+    public RaidHistory()
+    {
+        this.records = new HeapRecordStore();
+    }
+
+    public RaidHistory(List<RaidRecord> records)
+    {
+        this(records, null);
+    }
+
+    public RaidHistory(List<RaidRecord> records, Collection<String> removedIds)
+    {
+        this();
+        if (removedIds != null)
+        {
+            this.removedIds.addAll(removedIds);
+        }
+        if (records != null)
+        {
+            for (RaidRecord record : records)
+            {
+                append(record);
+            }
+        }
+    }
+
+    /**
+     * History over records that are already stored, indexing them in one pass over their attributes
+     * without reading whole records
+     */
+    public RaidHistory(RecordStore records, Collection<String> removedIds)
+    {
+        this.records = records;
+        if (removedIds != null)
+        {
+            this.removedIds.addAll(removedIds);
+        }
+        for (int i = 0; i < records.size(); i++)
+        {
+            index(i, records.attributes(i));
+        }
+    }
+
+    /**
+     * A history holding the given records, kept in the same kind of storage as this one.
+     * Stored records are rewritten from the first one that differs, so this history must not be used afterwards.
+     */
+    public RaidHistory withRecords(List<RaidRecord> merged, Collection<String> removedIds)
+    {
+        if (!records.isPersistent())
+        {
+            return new RaidHistory(merged, removedIds);
+        }
+
+        int common = 0;
+        int limit = Math.min(records.size(), merged.size());
+        while (common < limit && sameRecord(records.get(common), merged.get(common)))
+        {
+            common++;
+        }
+
+        records.truncate(common);
+        RaidHistory history = new RaidHistory(records, removedIds);
+        for (RaidRecord record : merged.subList(common, merged.size()))
+        {
+            history.append(record);
+        }
+        return history;
+    }
+
+    /**
+     * A history without its first count raids, kept in the same storage as this one,
+     * so this history must not be used afterwards
+     */
+    public RaidHistory withoutFirst(int count)
+    {
+        records.removeFirst(count);
+        return new RaidHistory(records, removedIds);
+    }
+
+    /**
+     * Append a raid to the end of the history
+     * @return the 0-based index of the new record
+     */
+    public int append(RaidRecord record)
+    {
+        int index = records.size();
+
+        // Clock adjustments must not break the ordering the date queries rely on
+        if (index > 0 && record.getTimestamp() < records.timestamp(index - 1))
+        {
+            record.setTimestamp(records.timestamp(index - 1));
+        }
+
+        records.append(record);
+        index(index, HistoryIndex.attributes(record));
+        changed(index);
+        return index;
+    }
+
+    private void index(int position, int attributes)
+    {
+        index.add(position, attributes);
+        RaidOutcome outcome = HistoryIndex.outcome(attributes);
+        personalUniques.append(outcome == RaidOutcome.PERSONAL_UNIQUE ? 1 : 0);
+        teamUniques.append(outcome == RaidOutcome.TEAM_UNIQUE ? 1 : 0);
+    }
+
+    private void changed(int index)
+    {
+        dirtyFrom = Math.min(dirtyFrom, index);
+        modCount++;
+    }
+
+    /**
+     * Change the outcome of an already recorded raid, keeping the indexes in sync
+     */
+    public void setOutcome(int index, RaidOutcome outcome)
+    {
+        RaidRecord record = records.get(index);
+        RaidOutcome previous = record.getOutcome();
+        if (previous == outcome)
+        {
+            return;
+        }
+
+        personalUniques.add(index, indicator(outcome, RaidOutcome.PERSONAL_UNIQUE) - indicator(previous, RaidOutcome.PERSONAL_UNIQUE));
+        teamUniques.add(index, indicator(outcome, RaidOutcome.TEAM_UNIQUE) - indicator(previous, RaidOutcome.TEAM_UNIQUE));
+        this.index.changeOutcome(index, previous, outcome);
+        record.setOutcome(outcome);
+        record.setVersion(record.getVersion() + 1);
+        records.set(index, record);
+        changed(index);
+    }
+
+    /**
+     * Change the outcome of the most recent raid
+     * @return false if there is no recorded raid
+     */
+    public boolean setLastOutcome(RaidOutcome outcome)
+    {
+        if (records.size() == 0)
+        {
+            return false;
+        }
+        setOutcome(records.size() - 1, outcome);
+        return true;
+    }
+
+    /**
+     * Remove the most recent raid, keeping the indexes in sync
+     * @return the removed record, or null if there is no recorded raid
+     */
+    public RaidRecord removeLast()
+    {
+        if (records.size() == 0)
+        {
+            return null;
+        }
+
+        RaidRecord record = records.get(records.size() - 1);
+        records.truncate(records.size() - 1);
+        if (record.getId() != null)
+        {
+            removedIds.add(record.getId());
+        }
+        personalUniques.removeLast();
+        teamUniques.removeLast();
+        index.remove(records.size(), record);
+        changed(records.size());
+        return record;
+    }
+
+    /**
+     * Set the received unique item of a recorded raid
+     */
+    public void setItem(int index, UniqueItem item)
+    {
+        RaidRecord record = records.get(index);
+        this.index.changeItem(index, record.getItem(), item);
+        record.setItem(item);
+        record.setVersion(record.getVersion() + 1);
+        records.set(index, record);
+        changed(index);
+    }
+
+    /**
+     * Set whether the dry streak was manually reset after a recorded raid
+     */
+    public void setStreakReset(int index, boolean streakReset)
+    {
+        RaidRecord record = records.get(index);
+        this.index.setStreakReset(index, streakReset);
+        record.setStreakReset(streakReset);
+        record.setVersion(record.getVersion() + 1);
+        records.set(index, record);
+        changed(index);
+    }
+
+    /**
+     * Attach the received unique item to the most recent raid
+     * @return false if there is no recorded raid
+     */
+    public boolean setLastItem(UniqueItem item)
+    {
+        if (records.size() == 0)
+        {
+            return false;
+        }
+        setItem(records.size() - 1, item);
+        return true;
+    }
+
+    /**
+     * Note that the dry streak was manually reset after the most recent raid
+     * @return false if there is no recorded raid
+     */
+    public boolean markLastStreakReset()
+    {
+        if (records.size() == 0)
+        {
+            return false;
+        }
+        setStreakReset(records.size() - 1, true);
+        return true;
+    }
+
+    public int size()
+    {
+        return records.size();
+    }
+
+    /**
+     * Number of changes made to the records so far
+     */
+    public int getModCount()
+    {
+        return modCount;
+    }
+
+    /**
+     * Index of the first record changed since the last save, the size of the history when nothing changed
+     */
+    public int getDirtyFrom()
+    {
+        return Math.min(dirtyFrom, records.size());
+    }
+
+    /**
+     * Note that every record as it is now has been saved
+     */
+    public void markSaved()
+    {
+        dirtyFrom = records.size();
+    }
+
+    /**
+     * Note that the first records up to the given index as they are now have been saved
+     */
+    public void markSaved(int count)
+    {
+        dirtyFrom = Math.min(count, records.size());
+    }
+
+    public RaidRecord get(int index)
+    {
+        return records.get(index);
+    }
+
+    /**
+     * Snapshot of the first size raids for a replay on another thread, taken from the indexes without reading records
+     */
+    public HistorySnapshot snapshot(int size)
+    {
+        int lastPersonal = index.lastPersonalUnique(size);
+        return index.snapshot(size, modCount, lastPersonal >= 0 ? records.timestamp(lastPersonal) : -1);
+    }
+
+    /**
+     * Read-only view of the records, stored records are read as they are accessed
+     */
+    public List<RaidRecord> getRecords()
+    {
+        return new AbstractList<RaidRecord>()
+        {
+            @Override
+            public RaidRecord get(int index)
+            {
+                return records.get(index);
+            }
+
+            @Override
+            public int size()
+            {
+                return records.size();
+            }
+        };
+    }
+
+    /**
+     * Whether the records persist by themselves, so only recent ones need saving with the rest of the data
+     */
+    public boolean isPersistent()
+    {
+        return records.isPersistent();
+    }
+
+    /**
+     * Find a record by ID, looking only among the records with its timestamp
+     * @return null if it is not there
+     */
+    public RaidRecord find(String id, long timestamp)
+    {
+        for (int i = lowerBound(timestamp); i < records.size() && records.timestamp(i) == timestamp; i++)
+        {
+            RaidRecord record = records.get(i);
+            if (id.equals(record.getId()))
+            {
+                return record;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * IDs of records that were undone
+     */
+    public Set<String> getRemovedIds()
+    {
+        return Collections.unmodifiableSet(removedIds);
+    }
+
+    public void clear()
+    {
+        records.truncate(0);
+        removedIds.clear();
+        personalUniques.clear();
+        teamUniques.clear();
+        index.clear();
+        changed(0);
+    }
+
+    /**
+     * Indexes of the raids matching a query: the time range is found by binary search,
+     * the rest by intersecting the attribute bitmaps. Only raids in a raid level band the query cuts through are read.
+     * @param teamDropResets whether team uniques end a dry streak, for streak filters
+     * @param baselineStreak dry streak before the first raid of the history, for streak filters
+     */
+    public BitSet select(HistoryQuery query, boolean teamDropResets, int baselineStreak)
+    {
+        BitSet rows = new BitSet(records.size());
+        int from = lowerBound(query.getFromMillis());
+        int to = lowerBound(query.getToMillis());
+        if (from >= to)
+        {
+            return rows;
+        }
+
+        rows.set(from, to);
+        index.filter(rows, query);
+        BitSet partial = index.partialRaidLevels(query);
+        partial.and(rows);
+        for (int i = partial.nextSetBit(0); i >= 0; i = partial.nextSetBit(i + 1))
+        {
+            int raidLevel = records.get(i).getInvocation();
+            if (raidLevel < query.getMinRaidLevel() || raidLevel > query.getMaxRaidLevel())
+            {
+                rows.clear(i);
+            }
+        }
+        if (query.getMinStreak() > 0)
+        {
+            rows.and(index.streakEnds(query.getMinStreak(), teamDropResets, baselineStreak));
+        }
+        return rows;
+    }
+
+    /**
+     * Dry streak counted at a raid, including it, answered from the indexes
+     * @param teamDropResets whether team uniques end a dry streak
+     * @param baselineStreak dry streak before the first raid of the history
+     */
+    public int streakAt(int index, boolean teamDropResets, int baselineStreak)
+    {
+        return this.index.streakAt(index, teamDropResets, baselineStreak);
+    }
+
+    /**
+     * Number of raids matching a query
+     */
+    public int count(HistoryQuery query, boolean teamDropResets, int baselineStreak)
+    {
+        return select(query, teamDropResets, baselineStreak).cardinality();
+    }
+
+    /**
+     * Number of raids completed in [fromMillis, toMillis)
+     */
+    public int completionsBetween(long fromMillis, long toMillis)
+    {
+        return Math.max(0, lowerBound(toMillis) - lowerBound(fromMillis));
+    }
+
+    /**
+     * Number of personal uniques received in [fromMillis, toMillis)
+     */
+    public int uniquesBetween(long fromMillis, long toMillis)
+    {
+        return personalUniques.rangeSum(lowerBound(fromMillis), lowerBound(toMillis));
+    }
+
+    /**
+     * Number of team uniques seen in [fromMillis, toMillis)
+     */
+    public int teamUniquesBetween(long fromMillis, long toMillis)
+    {
+        return teamUniques.rangeSum(lowerBound(fromMillis), lowerBound(toMillis));
+    }
+
+    /**
+     * Number of personal uniques between raid numbers first and last (1-based, inclusive)
+     */
+    public int uniquesBetweenRaids(int first, int last)
+    {
+        return personalUniques.rangeSum(Math.max(first, 1) - 1, Math.min(last, records.size()));
+    }
+
+    /**
+     * Raids per personal unique over the last k raids
+     * @return 0 when there was no unique in that window
+     */
+    public double dryRateOverLast(int k)
+    {
+        int to = records.size();
+        int from = Math.max(0, to - k);
+        int uniques = personalUniques.rangeSum(from, to);
+        if (uniques == 0)
+        {
+            return 0.0;
+        }
+        return (double) (to - from) / uniques;
+    }
+
+    /**
+     * Index of the first raid with a timestamp at or after the given time
+     */
+    private int lowerBound(long millis)
+    {
+        int low = 0;
+        int high = records.size();
+        while (low < high)
+        {
+            int mid = (low + high) >>> 1;
+            if (records.timestamp(mid) < millis)
+            {
+                low = mid + 1;
+            }
+            else
+            {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static boolean sameRecord(RaidRecord stored, RaidRecord record)
+    {
+        return stored.getVersion() == record.getVersion() && stored.getTimestamp() == record.getTimestamp()
+            && (stored.getId() == null ? record.getId() == null : stored.getId().equals(record.getId()));
+    }
+
+    private static int indicator(RaidOutcome outcome, RaidOutcome expected)
+    {
+        return outcome == expected ? 1 : 0;
+    }
+}
@@ -0,0 +1,11 @@
+package com.dryrate.history;
+
+/**
+ * Outcome of a single recorded raid
+ */
+public enum RaidOutcome
+{
+    NO_UNIQUE,
+    PERSONAL_UNIQUE,
+    TEAM_UNIQUE
+}
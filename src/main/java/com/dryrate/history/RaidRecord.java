@@ -0,0 +1,61 @@
+package com.dryrate.history;
+
+import com.dryrate.RaidContext;
+import com.dryrate.RaidMode;
+import com.dryrate.UniqueItem;
+import lombok.Data;
+
+/**
+ * A single recorded raid completion
+ */
+@Data
+public class RaidRecord
+{
+    // Unique across clients, used to merge histories written by several instances
+    private String id;
+    // Bumped on every change so the newest copy of a record wins when merging
+    private int version;
+    private long timestamp;
+    private RaidOutcome outcome;
+    private UniqueItem item;
+    private int teamSize;
+    private RaidMode mode;
+    private int invocation;
+
+    // Dry streak was manually reset after this raid
+    private boolean streakReset;
+
+    public RaidRecord()
+    {
+        this.outcome = RaidOutcome.NO_UNIQUE;
+        this.mode = RaidMode.NORMAL;
+    }
+
+    public RaidRecord(String id, long timestamp, RaidOutcome outcome, RaidContext context)
+    {
+        this.id = id;
+        this.timestamp = timestamp;
+        this.outcome = outcome;
+        this.teamSize = context.getTeamSize();
+        this.mode = context.getMode();
+        this.invocation = context.getInvocation();
+    }
+
+    /**
+     * A copy of this record that later edits of the history do not change
+     */
+    public RaidRecord copy()
+    {
+        RaidRecord copy = new RaidRecord();
+        copy.id = id;
+        copy.version = version;
+        copy.timestamp = timestamp;
+        copy.outcome = outcome;
+        copy.item = item;
+        copy.teamSize = teamSize;
+        copy.mode = mode;
+        copy.invocation = invocation;
+        copy.streakReset = streakReset;
+        return copy;
+    }
+}
@@ -0,0 +1,52 @@
+package com.dryrate.history;
+
+/**
+ * Storage of a raid's records in raid order, held on the heap or in a file
+ */
+public interface RecordStore
+{
+    int size();
+
+    /**
+     * The record at index, changes to it only take effect once written back with set
+     */
+    RaidRecord get(int index);
+
+    /**
+     * Timestamp of the record at index, without reading the whole record
+     */
+    long timestamp(int index);
+
+    /**
+     * Indexed attributes of the record at index, packed as the history index expects
+     */
+    default int attributes(int index)
+    {
+        return HistoryIndex.attributes(get(index));
+    }
+
+    void append(RaidRecord record);
+
+    /**
+     * Write back a changed record
+     */
+    void set(int index, RaidRecord record);
+
+    /**
+     * Drop every record from index onwards
+     */
+    void truncate(int size);
+
+    /**
+     * Drop the first count records, moving the rest to the front
+     */
+    void removeFirst(int count);
+
+    /**
+     * Whether the records persist by themselves, rather than only through the saved history
+     */
+    default boolean isPersistent()
+    {
+        return false;
+    }
+}
@@ -0,0 +1,56 @@
+package com.dryrate.history;
+
+import lombok.Data;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+/**
+ * Totals of one calendar month (UTC) of raids that were folded out of the detailed history
+ */
+@Data
+public class Rollup
+{
+    private long monthStart;
+    private int completions;
+    private int personalUniques;
+    private int teamUniques;
+
+    /**
+     * Add a raid to the rollup of its month, rollups are kept in month order
+     */
+    public static void add(List<Rollup> rollups, RaidRecord record)
+    {
+        long month = monthStart(record.getTimestamp());
+        Rollup rollup = rollups.isEmpty() ? null : rollups.get(rollups.size() - 1);
+        if (rollup == null || rollup.monthStart != month)
+        {
+            // Folded raids are in timestamp order, so a new month always goes at the end
+            rollup = new Rollup();
+            rollup.monthStart = month;
+            rollups.add(rollup);
+        }
+
+        rollup.completions++;
+        if (record.getOutcome() == RaidOutcome.PERSONAL_UNIQUE)
+        {
+            rollup.personalUniques++;
+        }
+        else if (record.getOutcome() == RaidOutcome.TEAM_UNIQUE)
+        {
+            rollup.teamUniques++;
+        }
+    }
+
+    private static long monthStart(long millis)
+    {
+        return ZonedDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneOffset.UTC)
+            .truncatedTo(ChronoUnit.DAYS)
+            .withDayOfMonth(1)
+            .toInstant()
+            .toEpochMilli();
+    }
+}
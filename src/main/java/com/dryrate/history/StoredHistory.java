@@ -0,0 +1,88 @@
+package com.dryrate.history;
+
+import com.dryrate.RaidType;
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Persisted form of a raid's history: its records plus the IDs of undone records.
+ * Records are saved in chunks of CHUNK_SIZE raids under their own keys, numbered by raid count
+ * so a chunk keeps its key as older raids are folded away, and only chunks that changed are written again.
+ * The saved header lists the chunks, older versions saved the records in it instead.
+ */
+@Data
+public class StoredHistory
+{
+    public static final int CHUNK_SIZE = 100;
+
+    // Recent records saved for other clients to merge when the full history lives in a local file
+    private static final int SYNC_TAIL = 1000;
+
+    private List<RaidRecord> records;
+    private Set<String> removedIds;
+    private int firstChunk;
+    private int chunkCount;
+
+    public StoredHistory()
+    {
+        this.records = new ArrayList<>();
+        this.removedIds = new HashSet<>();
+    }
+
+    public StoredHistory(List<RaidRecord> records, Set<String> removedIds)
+    {
+        this.records = records;
+        this.removedIds = removedIds;
+    }
+
+    /**
+     * Header of a history's saved chunks, only those with recent records when the history stores its own records
+     * so other clients can still merge what was recorded lately
+     * @param offset raid count before the first raid of the history
+     */
+    public static StoredHistory header(RaidHistory history, int offset)
+    {
+        StoredHistory header = new StoredHistory(null, history.getRemovedIds());
+        int size = history.size();
+        if (size > 0)
+        {
+            int first = history.isPersistent() ? Math.max(0, size - SYNC_TAIL) : 0;
+            header.firstChunk = chunkOf(offset + first);
+            header.chunkCount = chunkOf(offset + size - 1) - header.firstChunk + 1;
+        }
+        return header;
+    }
+
+    /**
+     * Records of a history in the given chunk
+     * @param offset raid count before the first raid of the history
+     */
+    public static List<RaidRecord> chunk(RaidHistory history, int offset, int chunk)
+    {
+        int from = Math.max(0, chunk * CHUNK_SIZE - offset);
+        int to = Math.min(history.size(), (chunk + 1) * CHUNK_SIZE - offset);
+        List<RaidRecord> records = new ArrayList<>(Math.max(0, to - from));
+        for (int i = from; i < to; i++)
+        {
+            records.add(history.get(i));
+        }
+        return records;
+    }
+
+    /**
+     * Chunk holding the raid with the given 0-based raid count
+     */
+    public static int chunkOf(int raid)
+    {
+        return raid / CHUNK_SIZE;
+    }
+
+    public static String chunkKey(String historyKey, RaidType raidType, int chunk)
+    {
+        return historyKey + "." + raidType.name() + "." + chunk;
+    }
+}
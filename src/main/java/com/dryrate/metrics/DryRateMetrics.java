@@ -0,0 +1,403 @@
+package com.dryrate.metrics;
+
+import com.dryrate.RaidType;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.inject.Singleton;
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+
+/**
+ * Counters and latency histograms of the plugin's event handlers, detector decisions and saves.
+ * Also a tick budget watchdog, which adds up the handler time of each game tick and flags ticks over budget.
+ * While both are disabled every hook returns after a single field read, so it costs nothing measurable.
+ */
+@Slf4j
+@Singleton
+public class DryRateMetrics
+{
+    /**
+     * Event handlers of the plugin
+     */
+    public enum Handler
+    {
+        GAME_OBJECT_SPAWNED("GameObjectSpawned"),
+        WALL_OBJECT_SPAWNED("WallObjectSpawned"),
+        GAME_TICK("GameTick"),
+        VARBIT_CHANGED("VarbitChanged"),
+        ITEM_CONTAINER_CHANGED("ItemContainerChanged"),
+        CHAT_MESSAGE("ChatMessage"),
+        CONFIG_CHANGED("ConfigChanged"),
+        GAME_STATE_CHANGED("GameStateChanged");
+
+        private final String displayName;
+
+        Handler(String displayName)
+        {
+            this.displayName = displayName;
+        }
+
+        public String getDisplayName()
+        {
+            return displayName;
+        }
+    }
+
+    /**
+     * What a detector decided about a raid
+     */
+    public enum Decision
+    {
+        COMPLETION("completions"),
+        PERSONAL_UNIQUE("personal uniques"),
+        TEAM_UNIQUE("team uniques"),
+        NO_UNIQUE("no unique"),
+        UNIQUE_ITEM("items");
+
+        private final String displayName;
+
+        Decision(String displayName)
+        {
+            this.displayName = displayName;
+        }
+
+        public String getDisplayName()
+        {
+            return displayName;
+        }
+    }
+
+    private static final class HandlerStats
+    {
+        private final LongAdder routed = new LongAdder();
+        private final LongAdder ignored = new LongAdder();
+        private final Histogram nanos = new Histogram();
+    }
+
+    private final HandlerStats[] handlers = new HandlerStats[Handler.values().length];
+    private final LongAdder[][] decisions = new LongAdder[RaidType.values().length][Decision.values().length];
+    private final Histogram saveNanos = new Histogram();
+    private final Histogram saveBytes = new Histogram();
+    private final LongAdder panelRefreshes = new LongAdder();
+    private final Histogram tickNanos = new Histogram();
+    private final LongAdder overBudgetTicks = new LongAdder();
+
+    // Handler time and calls since the last game tick, only touched on the thread that ends ticks
+    private final long[] tickHandlerNanos = new long[Handler.values().length];
+    private final int[] tickHandlerCalls = new int[Handler.values().length];
+    private volatile Thread tickThread;
+
+    private volatile boolean enabled;
+    private volatile long tickBudgetNanos;
+    private volatile boolean timing;
+    private volatile IntSupplier journalSize = () -> 0;
+
+    public DryRateMetrics()
+    {
+        for (int i = 0; i < handlers.length; i++)
+        {
+            handlers[i] = new HandlerStats();
+        }
+        for (LongAdder[] raid : decisions)
+        {
+            for (int i = 0; i < raid.length; i++)
+            {
+                raid[i] = new LongAdder();
+            }
+        }
+    }
+
+    public boolean isEnabled()
+    {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled)
+    {
+        this.enabled = enabled;
+        this.timing = enabled || tickBudgetNanos > 0;
+    }
+
+    /**
+     * Set the handler time a game tick may take before it is flagged, 0 turns the watchdog off
+     */
+    public void setTickBudgetMicros(int micros)
+    {
+        this.tickBudgetNanos = Math.max(0, micros) * 1000L;
+        this.timing = enabled || tickBudgetNanos > 0;
+    }
+
+    /**
+     * Start timing a handler call or save
+     * @return the start time, 0 while disabled
+     */
+    public long start()
+    {
+        return timing ? System.nanoTime() : 0L;
+    }
+
+    /**
+     * Record a handler call started at start. Only calls on the client thread count towards the tick,
+     * events fired from the pipeline or store threads, such as the config changes of a save, do not.
+     * @param routed whether the event was passed on, rather than ignored
+     */
+    public void handled(Handler handler, long start, boolean routed)
+    {
+        if (start == 0L)
+        {
+            return;
+        }
+
+        long elapsed = System.nanoTime() - start;
+        if (tickBudgetNanos > 0 && Thread.currentThread() == tickThread)
+        {
+            tickHandlerNanos[handler.ordinal()] += elapsed;
+            tickHandlerCalls[handler.ordinal()]++;
+        }
+        if (enabled)
+        {
+            HandlerStats stats = handlers[handler.ordinal()];
+            stats.nanos.record(elapsed);
+            (routed ? stats.routed : stats.ignored).increment();
+        }
+    }
+
+    /**
+     * Close the current game tick, flagging it if its handlers went over the budget.
+     * Called at the end of the tick handler, so a tick covers the events that led up to it.
+     */
+    public void tickEnded()
+    {
+        long budget = tickBudgetNanos;
+        if (budget <= 0)
+        {
+            return;
+        }
+        Thread thread = Thread.currentThread();
+        if (tickThread != thread)
+        {
+            tickThread = thread;
+        }
+
+        long total = 0;
+        for (long nanos : tickHandlerNanos)
+        {
+            total += nanos;
+        }
+        if (enabled)
+        {
+            tickNanos.record(total);
+        }
+
+        if (total > budget)
+        {
+            overBudgetTicks.increment();
+            log.warn("Game tick took {} of plugin time, over the {} budget: {}", millis(total), millis(budget), tickBreakdown());
+        }
+
+        Arrays.fill(tickHandlerNanos, 0);
+        Arrays.fill(tickHandlerCalls, 0);
+    }
+
+    /**
+     * Time per handler in the current tick, slowest first
+     */
+    private String tickBreakdown()
+    {
+        StringBuilder breakdown = new StringBuilder();
+        Handler[] byTime = Handler.values().clone();
+        Arrays.sort(byTime, (a, b) -> Long.compare(tickHandlerNanos[b.ordinal()], tickHandlerNanos[a.ordinal()]));
+        for (Handler handler : byTime)
+        {
+            int calls = tickHandlerCalls[handler.ordinal()];
+            if (calls == 0)
+            {
+                continue;
+            }
+            if (breakdown.length() > 0)
+            {
+                breakdown.append(", ");
+            }
+            breakdown.append(handler.getDisplayName()).append(' ').append(millis(tickHandlerNanos[handler.ordinal()]))
+                .append(" (").append(calls).append(calls == 1 ? " call)" : " calls)");
+        }
+        return breakdown.toString();
+    }
+
+    /**
+     * Record a detector decision
+     */
+    public void decision(RaidType raidType, Decision decision)
+    {
+        if (enabled)
+        {
+            decisions[raidType.ordinal()][decision.ordinal()].increment();
+        }
+    }
+
+    /**
+     * Record a save started at start that wrote the given number of characters.
+     * Saves mostly run on the pipeline thread, their time is not charged to the tick.
+     */
+    public void saved(long start, long size)
+    {
+        if (start == 0L || !enabled)
+        {
+            return;
+        }
+
+        saveNanos.record(System.nanoTime() - start);
+        saveBytes.record(size);
+    }
+
+    /**
+     * Record a rebuild of the panel
+     */
+    public void panelRefreshed()
+    {
+        if (enabled)
+        {
+            panelRefreshes.increment();
+        }
+    }
+
+    /**
+     * Set where the number of undoable entries is read from
+     */
+    public void setJournalSize(IntSupplier journalSize)
+    {
+        this.journalSize = journalSize;
+    }
+
+    public int getJournalSize()
+    {
+        return journalSize.getAsInt();
+    }
+
+    public long getPanelRefreshes()
+    {
+        return panelRefreshes.sum();
+    }
+
+    /**
+     * Events a handler has seen since the last reset
+     */
+    public long seen(Handler handler)
+    {
+        HandlerStats stats = handlers[handler.ordinal()];
+        return stats.routed.sum() + stats.ignored.sum();
+    }
+
+    public long routed(Handler handler)
+    {
+        return handlers[handler.ordinal()].routed.sum();
+    }
+
+    public long ignored(Handler handler)
+    {
+        return handlers[handler.ordinal()].ignored.sum();
+    }
+
+    public Histogram latency(Handler handler)
+    {
+        return handlers[handler.ordinal()].nanos;
+    }
+
+    public long decisions(RaidType raidType, Decision decision)
+    {
+        return decisions[raidType.ordinal()][decision.ordinal()].sum();
+    }
+
+    public Histogram getSaveNanos()
+    {
+        return saveNanos;
+    }
+
+    public Histogram getSaveBytes()
+    {
+        return saveBytes;
+    }
+
+    /**
+     * Plugin time per game tick
+     */
+    public Histogram getTickNanos()
+    {
+        return tickNanos;
+    }
+
+    public long getOverBudgetTicks()
+    {
+        return overBudgetTicks.sum();
+    }
+
+    public void reset()
+    {
+        for (HandlerStats stats : handlers)
+        {
+            stats.routed.reset();
+            stats.ignored.reset();
+            stats.nanos.reset();
+        }
+        for (LongAdder[] raid : decisions)
+        {
+            for (LongAdder counter : raid)
+            {
+                counter.reset();
+            }
+        }
+        saveNanos.reset();
+        saveBytes.reset();
+        panelRefreshes.reset();
+        tickNanos.reset();
+        overBudgetTicks.reset();
+    }
+
+    /**
+     * Plain text report of everything recorded, for the debug section of the panel
+     */
+    public String format()
+    {
+        StringBuilder report = new StringBuilder();
+        for (Handler handler : Handler.values())
+        {
+            Histogram nanos = latency(handler);
+            report.append(handler.getDisplayName()).append('\n')
+                .append(String.format("  %d seen, %d routed, %d ignored%n", seen(handler), routed(handler), ignored(handler)))
+                .append(String.format("  mean %s, p99 %s, max %s%n",
+                    micros(nanos.getMean()), micros(nanos.percentile(0.99)), micros(nanos.getMax())));
+        }
+
+        for (RaidType raidType : RaidType.values())
+        {
+            report.append(raidType.getShortName()).append(" detector\n");
+            for (Decision decision : Decision.values())
+            {
+                report.append(String.format("  %d %s%n", decisions(raidType, decision), decision.getDisplayName()));
+            }
+        }
+
+        report.append("Saves\n")
+            .append(String.format("  %d saves, mean %s, max %s%n",
+                saveNanos.getCount(), micros(saveNanos.getMean()), micros(saveNanos.getMax())))
+            .append(String.format("  mean %.0f chars, max %d chars%n", saveBytes.getMean(), saveBytes.getMax()))
+            .append("Ticks\n")
+            .append(String.format("  mean %s, p99 %s, max %s%n",
+                micros(tickNanos.getMean()), micros(tickNanos.percentile(0.99)), micros(tickNanos.getMax())))
+            .append(String.format("  %d over budget%n", getOverBudgetTicks()))
+            .append("Panel\n")
+            .append(String.format("  %d refreshes, %d journal entries%n", getPanelRefreshes(), getJournalSize()));
+        return report.toString();
+    }
+
+    private static String micros(double nanos)
+    {
+        return String.format("%.1f us", nanos / 1000.0);
+    }
+
+    private static String millis(long nanos)
+    {
+        return String.format("%.2f ms", nanos / 1e6);
+    }
+}
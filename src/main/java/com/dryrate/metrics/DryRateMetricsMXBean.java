@@ -0,0 +1,55 @@
+package com.dryrate.metrics;
+
+import java.util.Map;
+
+/**
+ * Management view of the plugin's metrics, for JConsole or VisualVM
+ */
+public interface DryRateMetricsMXBean
+{
+    boolean isEnabled();
+
+    /**
+     * Game and wall object spawns seen
+     */
+    long getSpawnEventsProcessed();
+
+    /**
+     * Events seen, by handler
+     */
+    Map<String, Long> getHandlerEvents();
+
+    /**
+     * Mean handler call time in microseconds, by handler
+     */
+    Map<String, Double> getHandlerMeanMicros();
+
+    /**
+     * Decisions made, keyed by raid and decision
+     */
+    Map<String, Long> getDetectorDecisions();
+
+    long getSaveCount();
+
+    double getSaveMeanMillis();
+
+    double getSaveMaxMillis();
+
+    long getSaveMaxChars();
+
+    /**
+     * Mean plugin time per game tick in microseconds
+     */
+    double getTickMeanMicros();
+
+    /**
+     * Game ticks where the plugin went over the tick budget
+     */
+    long getOverBudgetTicks();
+
+    int getJournalSize();
+
+    long getPanelRefreshes();
+
+    void reset();
+}
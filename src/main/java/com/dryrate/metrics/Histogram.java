@@ -0,0 +1,91 @@
+package com.dryrate.metrics;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram over fixed power-of-two buckets, recording is a couple of uncontended adds.
+ * Bucket i holds values in [2^(i-1), 2^i), so percentiles are accurate to within a factor of two.
+ */
+public class Histogram
+{
+    private static final int BUCKETS = 48;
+
+    private final LongAdder[] buckets = new LongAdder[BUCKETS];
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    public Histogram()
+    {
+        for (int i = 0; i < BUCKETS; i++)
+        {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    public void record(long value)
+    {
+        value = Math.max(0, value);
+        buckets[Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(value))].increment();
+        count.increment();
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    public long getCount()
+    {
+        return count.sum();
+    }
+
+    public long getSum()
+    {
+        return sum.sum();
+    }
+
+    public long getMax()
+    {
+        return max.get();
+    }
+
+    public double getMean()
+    {
+        long n = count.sum();
+        return n == 0 ? 0.0 : (double) sum.sum() / n;
+    }
+
+    /**
+     * Upper bound of the bucket holding the given quantile (0-1) of the recorded values
+     */
+    public long percentile(double quantile)
+    {
+        long n = count.sum();
+        if (n == 0)
+        {
+            return 0;
+        }
+
+        long rank = (long) Math.ceil(quantile * n);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++)
+        {
+            seen += buckets[i].sum();
+            if (seen >= rank)
+            {
+                return i == 0 ? 0 : Math.min(max.get(), (1L << i) - 1);
+            }
+        }
+        return max.get();
+    }
+
+    public void reset()
+    {
+        for (LongAdder bucket : buckets)
+        {
+            bucket.reset();
+        }
+        count.reset();
+        sum.reset();
+        max.reset();
+    }
+}
@@ -0,0 +1,347 @@
+package com.dryrate.metrics;
+
+import com.dryrate.RaidType;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Publishes the metrics as a JMX MBean and, when asked, writes them every few seconds
+ * to a file in the Prometheus text format for a local scraper
+ */
+@Slf4j
+@Singleton
+public class MetricsExporter
+{
+    private static final String OBJECT_NAME = "com.dryrate:type=DryRateMetrics";
+    private static final long EXPORT_INTERVAL_SECONDS = 15;
+
+    private final DryRateMetrics metrics;
+    private ObjectName registeredName;
+    private ScheduledExecutorService exportExecutor;
+    private ScheduledFuture<?> export;
+
+    @Inject
+    public MetricsExporter(DryRateMetrics metrics)
+    {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Register the MBean with the platform MBean server
+     */
+    public synchronized void register()
+    {
+        if (registeredName != null)
+        {
+            return;
+        }
+
+        try
+        {
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(name))
+            {
+                // Left behind by an earlier instance of the plugin
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(new StandardMBean(new MetricsView(metrics), DryRateMetricsMXBean.class, true), name);
+            registeredName = name;
+        }
+        catch (JMException e)
+        {
+            log.warn("Could not register metrics MBean", e);
+        }
+    }
+
+    public synchronized void unregister()
+    {
+        if (registeredName == null)
+        {
+            return;
+        }
+
+        try
+        {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(registeredName);
+        }
+        catch (JMException e)
+        {
+            log.debug("Could not unregister metrics MBean: {}", e.getMessage());
+        }
+        registeredName = null;
+    }
+
+    /**
+     * Start or stop writing the metrics to a Prometheus text file
+     */
+    public synchronized void setFileExport(Path file)
+    {
+        if (export != null)
+        {
+            export.cancel(false);
+            export = null;
+        }
+        if (file == null)
+        {
+            return;
+        }
+
+        if (exportExecutor == null)
+        {
+            exportExecutor = Executors.newSingleThreadScheduledExecutor(r ->
+            {
+                Thread thread = new Thread(r, "dry-rate-metrics");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        export = exportExecutor.scheduleWithFixedDelay(() -> writeFile(file), 0, EXPORT_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Stop exporting and release the MBean name and export thread
+     */
+    public synchronized void shutDown()
+    {
+        setFileExport(null);
+        unregister();
+        if (exportExecutor != null)
+        {
+            exportExecutor.shutdown();
+            exportExecutor = null;
+        }
+    }
+
+    /**
+     * Replace the file in one rename, so a scraper never reads half of it
+     */
+    private void writeFile(Path file)
+    {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try
+        {
+            Files.createDirectories(file.getParent());
+            Files.write(temp, formatPrometheus(metrics).getBytes(StandardCharsets.UTF_8));
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (IOException e)
+        {
+            log.debug("Could not write metrics to {}: {}", file, e.getMessage());
+        }
+    }
+
+    /**
+     * Metrics in the Prometheus text exposition format
+     */
+    static String formatPrometheus(DryRateMetrics metrics)
+    {
+        StringBuilder out = new StringBuilder();
+
+        header(out, "dry_rate_handler_events_total", "counter", "Events seen by each handler, by whether a detector got them");
+        for (DryRateMetrics.Handler handler : DryRateMetrics.Handler.values())
+        {
+            sample(out, "dry_rate_handler_events_total", "handler=\"" + handler.getDisplayName() + "\",result=\"routed\"", metrics.routed(handler));
+            sample(out, "dry_rate_handler_events_total", "handler=\"" + handler.getDisplayName() + "\",result=\"ignored\"", metrics.ignored(handler));
+        }
+
+        header(out, "dry_rate_handler_seconds", "summary", "Time spent per handler call");
+        for (DryRateMetrics.Handler handler : DryRateMetrics.Handler.values())
+        {
+            summary(out, "dry_rate_handler_seconds", "handler=\"" + handler.getDisplayName() + "\"", metrics.latency(handler));
+        }
+
+        header(out, "dry_rate_detector_decisions_total", "counter", "Decisions made by each raid detector");
+        for (RaidType raidType : RaidType.values())
+        {
+            for (DryRateMetrics.Decision decision : DryRateMetrics.Decision.values())
+            {
+                sample(out, "dry_rate_detector_decisions_total",
+                    "raid=\"" + raidType.name() + "\",decision=\"" + decision.name().toLowerCase() + "\"",
+                    metrics.decisions(raidType, decision));
+            }
+        }
+
+        header(out, "dry_rate_save_seconds", "summary", "Time spent per save");
+        summary(out, "dry_rate_save_seconds", "", metrics.getSaveNanos());
+
+        header(out, "dry_rate_save_payload_chars", "gauge", "Largest saved payload");
+        sample(out, "dry_rate_save_payload_chars", "", metrics.getSaveBytes().getMax());
+
+        header(out, "dry_rate_tick_seconds", "summary", "Plugin time per game tick");
+        summary(out, "dry_rate_tick_seconds", "", metrics.getTickNanos());
+
+        header(out, "dry_rate_ticks_over_budget_total", "counter", "Game ticks where the plugin went over the tick budget");
+        sample(out, "dry_rate_ticks_over_budget_total", "", metrics.getOverBudgetTicks());
+
+        header(out, "dry_rate_journal_entries", "gauge", "Undoable journal entries");
+        sample(out, "dry_rate_journal_entries", "", metrics.getJournalSize());
+
+        header(out, "dry_rate_panel_refreshes_total", "counter", "Rebuilds of the side panel");
+        sample(out, "dry_rate_panel_refreshes_total", "", metrics.getPanelRefreshes());
+        return out.toString();
+    }
+
+    private static void header(StringBuilder out, String name, String type, String help)
+    {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void sample(StringBuilder out, String name, String labels, Object value)
+    {
+        out.append(name);
+        if (!labels.isEmpty())
+        {
+            out.append('{').append(labels).append('}');
+        }
+        out.append(' ').append(value).append('\n');
+    }
+
+    private static void summary(StringBuilder out, String name, String labels, Histogram nanos)
+    {
+        String prefix = labels.isEmpty() ? "" : labels + ",";
+        sample(out, name, prefix + "quantile=\"0.5\"", seconds(nanos.percentile(0.5)));
+        sample(out, name, prefix + "quantile=\"0.99\"", seconds(nanos.percentile(0.99)));
+        sample(out, name + "_sum", labels, seconds(nanos.getSum()));
+        sample(out, name + "_count", labels, nanos.getCount());
+    }
+
+    private static double seconds(long nanos)
+    {
+        return nanos / 1e9;
+    }
+
+    /**
+     * MBean over the live metrics, every attribute is read when it is asked for
+     */
+    private static final class MetricsView implements DryRateMetricsMXBean
+    {
+        private final DryRateMetrics metrics;
+
+        private MetricsView(DryRateMetrics metrics)
+        {
+            this.metrics = metrics;
+        }
+
+        @Override
+        public boolean isEnabled()
+        {
+            return metrics.isEnabled();
+        }
+
+        @Override
+        public long getSpawnEventsProcessed()
+        {
+            return metrics.seen(DryRateMetrics.Handler.GAME_OBJECT_SPAWNED) + metrics.seen(DryRateMetrics.Handler.WALL_OBJECT_SPAWNED);
+        }
+
+        @Override
+        public Map<String, Long> getHandlerEvents()
+        {
+            Map<String, Long> events = new LinkedHashMap<>();
+            for (DryRateMetrics.Handler handler : DryRateMetrics.Handler.values())
+            {
+                events.put(handler.getDisplayName(), metrics.seen(handler));
+            }
+            return events;
+        }
+
+        @Override
+        public Map<String, Double> getHandlerMeanMicros()
+        {
+            Map<String, Double> means = new LinkedHashMap<>();
+            for (DryRateMetrics.Handler handler : DryRateMetrics.Handler.values())
+            {
+                means.put(handler.getDisplayName(), metrics.latency(handler).getMean() / 1000.0);
+            }
+            return means;
+        }
+
+        @Override
+        public Map<String, Long> getDetectorDecisions()
+        {
+            Map<String, Long> decisions = new LinkedHashMap<>();
+            for (RaidType raidType : RaidType.values())
+            {
+                for (DryRateMetrics.Decision decision : DryRateMetrics.Decision.values())
+                {
+                    decisions.put(raidType.getShortName() + " " + decision.getDisplayName(), metrics.decisions(raidType, decision));
+                }
+            }
+            return decisions;
+        }
+
+        @Override
+        public long getSaveCount()
+        {
+            return metrics.getSaveNanos().getCount();
+        }
+
+        @Override
+        public double getSaveMeanMillis()
+        {
+            return metrics.getSaveNanos().getMean() / 1e6;
+        }
+
+        @Override
+        public double getSaveMaxMillis()
+        {
+            return metrics.getSaveNanos().getMax() / 1e6;
+        }
+
+        @Override
+        public long getSaveMaxChars()
+        {
+            return metrics.getSaveBytes().getMax();
+        }
+
+        @Override
+        public double getTickMeanMicros()
+        {
+            return metrics.getTickNanos().getMean() / 1000.0;
+        }
+
+        @Override
+        public long getOverBudgetTicks()
+        {
+            return metrics.getOverBudgetTicks();
+        }
+
+        @Override
+        public int getJournalSize()
+        {
+            return metrics.getJournalSize();
+        }
+
+        @Override
+        public long getPanelRefreshes()
+        {
+            return metrics.getPanelRefreshes();
+        }
+
+        @Override
+        public void reset()
+        {
+            metrics.reset();
+        }
+    }
+}
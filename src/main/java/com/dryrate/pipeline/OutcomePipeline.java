@@ -0,0 +1,327 @@
+package com.dryrate.pipeline;
+
+import com.dryrate.DryRateManager;
+import com.dryrate.RaidContext;
+import com.dryrate.RaidMode;
+import com.dryrate.RaidType;
+import com.dryrate.UniqueItem;
+import com.dryrate.detectors.RaidDetector;
+import com.dryrate.metrics.DryRateMetrics;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hands raid outcomes from the detectors on the client thread to a background thread that records them.
+ * The client thread packs each outcome into a long and writes it to a preallocated ring, the consumer
+ * drains whatever has arrived and applies it as one batch: aggregates and journal, one save, metrics, one UI refresh.
+ * Single producer, single consumer. Publishing takes no lock while the ring has room, draining holds drainLock
+ * and the manager's lock while a batch is applied. Every outcome goes through the ring, so they are recorded
+ * in the order they were published. The producer is not wait-free: a full ring makes it park until the consumer
+ * catches up, and without a consumer it drains the ring itself, taking both locks on its own thread.
+ */
+@Slf4j
+@Singleton
+public class OutcomePipeline
+{
+    private static final int CAPACITY = 256;
+    private static final int MASK = CAPACITY - 1;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final long FULL_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long FLUSH_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(2);
+
+    /**
+     * What a detector decided, in the low bits of an event
+     */
+    private enum Kind
+    {
+        COMPLETION(DryRateMetrics.Decision.COMPLETION),
+        PERSONAL_UNIQUE(DryRateMetrics.Decision.PERSONAL_UNIQUE),
+        TEAM_UNIQUE(DryRateMetrics.Decision.TEAM_UNIQUE),
+        NO_UNIQUE(DryRateMetrics.Decision.NO_UNIQUE),
+        UNIQUE_ITEM(DryRateMetrics.Decision.UNIQUE_ITEM);
+
+        private final DryRateMetrics.Decision decision;
+
+        Kind(DryRateMetrics.Decision decision)
+        {
+            this.decision = decision;
+        }
+    }
+
+    private static final Kind[] KINDS = Kind.values();
+    private static final RaidType[] RAID_TYPES = RaidType.values();
+    private static final RaidMode[] MODES = RaidMode.values();
+    private static final UniqueItem[] ITEMS = UniqueItem.values();
+
+    private final DryRateManager dryRateManager;
+    private final DryRateMetrics metrics;
+
+    private final long[] ring = new long[CAPACITY];
+    // Held while draining, so a consumer still stopping and a producer without one never drain at the same time
+    private final Object drainLock = new Object();
+    private final long[] batch = new long[CAPACITY];
+    // Next slot the producer writes, and next slot the consumer reads
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong head = new AtomicLong();
+    // Events fully applied, flush waits for this to catch up with the tail
+    private final AtomicLong applied = new AtomicLong();
+
+    private volatile RaidDetector.UIUpdateCallback uiUpdateCallback;
+    private volatile Thread consumer;
+    private volatile boolean running;
+
+    @Inject
+    public OutcomePipeline(DryRateManager dryRateManager, DryRateMetrics metrics)
+    {
+        this.dryRateManager = dryRateManager;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Set what is called after each batch to refresh the UI
+     */
+    public void setUIUpdateCallback(RaidDetector.UIUpdateCallback callback)
+    {
+        this.uiUpdateCallback = callback;
+    }
+
+    /**
+     * Start the consumer thread, until it runs outcomes are drained on the calling thread
+     */
+    public synchronized void start()
+    {
+        if (consumer != null)
+        {
+            return;
+        }
+
+        running = true;
+        Thread thread = new Thread(this::consume, "dry-rate-pipeline");
+        thread.setDaemon(true);
+        consumer = thread;
+        thread.start();
+    }
+
+    /**
+     * Apply everything published so far and stop the consumer thread
+     */
+    public synchronized void stop()
+    {
+        Thread thread = consumer;
+        if (thread == null)
+        {
+            return;
+        }
+
+        flush();
+        running = false;
+        LockSupport.unpark(thread);
+        try
+        {
+            thread.join(TimeUnit.NANOSECONDS.toMillis(FLUSH_TIMEOUT_NANOS));
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        consumer = null;
+        // Outcomes published while the consumer was exiting
+        drain();
+    }
+
+    /**
+     * Wait until everything published so far is applied, before the loaded data is flushed or unloaded
+     */
+    public void flush()
+    {
+        long target = tail.get();
+        long deadline = System.nanoTime() + FLUSH_TIMEOUT_NANOS;
+        while (applied.get() < target && consumer != null)
+        {
+            if (System.nanoTime() - deadline > 0)
+            {
+                log.warn("*** PIPELINE *** Timed out waiting for {} raid outcomes to be recorded", target - applied.get());
+                return;
+            }
+            LockSupport.unpark(consumer);
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+    }
+
+    public void completion(RaidType raidType, RaidContext context)
+    {
+        publish(Kind.COMPLETION, raidType, context.getTeamSize(), context.getMode().ordinal(), context.getInvocation(), 0);
+    }
+
+    public void personalUnique(RaidType raidType)
+    {
+        publish(Kind.PERSONAL_UNIQUE, raidType, 0, 0, 0, 0);
+    }
+
+    public void teamUnique(RaidType raidType)
+    {
+        publish(Kind.TEAM_UNIQUE, raidType, 0, 0, 0, 0);
+    }
+
+    /**
+     * A completion without a purple, only counted in the metrics
+     */
+    public void noUnique(RaidType raidType)
+    {
+        publish(Kind.NO_UNIQUE, raidType, 0, 0, 0, 0);
+    }
+
+    public void uniqueItem(RaidType raidType, UniqueItem item)
+    {
+        publish(Kind.UNIQUE_ITEM, raidType, 0, 0, 0, item.ordinal());
+    }
+
+    /**
+     * Pack an event as kind (4 bits), raid (4), item (8), team size (8), mode (4) and raid level (16)
+     */
+    private void publish(Kind kind, RaidType raidType, int teamSize, int mode, int invocation, int item)
+    {
+        long event = kind.ordinal()
+            | (long) raidType.ordinal() << 4
+            | (long) (item & 0xFF) << 8
+            | (long) (teamSize & 0xFF) << 16
+            | (long) (mode & 0xF) << 24
+            | (long) (invocation & 0xFFFF) << 28;
+
+        long t = tail.get();
+        if (t - head.get() >= CAPACITY)
+        {
+            log.warn("*** PIPELINE *** Ring is full, waiting for the recorded outcomes to drain");
+            do
+            {
+                Thread thread = consumer;
+                if (thread == null)
+                {
+                    drain();
+                }
+                else
+                {
+                    LockSupport.unpark(thread);
+                    LockSupport.parkNanos(this, FULL_PARK_NANOS);
+                }
+            }
+            while (t - head.get() >= CAPACITY);
+        }
+
+        ring[(int) (t & MASK)] = event;
+        tail.set(t + 1);
+
+        Thread thread = consumer;
+        if (thread == null)
+        {
+            drain();
+        }
+        else
+        {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    private void consume()
+    {
+        while (running || applied.get() < tail.get())
+        {
+            if (!drain())
+            {
+                LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+            }
+        }
+    }
+
+    /**
+     * Apply everything in the ring as one batch
+     * @return false if the ring was empty
+     */
+    private boolean drain()
+    {
+        synchronized (drainLock)
+        {
+            long h = head.get();
+            long t = tail.get();
+            if (h == t)
+            {
+                return false;
+            }
+
+            int count = (int) (t - h);
+            for (int i = 0; i < count; i++)
+            {
+                batch[i] = ring[(int) ((h + i) & MASK)];
+            }
+            // The slots are copied out, the producer may reuse them while the batch is applied
+            head.set(t);
+
+            try
+            {
+                apply(batch, count);
+            }
+            catch (RuntimeException e)
+            {
+                log.error("*** PIPELINE *** Could not record {} raid outcomes", count, e);
+            }
+            applied.set(t);
+            return true;
+        }
+    }
+
+    /**
+     * Record a batch of events: aggregates and journal with a single save, then metrics, then one UI refresh
+     */
+    private void apply(long[] events, int count)
+    {
+        dryRateManager.applyBatch(() ->
+        {
+            for (int i = 0; i < count; i++)
+            {
+                record(events[i]);
+            }
+        });
+
+        for (int i = 0; i < count; i++)
+        {
+            long event = events[i];
+            metrics.decision(RAID_TYPES[(int) (event >>> 4 & 0xF)], KINDS[(int) (event & 0xF)].decision);
+        }
+
+        RaidDetector.UIUpdateCallback callback = uiUpdateCallback;
+        if (callback != null)
+        {
+            callback.updateUI();
+        }
+    }
+
+    private void record(long event)
+    {
+        Kind kind = KINDS[(int) (event & 0xF)];
+        RaidType raidType = RAID_TYPES[(int) (event >>> 4 & 0xF)];
+        switch (kind)
+        {
+            case COMPLETION:
+                RaidContext context = new RaidContext((int) (event >>> 16 & 0xFF), MODES[(int) (event >>> 24 & 0xF)],
+                    (int) (event >>> 28 & 0xFFFF));
+                dryRateManager.handleRaidCompletion(raidType, context);
+                break;
+            case PERSONAL_UNIQUE:
+                dryRateManager.handleUniqueDropReceived(raidType);
+                break;
+            case TEAM_UNIQUE:
+                dryRateManager.handleTeamUniqueDropReceived(raidType);
+                break;
+            case UNIQUE_ITEM:
+                dryRateManager.handleUniqueItemReceived(raidType, ITEMS[(int) (event >>> 8 & 0xFF)]);
+                break;
+            default:
+                break;
+        }
+    }
+}
@@ -0,0 +1,389 @@
+package com.dryrate.store;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Crash-safe key/value file holding one account's data.
+ * Values are appended as checksummed records and the last record of a key wins, so a write
+ * cut short by a crash can only damage the tail, which is cut off the next time the file is read.
+ * A record damaged further up is skipped and the file rewritten without it, the records after it are kept.
+ * Once most of the file is superseded records it is rewritten to a temp file and renamed over the original.
+ */
+@Slf4j
+public class LocalDataStore
+{
+    private static final int MAGIC = 0x44525331; // "DRS1"
+    private static final int FILE_HEADER_SIZE = 4;
+    private static final int RECORD_HEADER_SIZE = 8; // payload length + CRC32 of the payload
+    private static final int MAX_RECORD_SIZE = 64 * 1024 * 1024;
+    private static final long COMPACT_MIN_SIZE = 256 * 1024;
+
+    private final Path file;
+    private final Path tempFile;
+    private final Path lockFile;
+
+    // Encoded size of each key's latest value, to know how much of the file is still live
+    private final Map<String, Integer> entrySizes = new HashMap<>();
+    private long fileSize;
+
+    // Set when another client wrote to the file since we last read it
+    private boolean changedExternally;
+
+    public LocalDataStore(Path file)
+    {
+        this.file = file;
+        this.tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+        this.lockFile = file.resolveSibling(file.getFileName() + ".lock");
+    }
+
+    public Path getFile()
+    {
+        return file;
+    }
+
+    /**
+     * Read the latest value of every key, cutting off a torn tail left by an interrupted write
+     */
+    public synchronized Map<String, String> read() throws IOException
+    {
+        Map<String, String> values = new HashMap<>();
+        entrySizes.clear();
+        fileSize = 0;
+        changedExternally = false;
+        if (!Files.exists(file))
+        {
+            return values;
+        }
+
+        boolean damaged;
+        try (FileChannel lockChannel = openLock(); FileLock lock = lockChannel.lock();
+             FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE))
+        {
+            damaged = scan(channel, values);
+        }
+        if (damaged)
+        {
+            // Rewrite the file so the damaged header is not stepped over on every read
+            log.warn("Rewriting {} without its damaged records", file);
+            compact();
+        }
+        return values;
+    }
+
+    /**
+     * Read the latest value of every key if another client wrote to the file since we last read it
+     * @return the values, or null if the file only holds what we read or wrote ourselves
+     */
+    public synchronized Map<String, String> readIfChanged() throws IOException
+    {
+        if (!changedExternally && (!Files.exists(file) || Files.size(file) == fileSize))
+        {
+            return null;
+        }
+
+        return read();
+    }
+
+    /**
+     * Durably append new values for the given keys, as one record
+     */
+    public synchronized void write(Map<String, String> entries) throws IOException
+    {
+        ByteBuffer records = encode(entries);
+        Files.createDirectories(file.getParent());
+
+        try (FileChannel lockChannel = openLock(); FileLock lock = lockChannel.lock();
+             FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE))
+        {
+            long size = channel.size();
+            if (size != fileSize)
+            {
+                changedExternally = true;
+            }
+            if (size < FILE_HEADER_SIZE)
+            {
+                // A new file, or one torn while its header was written
+                channel.truncate(0);
+                writeFully(channel, header(), 0);
+                size = FILE_HEADER_SIZE;
+            }
+            writeFully(channel, records, size);
+            channel.force(true);
+            fileSize = size + records.capacity();
+        }
+
+        for (Map.Entry<String, String> entry : entries.entrySet())
+        {
+            entrySizes.put(entry.getKey(), entrySize(entry.getKey(), entry.getValue()));
+        }
+
+        long liveBytes = FILE_HEADER_SIZE + RECORD_HEADER_SIZE + entrySizes.values().stream().mapToLong(Integer::longValue).sum();
+        if (fileSize > COMPACT_MIN_SIZE && fileSize > 2 * liveBytes)
+        {
+            compact();
+        }
+    }
+
+    /**
+     * Rewrite the file with only the latest record of each key: written to a temp file,
+     * synced, then atomically renamed over the original so a crash leaves either the old or the new file
+     */
+    public synchronized void compact() throws IOException
+    {
+        try (FileChannel lockChannel = openLock(); FileLock lock = lockChannel.lock())
+        {
+            Map<String, String> values = new HashMap<>();
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE))
+            {
+                // Another client may have appended since we last read, so compact what is on disk
+                scan(channel, values);
+            }
+
+            ByteBuffer records = encode(values);
+            try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE))
+            {
+                writeFully(channel, header(), 0);
+                writeFully(channel, records, FILE_HEADER_SIZE);
+                channel.force(true);
+            }
+
+            long before = fileSize;
+            Files.move(tempFile, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            syncDirectory();
+            fileSize = FILE_HEADER_SIZE + records.capacity();
+            log.debug("Compacted {} from {} to {} bytes", file.getFileName(), before, fileSize);
+        }
+    }
+
+    /**
+     * Read every record into values, skipping corrupt records and truncating a torn tail
+     * @return whether a record header in the middle of the file was damaged
+     */
+    private boolean scan(FileChannel channel, Map<String, String> values) throws IOException
+    {
+        long size = channel.size();
+        if (size > Integer.MAX_VALUE)
+        {
+            throw new IOException("Data file too large: " + file);
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate((int) size);
+        while (buffer.hasRemaining() && channel.read(buffer, buffer.position()) >= 0)
+        {
+            // keep reading until the whole file is in the buffer
+        }
+        buffer.flip();
+
+        entrySizes.clear();
+        if (size < FILE_HEADER_SIZE)
+        {
+            // Torn while the header was written, nothing was ever committed
+            truncate(channel, 0, size);
+            fileSize = 0;
+            return false;
+        }
+        if (buffer.getInt() != MAGIC)
+        {
+            throw new IOException("Not a dry rate data file: " + file);
+        }
+
+        CRC32 crc = new CRC32();
+        long validEnd = FILE_HEADER_SIZE;
+        int skipped = 0;
+        boolean damagedHeader = false;
+        while (buffer.remaining() >= RECORD_HEADER_SIZE)
+        {
+            int length = buffer.getInt();
+            int checksum = buffer.getInt();
+            if (length < 0 || length > MAX_RECORD_SIZE || length > buffer.remaining())
+            {
+                int next = nextRecord(buffer, buffer.position() - RECORD_HEADER_SIZE + 1, crc);
+                if (next < 0)
+                {
+                    // Nothing intact follows, so this is the last record and a write was cut short
+                    break;
+                }
+
+                // A damaged header in the middle of the file, carry on from the next intact record
+                skipped++;
+                damagedHeader = true;
+                buffer.position(next);
+                continue;
+            }
+
+            crc.reset();
+            crc.update(buffer.array(), buffer.position(), length);
+            buffer.position(buffer.position() + length);
+            if ((int) crc.getValue() != checksum)
+            {
+                if (!buffer.hasRemaining())
+                {
+                    // The last record is torn, the values it was replacing are still in earlier records
+                    break;
+                }
+
+                // Damaged in place rather than torn, the records after it are still good
+                skipped++;
+                validEnd = buffer.position();
+                continue;
+            }
+
+            decode(buffer.array(), buffer.position() - length, length, values);
+            validEnd = buffer.position();
+        }
+
+        if (skipped > 0)
+        {
+            log.warn("Skipped {} corrupt records in {}", skipped, file);
+        }
+        truncate(channel, validEnd, size);
+        fileSize = validEnd;
+        return damagedHeader;
+    }
+
+    /**
+     * Position of the first intact record at or after from: a sane length that fits the file and a matching checksum
+     * @return -1 if there is none
+     */
+    private static int nextRecord(ByteBuffer buffer, int from, CRC32 crc)
+    {
+        int end = buffer.limit();
+        for (int position = from; position + RECORD_HEADER_SIZE < end; position++)
+        {
+            int length = buffer.getInt(position);
+            if (length <= 0 || length > end - position - RECORD_HEADER_SIZE)
+            {
+                continue;
+            }
+
+            crc.reset();
+            crc.update(buffer.array(), position + RECORD_HEADER_SIZE, length);
+            if ((int) crc.getValue() == buffer.getInt(position + 4))
+            {
+                return position;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Decode the entries of one record into values
+     */
+    private void decode(byte[] bytes, int offset, int length, Map<String, String> values)
+    {
+        ByteBuffer payload = ByteBuffer.wrap(bytes, offset, length);
+        while (payload.hasRemaining())
+        {
+            String key = readString(payload, payload.getShort() & 0xFFFF);
+            String value = readString(payload, payload.getInt());
+            values.put(key, value);
+            entrySizes.put(key, entrySize(key, value));
+        }
+    }
+
+    private static String readString(ByteBuffer buffer, int length)
+    {
+        String value = new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+
+    private void truncate(FileChannel channel, long validEnd, long size) throws IOException
+    {
+        if (validEnd >= size)
+        {
+            return;
+        }
+
+        log.warn("Recovered {} by cutting off {} torn bytes", file, size - validEnd);
+        channel.truncate(validEnd);
+        channel.force(true);
+    }
+
+    /**
+     * Encode entries as a single record, so a write lands either completely or not at all
+     */
+    private static ByteBuffer encode(Map<String, String> entries)
+    {
+        int length = 0;
+        for (Map.Entry<String, String> entry : entries.entrySet())
+        {
+            length += entrySize(entry.getKey(), entry.getValue());
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_HEADER_SIZE + length);
+        buffer.putInt(length);
+        buffer.putInt(0);
+        for (Map.Entry<String, String> entry : entries.entrySet())
+        {
+            byte[] key = entry.getKey().getBytes(StandardCharsets.UTF_8);
+            byte[] value = entry.getValue().getBytes(StandardCharsets.UTF_8);
+            buffer.putShort((short) key.length);
+            buffer.put(key);
+            buffer.putInt(value.length);
+            buffer.put(value);
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), RECORD_HEADER_SIZE, length);
+        buffer.putInt(4, (int) crc.getValue());
+        buffer.flip();
+        return buffer;
+    }
+
+    private static int entrySize(String key, String value)
+    {
+        return 2 + key.getBytes(StandardCharsets.UTF_8).length + 4 + value.getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    private static ByteBuffer header()
+    {
+        ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE);
+        header.putInt(MAGIC);
+        header.flip();
+        return header;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException
+    {
+        while (buffer.hasRemaining())
+        {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private FileChannel openLock() throws IOException
+    {
+        Files.createDirectories(lockFile.getParent());
+        return FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+    }
+
+    /**
+     * Make the rename itself durable, not supported on every platform
+     */
+    private void syncDirectory()
+    {
+        try (FileChannel directory = FileChannel.open(file.getParent(), StandardOpenOption.READ))
+        {
+            directory.force(true);
+        }
+        catch (IOException e)
+        {
+            log.debug("Could not sync directory {}: {}", file.getParent(), e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package com.dryrate.sync;
+
+import com.dryrate.AggregateRebuilder;
+import com.dryrate.DryRateData;
+import com.dryrate.RaidType;
+import com.dryrate.history.RaidHistory;
+import com.dryrate.history.RaidRecord;
+import com.dryrate.history.StoredHistory;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Merges another client's copy of a raid's data into ours
+ * Counters merge per instance slot, records merge as a set keyed by ID with the newest version winning,
+ * undone records stay removed and the copy with the newest full reset wins outright.
+ * Records up to the raids we folded into the baseline are ignored, they are already counted there.
+ * The merge is commutative and idempotent, so clients converge whatever order they save in.
+ */
+public final class DryRateMerger
+{
+    private DryRateMerger()
+    {
+    }
+
+    /**
+     * Outcome of a merge, data and history are the local objects when nothing changed
+     */
+    public static final class Result
+    {
+        private final DryRateData data;
+        private final RaidHistory history;
+        private final boolean changed;
+
+        private Result(DryRateData data, RaidHistory history, boolean changed)
+        {
+            this.data = data;
+            this.history = history;
+            this.changed = changed;
+        }
+
+        public DryRateData getData()
+        {
+            return data;
+        }
+
+        public RaidHistory getHistory()
+        {
+            return history;
+        }
+
+        public boolean isChanged()
+        {
+            return changed;
+        }
+    }
+
+    public static Result merge(RaidType raidType, DryRateData local, RaidHistory localHistory,
+        DryRateData remote, StoredHistory remoteHistory, boolean teamDropResets)
+    {
+        if (remote == null || remote.getResetEpoch() < local.getResetEpoch())
+        {
+            return new Result(local, localHistory, false);
+        }
+
+        if (remote.getResetEpoch() > local.getResetEpoch())
+        {
+            // The other client fully reset this raid after our last reset, its copy replaces ours
+            RaidHistory history = new RaidHistory(sorted(remoteHistory.getRecords()), remoteHistory.getRemovedIds());
+            remote.ensureCounters();
+            if (remote.getBaseline() == null)
+            {
+                remote.setBaseline(local.getBaseline());
+            }
+            DryRateData data = AggregateRebuilder.rebuild(AggregateRebuilder.capture(raidType, remote, history), teamDropResets);
+            return new Result(data, history, true);
+        }
+
+        remote.ensureCounters();
+        boolean countersChanged = local.getCompletionCounter().merge(remote.getCompletionCounter());
+        countersChanged |= local.getUniqueCounter().merge(remote.getUniqueCounter());
+
+        long foldedThrough = local.getBaseline() != null ? local.getBaseline().getFoldedThrough() : 0;
+        if (remoteHistory == null || !bringsChanges(localHistory, remoteHistory, foldedThrough))
+        {
+            // Nothing to merge into the history, so it is not read in full
+            if (countersChanged)
+            {
+                local.syncTotals();
+            }
+            return new Result(local, localHistory, countersChanged);
+        }
+
+        Set<String> removedIds = new HashSet<>(localHistory.getRemovedIds());
+        boolean historyChanged = removedIds.addAll(remoteHistory.getRemovedIds());
+
+        Map<String, Integer> indexById = new HashMap<>();
+        List<RaidRecord> merged = new ArrayList<>(localHistory.size());
+        for (RaidRecord record : localHistory.getRecords())
+        {
+            if (record.getId() != null && removedIds.contains(record.getId()))
+            {
+                historyChanged = true;
+                continue;
+            }
+            if (record.getId() != null)
+            {
+                indexById.put(record.getId(), merged.size());
+            }
+            merged.add(record);
+        }
+
+        for (RaidRecord record : remoteHistory.getRecords())
+        {
+            if (record.getId() == null || removedIds.contains(record.getId()) || record.getTimestamp() <= foldedThrough)
+            {
+                continue;
+            }
+
+            Integer index = indexById.get(record.getId());
+            if (index == null)
+            {
+                indexById.put(record.getId(), merged.size());
+                merged.add(record);
+                historyChanged = true;
+            }
+            else if (merged.get(index).getVersion() < record.getVersion())
+            {
+                merged.set(index, record);
+                historyChanged = true;
+            }
+        }
+
+        if (!historyChanged)
+        {
+            if (countersChanged)
+            {
+                local.syncTotals();
+            }
+            return new Result(local, localHistory, countersChanged);
+        }
+
+        RaidHistory history = localHistory.withRecords(sorted(merged), removedIds);
+        DryRateData data = AggregateRebuilder.rebuild(AggregateRebuilder.capture(raidType, local, history), teamDropResets);
+        return new Result(data, history, true);
+    }
+
+    /**
+     * Whether the other copy has undone records or record versions that ours lacks
+     */
+    private static boolean bringsChanges(RaidHistory localHistory, StoredHistory remoteHistory, long foldedThrough)
+    {
+        if (!localHistory.getRemovedIds().containsAll(remoteHistory.getRemovedIds()))
+        {
+            return true;
+        }
+
+        for (RaidRecord record : remoteHistory.getRecords())
+        {
+            if (record.getId() == null || localHistory.getRemovedIds().contains(record.getId())
+                || record.getTimestamp() <= foldedThrough)
+            {
+                continue;
+            }
+
+            RaidRecord ours = localHistory.find(record.getId(), record.getTimestamp());
+            if (ours == null || ours.getVersion() < record.getVersion())
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static List<RaidRecord> sorted(List<RaidRecord> records)
+    {
+        List<RaidRecord> copy = new ArrayList<>(records);
+        copy.sort(Comparator.comparingLong(RaidRecord::getTimestamp)
+            .thenComparing(RaidRecord::getId, Comparator.nullsFirst(Comparator.naturalOrder())));
+        return copy;
+    }
+}
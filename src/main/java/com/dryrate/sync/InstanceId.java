@@ -0,0 +1,125 @@
+package com.dryrate.sync;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Identity of this client for mergeable counters and record IDs
+ * The ID is kept in a slot file of the install and reused after a restart, so counters gain a slot per install
+ * rather than per run. Clients running side by side each lock a different slot, so they never share an ID.
+ */
+@Slf4j
+public final class InstanceId
+{
+    /**
+     * Counter slot for totals recorded before counters were per-instance
+     */
+    public static final String LEGACY = "legacy";
+
+    // Slot files tried before giving up on a lasting ID, one per client running at the same time
+    private static final int MAX_SLOTS = 16;
+
+    private static volatile String id = newId();
+    private static final AtomicLong SEQUENCE = new AtomicLong(System.currentTimeMillis());
+
+    // Held for the life of the process, closing it would release the slot
+    private static FileChannel slotChannel;
+
+    private InstanceId()
+    {
+    }
+
+    public static String get()
+    {
+        return id;
+    }
+
+    /**
+     * Take the ID of the first slot in the directory no other running client holds, creating it if the slot is new.
+     * Keeps the ID of this run if every slot is taken or the directory cannot be used. Only the first call has an effect.
+     */
+    public static synchronized void claim(Path directory)
+    {
+        if (slotChannel != null)
+        {
+            return;
+        }
+
+        try
+        {
+            Files.createDirectories(directory);
+            for (int slot = 0; slot < MAX_SLOTS; slot++)
+            {
+                FileChannel channel = FileChannel.open(directory.resolve("instance-" + slot + ".id"),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                FileLock lock;
+                try
+                {
+                    lock = channel.tryLock();
+                }
+                catch (OverlappingFileLockException e)
+                {
+                    lock = null;
+                }
+                if (lock == null)
+                {
+                    channel.close();
+                    continue;
+                }
+
+                String stored = read(channel);
+                if (stored.isEmpty())
+                {
+                    channel.write(ByteBuffer.wrap(id.getBytes(StandardCharsets.UTF_8)), 0);
+                    channel.force(true);
+                }
+                else
+                {
+                    id = stored;
+                }
+                slotChannel = channel;
+                log.debug("Using instance ID {} from slot {}", id, slot);
+                return;
+            }
+            log.warn("Every instance slot in {} is taken, counting under {} for this run", directory, id);
+        }
+        catch (IOException e)
+        {
+            log.warn("Could not claim an instance slot in {}, counting under {} for this run", directory, id, e);
+        }
+    }
+
+    /**
+     * Globally unique ID for a new journal record
+     */
+    public static String nextRecordId()
+    {
+        return id + ":" + Long.toString(SEQUENCE.incrementAndGet(), 36);
+    }
+
+    private static String read(FileChannel channel) throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(channel.size(), 64));
+        while (buffer.hasRemaining() && channel.read(buffer, buffer.position()) >= 0)
+        {
+            // keep reading until the whole ID is in the buffer
+        }
+        return new String(buffer.array(), 0, buffer.position(), StandardCharsets.UTF_8).trim();
+    }
+
+    private static String newId()
+    {
+        return UUID.randomUUID().toString().substring(0, 8);
+    }
+}
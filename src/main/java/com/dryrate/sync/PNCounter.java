@@ -0,0 +1,98 @@
+package com.dryrate.sync;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Increment/decrement counter built from two per-instance grow-only counters
+ * Each instance only ever raises its own slots, so merging two copies is a per-slot maximum
+ * and concurrent clients converge regardless of the order their writes are seen in.
+ */
+public class PNCounter
+{
+    private Map<String, Integer> increments;
+    private Map<String, Integer> decrements;
+
+    public PNCounter()
+    {
+        this.increments = new HashMap<>();
+        this.decrements = new HashMap<>();
+    }
+
+    public PNCounter(PNCounter other)
+    {
+        this.increments = new HashMap<>(other.increments);
+        this.decrements = new HashMap<>(other.decrements);
+    }
+
+    public int value()
+    {
+        int value = 0;
+        for (int count : increments.values())
+        {
+            value += count;
+        }
+        for (int count : decrements.values())
+        {
+            value -= count;
+        }
+        return value;
+    }
+
+    public boolean isEmpty()
+    {
+        return increments.isEmpty() && decrements.isEmpty();
+    }
+
+    /**
+     * Add delta to the counter through the given instance's slots
+     */
+    public void add(String instance, int delta)
+    {
+        if (delta > 0)
+        {
+            increments.merge(instance, delta, Integer::sum);
+        }
+        else if (delta < 0)
+        {
+            decrements.merge(instance, -delta, Integer::sum);
+        }
+    }
+
+    /**
+     * Move the counter to the target value through the given instance's slots
+     */
+    public void adjustTo(String instance, int target)
+    {
+        add(instance, target - value());
+    }
+
+    /**
+     * Merge another copy of this counter into this one
+     * @return true if this counter changed
+     */
+    public boolean merge(PNCounter other)
+    {
+        if (other == null)
+        {
+            return false;
+        }
+        boolean changed = mergeSlots(increments, other.increments);
+        return mergeSlots(decrements, other.decrements) || changed;
+    }
+
+    private static boolean mergeSlots(Map<String, Integer> slots, Map<String, Integer> otherSlots)
+    {
+        boolean changed = false;
+        for (Map.Entry<String, Integer> entry : otherSlots.entrySet())
+        {
+            Integer current = slots.get(entry.getKey());
+            if (current == null || current < entry.getValue())
+            {
+                slots.put(entry.getKey(), entry.getValue());
+                changed = true;
+            }
+        }
+        return changed;
+    }
+}
@@ -0,0 +1,149 @@
+package com.dryrate;
+
+import com.dryrate.history.RaidHistory;
+import com.dryrate.history.RaidOutcome;
+import com.dryrate.history.RaidRecord;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AggregateRebuilderTest
+{
+    @Test
+    public void rebuildMatchesReplayUnderBothPolicies()
+    {
+        RaidHistory history = randomHistory(new Random(29), 2000);
+        DryRateData data = new DryRateData();
+
+        for (boolean teamDropResets : new boolean[] {false, true})
+        {
+            DryRateData rebuilt = AggregateRebuilder.rebuild(AggregateRebuilder.capture(RaidType.TOB, data, history), teamDropResets);
+
+            List<Integer> previous = new ArrayList<>();
+            int streak = 0;
+            int[] itemCounts = new int[UniqueItem.forRaid(RaidType.TOB).length];
+            long lastDropTime = 0;
+            for (int i = 0; i < history.size(); i++)
+            {
+                RaidRecord record = history.get(i);
+                streak++;
+                boolean personal = record.getOutcome() == RaidOutcome.PERSONAL_UNIQUE;
+                if (personal || (teamDropResets && record.getOutcome() == RaidOutcome.TEAM_UNIQUE))
+                {
+                    previous.add(streak);
+                    streak = 0;
+                }
+                if (personal)
+                {
+                    lastDropTime = record.getTimestamp();
+                }
+                if (record.isStreakReset())
+                {
+                    streak = 0;
+                }
+                if (record.getItem() != null)
+                {
+                    itemCounts[record.getItem().getIndex()]++;
+                }
+            }
+
+            assertEquals(streak, rebuilt.getCurrentDryStreak());
+            assertEquals(previous, rebuilt.getPreviousDryStreaks());
+            assertEquals(lastDropTime, rebuilt.getLastDropTime());
+            for (UniqueItem item : UniqueItem.forRaid(RaidType.TOB))
+            {
+                assertEquals(itemCounts[item.getIndex()], rebuilt.getUniqueItemCount(item));
+            }
+        }
+    }
+
+    @Test
+    public void rebuildContinuesFromBaseline()
+    {
+        StreakBaseline baseline = new StreakBaseline();
+        baseline.setCompletions(10);
+        baseline.setDryStreak(4);
+        baseline.getPreviousDryStreaks().add(6);
+        DryRateData data = new DryRateData();
+        data.setBaseline(baseline);
+
+        RaidHistory history = new RaidHistory();
+        history.append(record(1, RaidOutcome.NO_UNIQUE));
+        history.append(record(2, RaidOutcome.PERSONAL_UNIQUE));
+        history.append(record(3, RaidOutcome.NO_UNIQUE));
+
+        DryRateData rebuilt = AggregateRebuilder.rebuild(AggregateRebuilder.capture(RaidType.TOB, data, history), false);
+        assertEquals(1, rebuilt.getCurrentDryStreak());
+        assertEquals(List.of(6, 6), rebuilt.getPreviousDryStreaks());
+    }
+
+    @Test
+    public void inputGoesStaleOnAnyChange()
+    {
+        RaidHistory history = new RaidHistory();
+        history.append(record(1, RaidOutcome.NO_UNIQUE));
+        history.append(record(2, RaidOutcome.NO_UNIQUE));
+
+        AggregateRebuilder.Input input = AggregateRebuilder.capture(RaidType.TOB, new DryRateData(), history);
+        assertFalse(input.isStale(history));
+
+        // An edit keeps the size, the capture must still be seen as out of date
+        history.setOutcome(0, RaidOutcome.PERSONAL_UNIQUE);
+        assertTrue(input.isStale(history));
+
+        input = AggregateRebuilder.capture(RaidType.TOB, new DryRateData(), history);
+        history.removeLast();
+        history.append(record(3, RaidOutcome.NO_UNIQUE));
+        assertEquals(input.size(), history.size());
+        assertTrue(input.isStale(history));
+    }
+
+    @Test
+    public void captureIsUnaffectedByLaterChanges()
+    {
+        RaidHistory history = randomHistory(new Random(30), 500);
+        DryRateData expected = AggregateRebuilder.rebuild(AggregateRebuilder.capture(RaidType.TOB, new DryRateData(), history), false);
+
+        // Changed after the capture, as the client thread can while the replay runs on the store thread
+        AggregateRebuilder.Input input = AggregateRebuilder.capture(RaidType.TOB, new DryRateData(), history);
+        history.setOutcome(history.size() - 1, RaidOutcome.PERSONAL_UNIQUE);
+        history.append(record(Long.MAX_VALUE, RaidOutcome.PERSONAL_UNIQUE));
+
+        DryRateData rebuilt = AggregateRebuilder.rebuild(input, false);
+        assertEquals(expected.getCurrentDryStreak(), rebuilt.getCurrentDryStreak());
+        assertEquals(expected.getPreviousDryStreaks(), rebuilt.getPreviousDryStreaks());
+        assertEquals(expected.getLastDropTime(), rebuilt.getLastDropTime());
+    }
+
+    static RaidHistory randomHistory(Random random, int size)
+    {
+        RaidOutcome[] outcomes = RaidOutcome.values();
+        UniqueItem[] items = UniqueItem.forRaid(RaidType.TOB);
+        RaidHistory history = new RaidHistory();
+        long time = 1_000_000L;
+        for (int i = 0; i < size; i++)
+        {
+            time += random.nextInt(3) == 0 ? 0 : 1 + random.nextInt(100_000);
+            RaidRecord record = record(time, outcomes[random.nextInt(outcomes.length)]);
+            record.setId("t:" + i);
+            if (record.getOutcome() == RaidOutcome.PERSONAL_UNIQUE)
+            {
+                record.setItem(items[random.nextInt(items.length)]);
+            }
+            record.setStreakReset(random.nextInt(40) == 0);
+            history.append(record);
+        }
+        return history;
+    }
+
+    static RaidRecord record(long timestamp, RaidOutcome outcome)
+    {
+        return new RaidRecord("r" + timestamp, timestamp, outcome, RaidContext.UNKNOWN);
+    }
+}
@@ -0,0 +1,202 @@
+package com.dryrate;
+
+import com.dryrate.detectors.CoxRaidDetector;
+import com.dryrate.detectors.CreditedInstances;
+import com.dryrate.detectors.ToaRaidDetector;
+import com.dryrate.detectors.TobRaidDetector;
+import com.dryrate.diagnostics.Diagnostics;
+import com.dryrate.metrics.DryRateMetrics;
+import com.dryrate.pipeline.OutcomePipeline;
+import net.runelite.api.Client;
+import net.runelite.api.GameObject;
+import net.runelite.api.Player;
+import net.runelite.api.WorldView;
+import net.runelite.api.coords.LocalPoint;
+import net.runelite.api.events.GameObjectSpawned;
+import net.runelite.api.events.GameTick;
+import net.runelite.api.events.VarbitChanged;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Drives the event handlers with a stub client outside any raid and fails if they allocate per event.
+ * The stubs only answer no-argument calls with pre-boxed values, so everything they allocate is a fixed overhead.
+ */
+public class DryRatePluginAllocationTest
+{
+    private static final int WARMUP_EVENTS = 200_000;
+    private static final int EVENTS = 1_000_000;
+
+    // Room for the counter reads themselves and stray JIT work, far below one byte per event
+    private static final long SLACK_BYTES = 16 * 1024;
+
+    // Lumbridge, region 12850
+    private static final int BASE_X = 3176;
+    private static final int BASE_Y = 3176;
+    private static final int SCENE_X = 52;
+    private static final int SCENE_Y = 52;
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private DryRatePlugin plugin;
+    private DryRateMetrics metrics;
+    private GameObjectSpawned spawned;
+    private VarbitChanged varbitChanged;
+    private GameTick tick;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        LocalPoint localPoint = new LocalPoint(SCENE_X << 7, SCENE_Y << 7);
+        Player player = stub(Player.class, (method) -> "getLocalLocation".equals(method) ? localPoint : null);
+
+        Integer baseX = BASE_X;
+        Integer baseY = BASE_Y;
+        Integer plane = 0;
+        WorldView worldView = stub(WorldView.class, (method) ->
+        {
+            switch (method)
+            {
+                case "isInstance":
+                    return Boolean.FALSE;
+                case "getBaseX":
+                    return baseX;
+                case "getBaseY":
+                    return baseY;
+                case "getPlane":
+                    return plane;
+                default:
+                    return null;
+            }
+        });
+
+        Client client = stub(Client.class, (method) ->
+        {
+            switch (method)
+            {
+                case "getLocalPlayer":
+                    return player;
+                case "getTopLevelWorldView":
+                    return worldView;
+                default:
+                    return null;
+            }
+        });
+
+        Integer objectId = 1276;
+        GameObject gameObject = stub(GameObject.class, (method) -> "getId".equals(method) ? objectId : null);
+
+        metrics = new DryRateMetrics();
+        Diagnostics diagnostics = new Diagnostics();
+        CreditedInstances creditedInstances = new CreditedInstances();
+        OutcomePipeline pipeline = new OutcomePipeline(null, metrics);
+        plugin = new DryRatePlugin();
+        set(plugin, "client", client);
+        set(plugin, "metrics", metrics);
+        set(plugin, "diagnostics", diagnostics);
+        set(plugin, "creditedInstances", creditedInstances);
+        set(plugin, "tobDetector", new TobRaidDetector(client, null, pipeline, diagnostics, creditedInstances));
+        set(plugin, "toaDetector", new ToaRaidDetector(client, null, pipeline, diagnostics, creditedInstances));
+        set(plugin, "coxDetector", new CoxRaidDetector(client, pipeline, diagnostics, creditedInstances));
+
+        Method initializeDetectorMapping = DryRatePlugin.class.getDeclaredMethod("initializeDetectorMapping");
+        initializeDetectorMapping.setAccessible(true);
+        initializeDetectorMapping.invoke(plugin);
+
+        spawned = new GameObjectSpawned();
+        spawned.setGameObject(gameObject);
+        varbitChanged = new VarbitChanged();
+        varbitChanged.setVarbitId(6442);
+        varbitChanged.setValue(1);
+        tick = instantiate(GameTick.class);
+    }
+
+    @Test
+    public void handlersDoNotAllocateOutsideRaids()
+    {
+        assertNoAllocation();
+    }
+
+    @Test
+    public void instrumentedHandlersDoNotAllocateOutsideRaids()
+    {
+        metrics.setEnabled(true);
+        metrics.setTickBudgetMicros(1_000_000);
+        assertNoAllocation();
+    }
+
+    private void assertNoAllocation()
+    {
+        drive(WARMUP_EVENTS);
+
+        long threadId = Thread.currentThread().getId();
+        long before = THREADS.getThreadAllocatedBytes(threadId);
+        drive(EVENTS);
+        long allocated = THREADS.getThreadAllocatedBytes(threadId) - before;
+
+        assertTrue("Handlers allocated " + allocated + " bytes over " + EVENTS + " events", allocated <= SLACK_BYTES);
+    }
+
+    /**
+     * Send events in the proportions a client sees them, mostly spawns and varbits with a tick in between
+     */
+    private void drive(int events)
+    {
+        for (int i = 0; i < events; i++)
+        {
+            switch (i % 10)
+            {
+                case 0:
+                    plugin.onGameTick(tick);
+                    break;
+                case 1:
+                case 2:
+                case 3:
+                    plugin.onVarbitChanged(varbitChanged);
+                    break;
+                default:
+                    plugin.onGameObjectSpawned(spawned);
+                    break;
+            }
+        }
+    }
+
+    private interface Answer
+    {
+        Object answer(String method);
+    }
+
+    /**
+     * Proxy of an API interface, only no-argument methods are called on the hot path so no argument arrays are built
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> T stub(Class<T> type, Answer answer)
+    {
+        InvocationHandler handler = (proxy, method, args) -> answer.answer(method.getName());
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type}, handler);
+    }
+
+    private static void set(Object target, String name, Object value) throws ReflectiveOperationException
+    {
+        Field field = target.getClass().getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(target, value);
+    }
+
+    private static <T> T instantiate(Class<T> type) throws ReflectiveOperationException
+    {
+        Constructor<T> constructor = type.getDeclaredConstructor();
+        constructor.setAccessible(true);
+        return constructor.newInstance();
+    }
+}
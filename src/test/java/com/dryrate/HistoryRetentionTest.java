@@ -0,0 +1,80 @@
+package com.dryrate;
+
+import com.dryrate.history.RaidHistory;
+import com.dryrate.history.RaidOutcome;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class HistoryRetentionTest
+{
+    @Test
+    public void foldKeepsAggregatesUnderEitherSetting()
+    {
+        for (int seed = 0; seed < 20; seed++)
+        {
+            Random random = new Random(seed);
+            RaidHistory history = AggregateRebuilderTest.randomHistory(random, 400);
+            DryRateData data = new DryRateData();
+            DryRateData[] expected = new DryRateData[2];
+            for (int policy = 0; policy < 2; policy++)
+            {
+                expected[policy] = AggregateRebuilder.rebuild(AggregateRebuilder.capture(RaidType.TOB, data, history), policy == 1);
+            }
+
+            int count = HistoryRetention.foldCount(history, 50 + random.nextInt(300), 0, 0);
+            RaidHistory kept = HistoryRetention.fold(RaidType.TOB, data, history, count);
+            assertEquals(400 - count, kept.size());
+            assertEquals(count, data.getBaseline().getCompletions());
+
+            // The team drop setting may change after the fold, the baseline must hold up under both
+            for (int policy = 0; policy < 2; policy++)
+            {
+                DryRateData rebuilt = AggregateRebuilder.rebuild(AggregateRebuilder.capture(RaidType.TOB, data, kept), policy == 1);
+                assertEquals(expected[policy].getCurrentDryStreak(), rebuilt.getCurrentDryStreak());
+                assertEquals(expected[policy].getPreviousDryStreaks(), rebuilt.getPreviousDryStreaks());
+                assertEquals(expected[policy].getLastDropTime(), rebuilt.getLastDropTime());
+                for (UniqueItem item : UniqueItem.forRaid(RaidType.TOB))
+                {
+                    assertEquals(expected[policy].getUniqueItemCount(item), rebuilt.getUniqueItemCount(item));
+                    assertEquals(expected[policy].getUniqueItemLastDropAt(item), rebuilt.getUniqueItemLastDropAt(item));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void foldCountKeepsEitherLimit()
+    {
+        RaidHistory history = new RaidHistory();
+        long day = 24L * 60 * 60 * 1000;
+        for (int i = 0; i < 10; i++)
+        {
+            history.append(AggregateRebuilderTest.record(i * day, RaidOutcome.NO_UNIQUE));
+        }
+
+        assertEquals(0, HistoryRetention.foldCount(history, 0, 0, 10 * day));
+        assertEquals(6, HistoryRetention.foldCount(history, 4, 0, 10 * day));
+        assertEquals(7, HistoryRetention.foldCount(history, 0, 3, 10 * day));
+        // A raid within either limit is kept
+        assertEquals(6, HistoryRetention.foldCount(history, 4, 3, 10 * day));
+        assertEquals(0, HistoryRetention.foldCount(history, 20, 3, 10 * day));
+    }
+
+    @Test
+    public void foldCountNeverSplitsSharedTimestamps()
+    {
+        RaidHistory history = new RaidHistory();
+        history.append(AggregateRebuilderTest.record(1, RaidOutcome.NO_UNIQUE));
+        history.append(AggregateRebuilderTest.record(2, RaidOutcome.NO_UNIQUE));
+        history.append(AggregateRebuilderTest.record(2, RaidOutcome.PERSONAL_UNIQUE));
+        history.append(AggregateRebuilderTest.record(3, RaidOutcome.NO_UNIQUE));
+
+        int count = HistoryRetention.foldCount(history, 2, 0, 0);
+        assertEquals(1, count);
+        assertTrue(history.get(count).getTimestamp() != history.get(count - 1).getTimestamp());
+    }
+}
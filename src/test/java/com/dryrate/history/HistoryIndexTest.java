@@ -0,0 +1,223 @@
+package com.dryrate.history;
+
+import com.dryrate.RaidContext;
+import com.dryrate.RaidMode;
+import com.dryrate.UniqueItem;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class HistoryIndexTest
+{
+    private static final RaidOutcome[] OUTCOMES = RaidOutcome.values();
+    private static final RaidMode[] MODES = RaidMode.values();
+    private static final UniqueItem[] ITEMS = UniqueItem.values();
+
+    @Test
+    public void selectMatchesScan()
+    {
+        Random random = new Random(50);
+        RaidHistory history = new RaidHistory();
+        List<RaidRecord> expected = new ArrayList<>();
+        build(history, expected, random);
+
+        for (int i = 0; i < 500; i++)
+        {
+            HistoryQuery query = query(expected, random);
+            boolean teamDropResets = random.nextBoolean();
+            int baselineStreak = random.nextInt(30);
+            assertEquals(scan(expected, query, teamDropResets, baselineStreak),
+                history.select(query, teamDropResets, baselineStreak));
+        }
+    }
+
+    @Test
+    public void streakAtMatchesScan()
+    {
+        Random random = new Random(51);
+        RaidHistory history = new RaidHistory();
+        List<RaidRecord> expected = new ArrayList<>();
+        build(history, expected, random);
+
+        for (boolean teamDropResets : new boolean[] {false, true})
+        {
+            int[] streaks = streaks(expected, teamDropResets, 12);
+            for (int i = 0; i < expected.size(); i++)
+            {
+                assertEquals(streaks[i], history.streakAt(i, teamDropResets, 12));
+            }
+        }
+    }
+
+    @Test
+    public void raidLevelSliceMatchesScan()
+    {
+        RaidHistory history = new RaidHistory();
+        List<RaidRecord> expected = new ArrayList<>();
+        for (int i = 0; i < 60; i++)
+        {
+            RaidRecord record = new RaidRecord("r" + i, 1000L + i, i % 9 == 0 ? RaidOutcome.PERSONAL_UNIQUE : RaidOutcome.NO_UNIQUE,
+                RaidContext.forToa(1 + i % 4, i * 10));
+            history.append(record);
+            expected.add(record);
+        }
+
+        HistoryQuery expertOnly = HistoryQuery.ALL.withRaidLevel(400, Integer.MAX_VALUE);
+        assertEquals(scan(expected, expertOnly, false, 0), history.select(expertOnly, false, 0));
+        assertEquals(20, history.count(expertOnly, false, 0));
+
+        HistoryQuery midBand = HistoryQuery.ALL.withRaidLevel(175, 325).withOutcome(RaidOutcome.PERSONAL_UNIQUE);
+        assertEquals(scan(expected, midBand, false, 0), history.select(midBand, false, 0));
+    }
+
+    /**
+     * Append raids and edit some of them afterwards, so the bitmaps have to follow every kind of change
+     */
+    private static void build(RaidHistory history, List<RaidRecord> expected, Random random)
+    {
+        long time = 1_000_000L;
+        for (int step = 0; step < 2000; step++)
+        {
+            int action = random.nextInt(20);
+            if (action < 14 || expected.isEmpty())
+            {
+                time += random.nextInt(4) == 0 ? 0 : random.nextInt(5000);
+                RaidRecord record = new RaidRecord("r" + step, time, outcome(random), RaidContext.UNKNOWN);
+                record.setMode(random.nextInt(5) == 0 ? null : MODES[random.nextInt(MODES.length)]);
+                record.setTeamSize(random.nextInt(12));
+                record.setItem(random.nextInt(4) == 0 ? ITEMS[random.nextInt(ITEMS.length)] : null);
+                record.setStreakReset(random.nextInt(30) == 0);
+                record.setInvocation(random.nextInt(4) == 0 ? 0 : random.nextInt(121) * 5);
+                history.append(record);
+                expected.add(record);
+            }
+            else if (action < 16)
+            {
+                history.setOutcome(random.nextInt(expected.size()), outcome(random));
+            }
+            else if (action < 18)
+            {
+                history.setItem(random.nextInt(expected.size()), random.nextBoolean() ? ITEMS[random.nextInt(ITEMS.length)] : null);
+            }
+            else if (action < 19)
+            {
+                history.setStreakReset(random.nextInt(expected.size()), random.nextBoolean());
+            }
+            else
+            {
+                history.removeLast();
+                expected.remove(expected.size() - 1);
+                time = expected.isEmpty() ? time : expected.get(expected.size() - 1).getTimestamp();
+            }
+        }
+    }
+
+    private static RaidOutcome outcome(Random random)
+    {
+        // Mostly dry raids, as in a real history, so streaks get long enough to filter on
+        int roll = random.nextInt(10);
+        return roll == 0 ? RaidOutcome.PERSONAL_UNIQUE : roll == 1 ? RaidOutcome.TEAM_UNIQUE : RaidOutcome.NO_UNIQUE;
+    }
+
+    private static HistoryQuery query(List<RaidRecord> records, Random random)
+    {
+        HistoryQuery query = HistoryQuery.ALL;
+        if (random.nextBoolean())
+        {
+            long a = records.get(random.nextInt(records.size())).getTimestamp();
+            long b = records.get(random.nextInt(records.size())).getTimestamp() + random.nextInt(2);
+            query = query.between(Math.min(a, b), Math.max(a, b));
+        }
+        if (random.nextBoolean())
+        {
+            List<RaidOutcome> accepted = new ArrayList<>();
+            for (RaidOutcome outcome : OUTCOMES)
+            {
+                if (random.nextBoolean())
+                {
+                    accepted.add(outcome);
+                }
+            }
+            query = query.withOutcome(accepted.toArray(new RaidOutcome[0]));
+        }
+        if (random.nextInt(3) == 0)
+        {
+            query = query.withMode(MODES[random.nextInt(MODES.length)]);
+        }
+        if (random.nextInt(3) == 0)
+        {
+            int min = random.nextInt(10);
+            query = query.withTeamSize(min, min + random.nextInt(6));
+        }
+        if (random.nextInt(4) == 0)
+        {
+            query = query.withItem(ITEMS[random.nextInt(ITEMS.length)]);
+        }
+        if (random.nextInt(3) == 0)
+        {
+            query = query.withMinStreak(1 + random.nextInt(25));
+        }
+        if (random.nextInt(3) == 0)
+        {
+            // Bounds on and between the band edges
+            int min = random.nextBoolean() ? 100 * random.nextInt(7) : random.nextInt(600);
+            query = query.withRaidLevel(min, random.nextBoolean() ? Integer.MAX_VALUE : min + random.nextInt(250));
+        }
+        return query;
+    }
+
+    /**
+     * Raids matching a query, found by reading every record
+     */
+    private static BitSet scan(List<RaidRecord> records, HistoryQuery query, boolean teamDropResets, int baselineStreak)
+    {
+        int[] streaks = streaks(records, teamDropResets, baselineStreak);
+        // Teams of 8 or more share a bucket, so a bound past 8 means 8
+        int minTeam = Math.min(8, query.getMinTeamSize());
+        int maxTeam = Math.min(8, query.getMaxTeamSize());
+        BitSet rows = new BitSet();
+        for (int i = 0; i < records.size(); i++)
+        {
+            RaidRecord record = records.get(i);
+            int teamSize = Math.min(8, record.getTeamSize());
+            boolean drop = record.getOutcome() == RaidOutcome.PERSONAL_UNIQUE
+                || (teamDropResets && record.getOutcome() == RaidOutcome.TEAM_UNIQUE);
+            if (record.getTimestamp() >= query.getFromMillis() && record.getTimestamp() < query.getToMillis()
+                && query.accepts(record.getOutcome())
+                && (query.getMode() == null || query.getMode() == record.getMode())
+                && teamSize >= minTeam && teamSize <= maxTeam
+                && (query.getItem() == null || query.getItem() == record.getItem())
+                && record.getInvocation() >= query.getMinRaidLevel() && record.getInvocation() <= query.getMaxRaidLevel()
+                && (query.getMinStreak() == 0 || (drop && streaks[i] >= query.getMinStreak())))
+            {
+                rows.set(i);
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Dry streak at every raid, counted forwards from the start of the history
+     */
+    private static int[] streaks(List<RaidRecord> records, boolean teamDropResets, int baselineStreak)
+    {
+        int[] streaks = new int[records.size()];
+        int streak = baselineStreak;
+        for (int i = 0; i < records.size(); i++)
+        {
+            RaidRecord record = records.get(i);
+            streaks[i] = ++streak;
+            if (record.isStreakReset() || record.getOutcome() == RaidOutcome.PERSONAL_UNIQUE
+                || (teamDropResets && record.getOutcome() == RaidOutcome.TEAM_UNIQUE))
+            {
+                streak = 0;
+            }
+        }
+        return streaks;
+    }
+}
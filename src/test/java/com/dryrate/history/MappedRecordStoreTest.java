@@ -0,0 +1,143 @@
+package com.dryrate.history;
+
+import com.dryrate.RaidContext;
+import com.dryrate.RaidMode;
+import com.dryrate.RaidType;
+import com.dryrate.UniqueItem;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+
+public class MappedRecordStoreTest
+{
+    private Path directory;
+    private Path file;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        directory = Files.createTempDirectory("dry-rate-history");
+        file = directory.resolve("account-TOB-0.hist");
+    }
+
+    @After
+    public void tearDown() throws IOException
+    {
+        try (Stream<Path> paths = Files.walk(directory))
+        {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    @Test
+    public void tornRowIsDroppedAndLaterRowsKept() throws IOException
+    {
+        try (MappedRecordStore store = MappedRecordStore.open(file, RaidType.TOB))
+        {
+            for (int i = 0; i < 5; i++)
+            {
+                store.append(record(i));
+            }
+        }
+
+        // A torn write in the middle of the file, as when an edit was cut off by a crash
+        try (RandomAccessFile raw = new RandomAccessFile(file.toFile(), "rw"))
+        {
+            raw.seek(16 + 2 * 48);
+            raw.writeLong(-1L);
+        }
+
+        assertEquals(List.of("r0", "r1", "r3", "r4"), ids(MappedRecordStore.readSnapshot(file, RaidType.TOB)));
+        try (MappedRecordStore store = MappedRecordStore.open(file, RaidType.TOB))
+        {
+            List<RaidRecord> records = new ArrayList<>();
+            for (int i = 0; i < store.size(); i++)
+            {
+                records.add(store.get(i));
+            }
+            assertEquals(List.of("r0", "r1", "r3", "r4"), ids(records));
+        }
+    }
+
+    @Test
+    public void tornEditFallsBackToThePreviousImage() throws IOException
+    {
+        try (MappedRecordStore store = MappedRecordStore.open(file, RaidType.TOB))
+        {
+            for (int i = 0; i < 5; i++)
+            {
+                store.append(record(i));
+            }
+            RaidRecord edited = record(2);
+            edited.setOutcome(RaidOutcome.PERSONAL_UNIQUE);
+            edited.setVersion(1);
+            store.set(2, edited);
+        }
+
+        // The edit of the third raid was cut off by a crash halfway through the row
+        try (RandomAccessFile raw = new RandomAccessFile(file.toFile(), "rw"))
+        {
+            raw.seek(16 + 2 * 48 + 20);
+            raw.writeLong(-1L);
+        }
+
+        assertEquals(List.of("r0", "r1", "r2", "r3", "r4"), ids(MappedRecordStore.readSnapshot(file, RaidType.TOB)));
+        try (MappedRecordStore store = MappedRecordStore.open(file, RaidType.TOB))
+        {
+            assertEquals(5, store.size());
+            RaidRecord restored = store.get(2);
+            assertEquals("r2", restored.getId());
+            assertEquals(record(2).getOutcome(), restored.getOutcome());
+            assertEquals(0, restored.getVersion());
+        }
+    }
+
+    @Test
+    public void storedAttributesMatchTheRecords() throws IOException
+    {
+        try (MappedRecordStore store = MappedRecordStore.open(file, RaidType.TOB))
+        {
+            for (int i = 0; i < 40; i++)
+            {
+                RaidRecord record = record(i);
+                store.append(record);
+                assertEquals(HistoryIndex.attributes(record), store.attributes(i));
+            }
+        }
+    }
+
+    private static RaidRecord record(int i)
+    {
+        RaidOutcome[] outcomes = RaidOutcome.values();
+        UniqueItem[] items = UniqueItem.forRaid(RaidType.TOB);
+        RaidRecord record = new RaidRecord("r" + i, 1000L + i, outcomes[i % outcomes.length], RaidContext.UNKNOWN);
+        record.setMode(i % 3 == 0 ? null : RaidMode.values()[i % RaidMode.values().length]);
+        record.setTeamSize(i % 10);
+        record.setItem(i % 4 == 0 ? items[i % items.length] : null);
+        record.setStreakReset(i % 7 == 0);
+        record.setInvocation(i * 15);
+        return record;
+    }
+
+    private static List<String> ids(List<RaidRecord> records)
+    {
+        List<String> ids = new ArrayList<>();
+        for (RaidRecord record : records)
+        {
+            ids.add(record.getId());
+        }
+        return ids;
+    }
+}
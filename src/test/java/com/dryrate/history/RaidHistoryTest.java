@@ -0,0 +1,130 @@
+package com.dryrate.history;
+
+import com.dryrate.RaidContext;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class RaidHistoryTest
+{
+    private static final RaidOutcome[] OUTCOMES = RaidOutcome.values();
+
+    @Test
+    public void rangeQueriesMatchScan()
+    {
+        Random random = new Random(26);
+        RaidHistory history = new RaidHistory();
+        List<RaidRecord> expected = new ArrayList<>();
+        long time = 1_000_000L;
+
+        for (int step = 0; step < 3000; step++)
+        {
+            int action = random.nextInt(10);
+            if (action < 6 || expected.isEmpty())
+            {
+                // Several raids share a timestamp now and then, as they do when the clock is adjusted
+                time += random.nextInt(4) == 0 ? 0 : random.nextInt(5000);
+                RaidRecord record = new RaidRecord("r" + step, time, OUTCOMES[random.nextInt(OUTCOMES.length)], RaidContext.UNKNOWN);
+                history.append(record);
+                expected.add(record);
+            }
+            else if (action < 9)
+            {
+                int index = random.nextInt(expected.size());
+                history.setOutcome(index, OUTCOMES[random.nextInt(OUTCOMES.length)]);
+            }
+            else
+            {
+                RaidRecord removed = history.removeLast();
+                assertEquals(expected.remove(expected.size() - 1), removed);
+                time = expected.isEmpty() ? time : expected.get(expected.size() - 1).getTimestamp();
+            }
+
+            if (step % 50 == 0)
+            {
+                checkRanges(history, expected, random);
+            }
+        }
+        checkRanges(history, expected, random);
+    }
+
+    @Test
+    public void dryRateOverLastCountsWindow()
+    {
+        RaidHistory history = new RaidHistory();
+        for (int i = 0; i < 10; i++)
+        {
+            RaidOutcome outcome = i == 2 || i == 7 ? RaidOutcome.PERSONAL_UNIQUE : RaidOutcome.NO_UNIQUE;
+            history.append(new RaidRecord("r" + i, i, outcome, RaidContext.UNKNOWN));
+        }
+
+        assertEquals(0.0, history.dryRateOverLast(2), 0.0);
+        assertEquals(3.0, history.dryRateOverLast(3), 0.0);
+        assertEquals(5.0, history.dryRateOverLast(10), 0.0);
+        assertEquals(5.0, history.dryRateOverLast(100), 0.0);
+    }
+
+    @Test
+    public void timestampsStayOrdered()
+    {
+        RaidHistory history = new RaidHistory();
+        history.append(new RaidRecord("a", 500, RaidOutcome.NO_UNIQUE, RaidContext.UNKNOWN));
+        history.append(new RaidRecord("b", 100, RaidOutcome.PERSONAL_UNIQUE, RaidContext.UNKNOWN));
+
+        assertEquals(500L, history.get(1).getTimestamp());
+        assertEquals(2, history.completionsBetween(500, 501));
+        assertEquals(1, history.uniquesBetween(500, 501));
+        assertEquals("b", history.find("b", 500).getId());
+    }
+
+    private static void checkRanges(RaidHistory history, List<RaidRecord> expected, Random random)
+    {
+        assertEquals(expected.size(), history.size());
+        long last = expected.isEmpty() ? 0 : expected.get(expected.size() - 1).getTimestamp();
+        for (int q = 0; q < 20; q++)
+        {
+            long a = random.nextInt((int) last + 2);
+            long b = random.nextInt((int) last + 2);
+            long from = Math.min(a, b);
+            long to = Math.max(a, b);
+
+            int completions = 0;
+            int personal = 0;
+            int team = 0;
+            for (RaidRecord record : expected)
+            {
+                if (record.getTimestamp() >= from && record.getTimestamp() < to)
+                {
+                    completions++;
+                    personal += record.getOutcome() == RaidOutcome.PERSONAL_UNIQUE ? 1 : 0;
+                    team += record.getOutcome() == RaidOutcome.TEAM_UNIQUE ? 1 : 0;
+                }
+            }
+            assertEquals(completions, history.completionsBetween(from, to));
+            assertEquals(personal, history.uniquesBetween(from, to));
+            assertEquals(team, history.teamUniquesBetween(from, to));
+
+            int first = 1 + random.nextInt(expected.size() + 1);
+            int lastRaid = first + random.nextInt(expected.size() + 1);
+            int uniques = 0;
+            for (int i = first - 1; i < Math.min(lastRaid, expected.size()); i++)
+            {
+                uniques += expected.get(i).getOutcome() == RaidOutcome.PERSONAL_UNIQUE ? 1 : 0;
+            }
+            assertEquals(uniques, history.uniquesBetweenRaids(first, lastRaid));
+
+            int k = random.nextInt(expected.size() + 2);
+            int window = Math.min(k, expected.size());
+            int windowUniques = 0;
+            for (int i = expected.size() - window; i < expected.size(); i++)
+            {
+                windowUniques += expected.get(i).getOutcome() == RaidOutcome.PERSONAL_UNIQUE ? 1 : 0;
+            }
+            assertEquals(windowUniques == 0 ? 0.0 : (double) window / windowUniques, history.dryRateOverLast(k), 1e-9);
+        }
+    }
+}
@@ -0,0 +1,275 @@
+package com.dryrate.store;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class LocalDataStoreTest
+{
+    private Path directory;
+    private Path file;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        directory = Files.createTempDirectory("dry-rate-store");
+        file = directory.resolve("account.dat");
+    }
+
+    @After
+    public void tearDown() throws IOException
+    {
+        try (Stream<Path> paths = Files.walk(directory))
+        {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    @Test
+    public void readsBackLatestValues() throws IOException
+    {
+        LocalDataStore store = new LocalDataStore(file);
+        store.write(values(1));
+        store.write(values(2));
+
+        Map<String, String> read = new LocalDataStore(file).read();
+        assertEquals(values(2), read);
+    }
+
+    @Test
+    public void missingFileReadsEmpty() throws IOException
+    {
+        assertTrue(new LocalDataStore(file).read().isEmpty());
+    }
+
+    @Test
+    public void tornTailIsCutAtEveryOffset() throws IOException
+    {
+        LocalDataStore store = new LocalDataStore(file);
+        store.write(values(1));
+        store.write(values(2));
+        byte[] committed = Files.readAllBytes(file);
+        store.write(values(3));
+        byte[] full = Files.readAllBytes(file);
+
+        for (int cut = committed.length; cut < full.length; cut++)
+        {
+            Files.write(file, Arrays.copyOf(full, cut));
+
+            Map<String, String> read = new LocalDataStore(file).read();
+            assertEquals("cut at " + cut, values(2), read);
+            assertArrayEquals("cut at " + cut, committed, Files.readAllBytes(file));
+        }
+    }
+
+    @Test
+    public void garbageTailIsCut() throws IOException
+    {
+        LocalDataStore store = new LocalDataStore(file);
+        store.write(values(1));
+        byte[] committed = Files.readAllBytes(file);
+
+        // A crash can leave a fully sized but unwritten (zeroed or stale) tail
+        byte[] garbage = new byte[100];
+        new Random(1).nextBytes(garbage);
+        byte[] torn = Arrays.copyOf(committed, committed.length + garbage.length);
+        System.arraycopy(garbage, 0, torn, committed.length, garbage.length);
+        Files.write(file, torn);
+
+        assertEquals(values(1), new LocalDataStore(file).read());
+        assertArrayEquals(committed, Files.readAllBytes(file));
+    }
+
+    @Test
+    public void corruptRecordBeforeTailIsSkipped() throws IOException
+    {
+        LocalDataStore store = new LocalDataStore(file);
+        store.write(single("a", "first"));
+        int firstEnd = (int) Files.size(file);
+        store.write(single("b", "second"));
+        store.write(single("c", "third"));
+
+        // Flip a byte inside the second record's payload
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[firstEnd + 12] ^= 0x55;
+        Files.write(file, bytes);
+
+        Map<String, String> read = new LocalDataStore(file).read();
+        assertEquals("first", read.get("a"));
+        assertNull(read.get("b"));
+        assertEquals("third", read.get("c"));
+    }
+
+    @Test
+    public void corruptLengthMidFileKeepsLaterRecords() throws IOException
+    {
+        LocalDataStore store = new LocalDataStore(file);
+        store.write(single("a", "first"));
+        int firstEnd = (int) Files.size(file);
+        store.write(single("b", "second"));
+        int secondEnd = (int) Files.size(file);
+        store.write(single("c", "third"));
+
+        for (int length : new int[] {-7, Integer.MAX_VALUE, secondEnd})
+        {
+            byte[] bytes = Files.readAllBytes(file);
+            ByteBuffer.wrap(bytes).putInt(firstEnd, length);
+            Path damaged = file.resolveSibling("damaged-" + length + ".dat");
+            Files.write(damaged, bytes);
+
+            Map<String, String> read = new LocalDataStore(damaged).read();
+            assertEquals("first", read.get("a"));
+            assertNull(read.get("b"));
+            assertEquals("third", read.get("c"));
+            // Rewritten without the damaged record, so a second read finds nothing to skip
+            assertEquals(read, new LocalDataStore(damaged).read());
+            assertTrue(Files.size(damaged) < bytes.length);
+        }
+    }
+
+    @Test
+    public void headerTornOnCreationStartsEmpty() throws IOException
+    {
+        Files.write(file, new byte[]{0x44, 0x52});
+
+        LocalDataStore store = new LocalDataStore(file);
+        assertTrue(store.read().isEmpty());
+        store.write(values(1));
+        assertEquals(values(1), new LocalDataStore(file).read());
+    }
+
+    @Test
+    public void compactionKeepsLatestValues() throws IOException
+    {
+        LocalDataStore store = new LocalDataStore(file);
+        for (int i = 0; i < 200; i++)
+        {
+            store.write(values(i));
+        }
+        long grown = Files.size(file);
+        store.compact();
+
+        assertTrue(Files.size(file) < grown);
+        assertEquals(values(199), new LocalDataStore(file).read());
+    }
+
+    @Test
+    public void writerKilledMidFlushLosesNothingCommitted() throws Exception
+    {
+        Random random = new Random(7);
+        int committed = -1;
+        for (int round = 0; round < 10; round++)
+        {
+            Process writer = new ProcessBuilder(
+                new File(System.getProperty("java.home"), "bin/java").getPath(),
+                "-cp", System.getProperty("java.class.path"),
+                Writer.class.getName(), file.toString(), Integer.toString(committed + 1))
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+
+            // Kill the writer after a random number of durable writes, most likely part way through the next one
+            int writes = 1 + random.nextInt(20);
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(writer.getInputStream(), StandardCharsets.UTF_8)))
+            {
+                String line;
+                while (writes-- > 0 && (line = reader.readLine()) != null)
+                {
+                    committed = Integer.parseInt(line);
+                }
+                writer.destroyForcibly().waitFor();
+            }
+
+            Map<String, String> read = new LocalDataStore(file).read();
+            int recovered = Integer.parseInt(read.get("counter"));
+            assertTrue("recovered " + recovered + " but " + committed + " was committed", recovered >= committed);
+            assertEquals(padding(recovered), read.get("padding"));
+            committed = recovered;
+        }
+    }
+
+    /**
+     * Writes increasing values until killed, reporting each one once it is durable
+     */
+    public static class Writer
+    {
+        public static void main(String[] args) throws IOException
+        {
+            LocalDataStore store = new LocalDataStore(new File(args[0]).toPath());
+            store.read();
+            for (int i = Integer.parseInt(args[1]); ; i++)
+            {
+                store.write(values(i));
+                System.out.println(i);
+                System.out.flush();
+            }
+        }
+    }
+
+    @Test
+    public void readIfChangedSeesOnlyOtherWriters() throws IOException
+    {
+        LocalDataStore ours = new LocalDataStore(file);
+        LocalDataStore theirs = new LocalDataStore(file);
+        ours.read();
+        theirs.read();
+
+        ours.write(values(1));
+        assertNull(ours.readIfChanged());
+
+        theirs.write(values(2));
+        assertEquals(values(2), ours.readIfChanged());
+        assertNull(ours.readIfChanged());
+
+        // Written over by us before we looked, the other write is still reported
+        theirs.write(values(3));
+        ours.write(single("counter", "4"));
+        Map<String, String> read = ours.readIfChanged();
+        assertEquals("4", read.get("counter"));
+        assertEquals(padding(3), read.get("padding"));
+    }
+
+    private static Map<String, String> values(int counter)
+    {
+        Map<String, String> values = new HashMap<>();
+        values.put("counter", Integer.toString(counter));
+        values.put("padding", padding(counter));
+        return values;
+    }
+
+    private static String padding(int counter)
+    {
+        StringBuilder padding = new StringBuilder();
+        for (int i = 0; i < 2000; i++)
+        {
+            padding.append(counter % 10);
+        }
+        return padding.toString();
+    }
+
+    private static Map<String, String> single(String key, String value)
+    {
+        Map<String, String> values = new HashMap<>();
+        values.put(key, value);
+        return values;
+    }
+}
@@ -0,0 +1,193 @@
+package com.dryrate.sync;
+
+import com.dryrate.DryRateData;
+import com.dryrate.RaidContext;
+import com.dryrate.RaidType;
+import com.dryrate.history.RaidHistory;
+import com.dryrate.history.RaidOutcome;
+import com.dryrate.history.RaidRecord;
+import com.dryrate.history.StoredHistory;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class DryRateMergerTest
+{
+    @Test
+    public void mergesRecordsAndCountersOfBothClients()
+    {
+        Client a = new Client("a");
+        Client b = new Client("b");
+        a.raid(100, RaidOutcome.NO_UNIQUE);
+        b.raid(150, RaidOutcome.NO_UNIQUE);
+        a.raid(200, RaidOutcome.PERSONAL_UNIQUE);
+        b.raid(250, RaidOutcome.NO_UNIQUE);
+
+        DryRateMerger.Result result = a.merge(b);
+        assertTrue(result.isChanged());
+        assertEquals(4, result.getHistory().size());
+        assertEquals(4, result.getData().getTotalCompletions());
+        assertEquals(1, result.getData().getTotalUniques());
+        assertEquals(1, result.getData().getCurrentDryStreak());
+        assertEquals(Collections.singletonList(3), result.getData().getPreviousDryStreaks());
+
+        // Merging the same copy again changes nothing
+        a.take(result);
+        assertFalse(a.merge(b).isChanged());
+    }
+
+    @Test
+    public void mergeIsCommutative()
+    {
+        Client a = new Client("a");
+        Client b = new Client("b");
+        a.raid(100, RaidOutcome.PERSONAL_UNIQUE);
+        b.raid(100, RaidOutcome.NO_UNIQUE);
+        b.raid(300, RaidOutcome.TEAM_UNIQUE);
+        a.raid(400, RaidOutcome.NO_UNIQUE);
+
+        Client a2 = a.copy();
+        Client b2 = b.copy();
+        DryRateMerger.Result ab = a.merge(b);
+        DryRateMerger.Result ba = b2.merge(a2);
+
+        assertEquals(ids(ab.getHistory()), ids(ba.getHistory()));
+        assertEquals(ab.getData().getTotalCompletions(), ba.getData().getTotalCompletions());
+        assertEquals(ab.getData().getCurrentDryStreak(), ba.getData().getCurrentDryStreak());
+        assertEquals(ab.getData().getPreviousDryStreaks(), ba.getData().getPreviousDryStreaks());
+    }
+
+    @Test
+    public void newerVersionWinsAndUndoneRecordsStayRemoved()
+    {
+        Client a = new Client("a");
+        a.raid(100, RaidOutcome.NO_UNIQUE);
+        a.raid(200, RaidOutcome.NO_UNIQUE);
+        Client b = a.copy();
+
+        // One client corrects the first raid, the other undoes the second
+        b.history.setOutcome(0, RaidOutcome.PERSONAL_UNIQUE);
+        RaidRecord undone = a.history.removeLast();
+
+        DryRateMerger.Result result = a.merge(b);
+        assertEquals(1, result.getHistory().size());
+        assertEquals(RaidOutcome.PERSONAL_UNIQUE, result.getHistory().get(0).getOutcome());
+        assertNull(result.getHistory().find(undone.getId(), undone.getTimestamp()));
+
+        a.take(result);
+        DryRateMerger.Result back = b.merge(a);
+        assertEquals(1, back.getHistory().size());
+    }
+
+    @Test
+    public void newerFullResetWins()
+    {
+        Client a = new Client("a");
+        Client b = new Client("b");
+        a.raid(100, RaidOutcome.NO_UNIQUE);
+        a.raid(200, RaidOutcome.NO_UNIQUE);
+        b.data.setResetEpoch(150);
+        b.raid(300, RaidOutcome.PERSONAL_UNIQUE);
+
+        DryRateMerger.Result result = a.merge(b);
+        assertEquals(1, result.getHistory().size());
+        assertEquals(1, result.getData().getTotalUniques());
+        assertEquals(150L, result.getData().getResetEpoch());
+
+        // The older copy does not bring the reset raids back
+        a.take(result);
+        Client old = new Client("c");
+        old.raid(100, RaidOutcome.NO_UNIQUE);
+        assertFalse(a.merge(old).isChanged());
+    }
+
+    private static List<String> ids(RaidHistory history)
+    {
+        List<String> ids = new ArrayList<>();
+        for (RaidRecord record : history.getRecords())
+        {
+            ids.add(record.getId());
+        }
+        return ids;
+    }
+
+    /**
+     * One client's copy of a raid, recording through its own counter slots
+     */
+    private static final class Client
+    {
+        private final String instance;
+        private DryRateData data = new DryRateData();
+        private RaidHistory history = new RaidHistory();
+        private int sequence;
+
+        Client(String instance)
+        {
+            this.instance = instance;
+        }
+
+        void raid(long timestamp, RaidOutcome outcome)
+        {
+            history.append(new RaidRecord(instance + ":" + sequence++, timestamp, outcome, RaidContext.UNKNOWN));
+            data.getCompletionCounter().add(instance, 1);
+            if (outcome == RaidOutcome.PERSONAL_UNIQUE)
+            {
+                data.getUniqueCounter().add(instance, 1);
+            }
+            data.syncTotals();
+        }
+
+        DryRateMerger.Result merge(Client other)
+        {
+            return DryRateMerger.merge(RaidType.TOB, data, history, other.copyData(),
+                new StoredHistory(copies(other.history.getRecords()), new HashSet<>(other.history.getRemovedIds())), false);
+        }
+
+        void take(DryRateMerger.Result result)
+        {
+            data = result.getData();
+            history = result.getHistory();
+        }
+
+        Client copy()
+        {
+            Client copy = new Client(instance);
+            copy.data = copyData();
+            copy.history = new RaidHistory(copies(history.getRecords()), history.getRemovedIds());
+            copy.sequence = sequence;
+            return copy;
+        }
+
+        private DryRateData copyData()
+        {
+            DryRateData copy = new DryRateData();
+            copy.setCompletionCounter(new PNCounter(data.getCompletionCounter()));
+            copy.setUniqueCounter(new PNCounter(data.getUniqueCounter()));
+            copy.setResetEpoch(data.getResetEpoch());
+            copy.syncTotals();
+            return copy;
+        }
+
+        private static List<RaidRecord> copies(List<RaidRecord> records)
+        {
+            List<RaidRecord> copies = new ArrayList<>();
+            for (RaidRecord record : records)
+            {
+                RaidRecord copy = new RaidRecord(record.getId(), record.getTimestamp(), record.getOutcome(), RaidContext.UNKNOWN);
+                copy.setVersion(record.getVersion());
+                copy.setStreakReset(record.isStreakReset());
+                copy.setItem(record.getItem());
+                copies.add(copy);
+            }
+            return copies;
+        }
+    }
+}